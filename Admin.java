@@ -61,6 +61,17 @@ public class Admin extends Person {
     }
     
     
+    /**
+     * Delegates a bulk import of cars from a supplier CSV file to the CarManager.
+     *
+     * @param filePath The path of the supplier CSV file.
+     * @param quarantineFilePath The path of the CSV file that receives rejected rows.
+     * @return The number of rows that were imported, or -1 if the file could not be read.
+     */
+    public int importCars(String filePath, String quarantineFilePath) {
+        return carManager.importCars(filePath, quarantineFilePath);
+    }
+
     /**
      * Delegates the removal of a car by its VIN to the CarManager.
      *
@@ -79,6 +90,16 @@ public class Admin extends Person {
         carManager.displayRevenue(value);
     }
 
+    /**
+     * Writes the sales and inventory reports as CSV files.
+     *
+     * @param directory The directory of the reports.
+     * @return The number of tickets read, or -1 if the reports could not be written.
+     */
+    public long exportReports(String directory) {
+        return new ReportGenerator(carManager, userManager).generate(directory);
+    }
+
     
     /**
      * Adds a new user to the system.
@@ -1,3 +1,4 @@
+import java.io.File;
 import java.util.Scanner;
 
 
@@ -47,46 +48,60 @@ public class AdminPanel {
     }
 
     /**
-     * Displays the main menu for the Admin Panel and handles user selection of administrative tasks.
+     * Displays the main menu for the Admin Panel and handles administrative tasks until the
+     * administrator goes back or the input ends. Invalid numbers entered for a task are reported and
+     * the menu is shown again.
      *
      * @param username The username of the administrator.
-     * @throws Exception Generic exception to capture and handle any errors that occur during operation.
+     * @param scanner The reader of the console, shared with the rest of the shop so no typed-ahead
+     *        input is lost between menus.
      */
-    public void showMenu(String username) throws Exception {
+    public void showMenu(String username, Scanner scanner) {
+        this.scanner = scanner;
         System.out.println("Accessing Admin Panel...");
-        System.out.println("Select admin option: \n"
-                + "1. Add Car\n"
-                + "2. Get Revenue by Id and by Car Type \n"
-                + "3. Remove Car\n"
-                + "4. Add User\n"
-                + "5. Main Menu");
-
-        Scanner scanner = new Scanner(System.in);
-        String input = scanner.nextLine();
-
-        switch (input) {
-            case "1":
-                addCar(scanner);
-                showMenu(username);
-                break;
-            case "2":
-                getRevenue(scanner);
-                showMenu(username);
-                break;
-            case "3":
-                removeCar(scanner);
-                showMenu(username);
-                break;
-            case "4":
-                addUser(scanner);
-                showMenu(username);
-                break;
-            case "5":
-                RunShop.mainmenu(username);
-                break;
-            default:
-                System.out.println("Invalid option. Please try again.");
-                showMenu(username);
+        while (true) {
+            System.out.println("Select admin option: \n"
+                    + "1. Add Car\n"
+                    + "2. Get Revenue by Id and by Car Type \n"
+                    + "3. Remove Car\n"
+                    + "4. Add User\n"
+                    + "5. Back\n"
+                    + "6. Import Cars from CSV\n"
+                    + "7. Export Reports");
+
+            if (!scanner.hasNextLine()) {
+                return;
+            }
+            String input = scanner.nextLine().trim();
+
+            try {
+                switch (input) {
+                    case "1":
+                        addCar(scanner);
+                        break;
+                    case "2":
+                        getRevenue(scanner);
+                        break;
+                    case "3":
+                        removeCar(scanner);
+                        break;
+                    case "4":
+                        addUser(scanner);
+                        break;
+                    case "5":
+                        return;
+                    case "6":
+                        importCars(scanner);
+                        break;
+                    case "7":
+                        exportReports(scanner);
+                        break;
+                    default:
+                        System.out.println("Invalid option. Please try again.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter valid numeric values.");
+            }
         }
     }
 
@@ -123,6 +138,37 @@ public class AdminPanel {
         admin.addCar(type, model, condition, color, capacity, year, fuelType, transmission, vin, price, carsAvailable, hasTurbo);
     }
 
+    /**
+     * Imports cars in bulk from a supplier CSV file chosen by the user. Rejected rows are written
+     * next to the import file with a "quarantine_" prefix.
+     */
+    private void importCars(Scanner scanner) {
+        System.out.println("Enter the path of the CSV file to import:");
+        String filePath = scanner.nextLine().trim();
+        admin.importCars(filePath, quarantineFilePathOf(filePath));
+    }
+
+    /**
+     * Returns where the rejected rows of an import go: next to the import file, with a
+     * "quarantine_" prefix.
+     *
+     * @param filePath The path of the import file.
+     * @return The path of its quarantine file.
+     */
+    static String quarantineFilePathOf(String filePath) {
+        File importFile = new File(filePath);
+        return new File(importFile.getAbsoluteFile().getParentFile(), "quarantine_" + importFile.getName()).getPath();
+    }
+
+    /**
+     * Writes the sales and inventory reports into a directory chosen by the user.
+     */
+    private void exportReports(Scanner scanner) {
+        System.out.println("Enter the directory for the reports (empty for reports):");
+        String directory = scanner.nextLine().trim();
+        admin.exportReports(directory.isEmpty() ? "reports" : directory);
+    }
+
     /**
      * Retrieves revenue information based on the car type or ID provided by the user.
      * This method utilizes the Admin's getRevenueByIDOrType to display revenue details.
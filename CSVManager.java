@@ -1,6 +1,7 @@
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Utility class for managing CSV files. Provides functionality to read from, write to,
@@ -8,6 +9,12 @@ import java.util.List;
  */
 public class CSVManager {
 
+    private static final LatencyHistogram READ_TIMER = Metrics.timer("csv.read");
+    private static final LatencyHistogram WRITE_TIMER = Metrics.timer("csv.write");
+    private static final LatencyHistogram UPDATE_TIMER = Metrics.timer("csv.update");
+    private static final LatencyHistogram READ_HEADER_TIMER = Metrics.timer("csv.readHeader");
+    private static final LongAdder ROWS_READ = Metrics.counter("csv.rowsRead");
+    private static final LongAdder ROWS_WRITTEN = Metrics.counter("csv.rowsWritten");
 
     /**
      * Writes a list of string arrays to a CSV file at the specified path. Appends the data
@@ -15,14 +22,30 @@ public class CSVManager {
      *
      * @param filePath The path of the CSV file to write to.
      * @param data The data to write to the CSV file.
+     * @return true if every row was written, false if the file could not be opened or written. Rows
+     *         written before an error stay in the file.
      */
-    public static void writeToCSV(String filePath, List<String[]> data) {
-        try (PrintWriter writer = new PrintWriter(new FileOutputStream(new File(filePath), true))) {
-            for (String[] rowData : data) {
-                writer.println(String.join(",", rowData));
+    public static boolean writeToCSV(String filePath, List<String[]> data) {
+        long start = System.nanoTime();
+        ShopEvents.CSVWrite event = new ShopEvents.CSVWrite();
+        event.begin();
+        long bytes = 0;
+        try (CountingOutputStream out = new CountingOutputStream(new FileOutputStream(new File(filePath), true));
+             PrintWriter writer = new PrintWriter(out)) {
+            writeRows(writer, data);
+            boolean failed = writer.checkError(); // Flushes the rows, so they are all counted
+            bytes = out.getCount();
+            if (failed) {
+                System.out.println("An error occurred while writing to the CSV file: " + filePath);
+                return false;
             }
-        } catch (FileNotFoundException e) {
+            return true;
+        } catch (IOException e) {
             System.out.println("An error occurred while writing to the CSV file: " + e.getMessage());
+            return false;
+        } finally {
+            SlowOperationLog.finish(WRITE_TIMER, start, data.size(), bytes, filePath, null);
+            commit(event, filePath, true, data.size(), bytes);
         }
     }
 
@@ -35,7 +58,7 @@ public class CSVManager {
      */
     public static List<String[]> readFromCSV(String filePath) {
         List<String[]> data = new ArrayList<>();
-        
+        long start = System.nanoTime();
         try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
             String line;
             while ((line = br.readLine()) != null) {
@@ -46,10 +69,34 @@ public class CSVManager {
             System.out.println("The file was not found: " + e.getMessage());
         } catch (IOException e) {
             System.out.println("An error occurred while reading the file: " + e.getMessage());
+        } finally {
+            ROWS_READ.add(data.size());
+            SlowOperationLog.finish(READ_TIMER, start, data.size(), -1, filePath, null);
         }
         return data;
     }
 
+    /**
+     * Reads the first row of a CSV file, usually its header.
+     *
+     * @param filePath The path of the CSV file to read from.
+     * @return The first row, or null if the file is empty or cannot be read.
+     */
+    public static String[] readHeader(String filePath) {
+        long start = System.nanoTime();
+        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
+            String line = br.readLine();
+            return line == null ? null : line.split(",");
+        } catch (FileNotFoundException e) {
+            System.out.println("The file was not found: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the file: " + e.getMessage());
+        } finally {
+            SlowOperationLog.finish(READ_HEADER_TIMER, start, 1, -1, filePath, null);
+        }
+        return null;
+    }
+
     /**
      * Update function that is in charge of updating the information in the CSV's after the user exits/signs out
      *
@@ -58,12 +105,43 @@ public class CSVManager {
      *                    
      */
     public static void updateCSV(String filePath, List<String[]> updatedData) {
-        try (PrintWriter writer = new PrintWriter(new File(filePath))) {
-            for (String[] rowData : updatedData) {
-                writer.println(String.join(",", rowData));
-            }
-        } catch (FileNotFoundException e) {
+        long start = System.nanoTime();
+        ShopEvents.CSVWrite event = new ShopEvents.CSVWrite();
+        event.begin();
+        long bytes = 0;
+        try (CountingOutputStream out = new CountingOutputStream(new FileOutputStream(new File(filePath)));
+             PrintWriter writer = new PrintWriter(out)) {
+            writeRows(writer, updatedData);
+            writer.flush();
+            bytes = out.getCount();
+        } catch (IOException e) {
             System.out.println("An error occurred while writing to the CSV file: " + e.getMessage());
+        } finally {
+            SlowOperationLog.finish(UPDATE_TIMER, start, updatedData.size(), bytes, filePath, null);
+            commit(event, filePath, false, updatedData.size(), bytes);
+        }
+    }
+
+    /**
+     * Writes rows as lines of comma-separated values.
+     */
+    private static void writeRows(PrintWriter writer, List<String[]> rows) {
+        for (String[] rowData : rows) {
+            writer.println(String.join(",", rowData));
+        }
+        ROWS_WRITTEN.add(rows.size());
+    }
+
+    /**
+     * Fills in and commits the flight recorder event of a write, if a recording wants it.
+     */
+    private static void commit(ShopEvents.CSVWrite event, String filePath, boolean append, int rows, long bytes) {
+        if (event.shouldCommit()) {
+            event.file = filePath;
+            event.append = append;
+            event.rows = rows;
+            event.bytes = bytes;
+            event.commit();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,270 @@
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes CSV rows straight into a reusable byte buffer that is flushed to a file when full. Numbers
+ * are formatted by hand and text is encoded as UTF-8 without creating intermediate Strings, so writing
+ * a row allocates nothing.
+ * <p>
+ * Like {@link java.io.PrintWriter}, the writer does not throw: the first I/O error is kept, later
+ * writes are ignored, and {@link #checkError()} reports whether everything was written.
+ */
+public class CSVRowWriter implements Closeable {
+
+    private static final byte SEPARATOR = ',';
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_INT = String.valueOf(Integer.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position = 0;
+    private boolean rowStarted = false;
+    private long rowsWritten = 0;
+    private long bytesWritten = 0;
+    private IOException error;
+
+    /**
+     * Opens a CSV file for writing.
+     *
+     * @param filePath The path of the CSV file.
+     * @param append true to add rows at the end of the file, false to replace its contents.
+     * @throws IOException If the file cannot be opened.
+     */
+    public CSVRowWriter(String filePath, boolean append) throws IOException {
+        this(new FileOutputStream(filePath, append), 64 * 1024);
+    }
+
+    /**
+     * Creates a writer on an output stream.
+     *
+     * @param out The stream receiving the CSV bytes. It is closed with the writer.
+     * @param bufferSize The size of the byte buffer, at least 64 bytes.
+     */
+    public CSVRowWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(64, bufferSize)];
+    }
+
+    /**
+     * Writes a whole row of text values, such as a header.
+     *
+     * @param values The values of the row.
+     */
+    public void row(String[] values) {
+        for (String value : values) {
+            text(value);
+        }
+        endRow();
+    }
+
+    /**
+     * Writes a text value as the next cell. Null is written as an empty cell.
+     *
+     * @param value The value to write.
+     */
+    public void text(CharSequence value) {
+        startCell();
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensure(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                put((byte) '?'); // Unpaired surrogate, like String.getBytes
+            } else {
+                ensure(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Writes an int as the next cell, like {@link String#valueOf(int)}.
+     *
+     * @param value The value to write.
+     */
+    public void integer(int value) {
+        startCell();
+        if (value == Integer.MIN_VALUE) {
+            ensure(MIN_INT.length);
+            System.arraycopy(MIN_INT, 0, buffer, position, MIN_INT.length);
+            position += MIN_INT.length;
+            return;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        digits(value);
+    }
+
+    /**
+     * Writes a boolean as the next cell, using the given words for true and false.
+     *
+     * @param value The value to write.
+     * @param whenTrue The text written for true.
+     * @param whenFalse The text written for false.
+     */
+    public void bool(boolean value, String whenTrue, String whenFalse) {
+        text(value ? whenTrue : whenFalse);
+    }
+
+    /**
+     * Writes an amount with two decimals as the next cell, the same text as {@code String.format("%.2f", value)}.
+     *
+     * @param value The amount to write.
+     */
+    public void decimal2(float value) {
+        double amount = value;
+        if (Double.isNaN(amount) || Double.isInfinite(amount) || Math.abs(amount) >= 1e15) {
+            text(String.format("%.2f", value)); // Rare values keep the library formatting
+            return;
+        }
+        startCell();
+        if (Double.doubleToRawLongBits(amount) < 0) {
+            put((byte) '-');
+            amount = -amount;
+        }
+        long cents = Math.round(amount * 100);
+        digits(cents / 100);
+        put((byte) '.');
+        int fraction = (int) (cents % 100);
+        put((byte) ('0' + fraction / 10));
+        put((byte) ('0' + fraction % 10));
+    }
+
+    /**
+     * Ends the current row.
+     */
+    public void endRow() {
+        ensure(LINE_SEPARATOR.length);
+        System.arraycopy(LINE_SEPARATOR, 0, buffer, position, LINE_SEPARATOR.length);
+        position += LINE_SEPARATOR.length;
+        rowStarted = false;
+        rowsWritten++;
+    }
+
+    /**
+     * @return The number of rows written so far.
+     */
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * @return The number of bytes written so far, including bytes still in the buffer.
+     */
+    public long getBytesWritten() {
+        return bytesWritten + position;
+    }
+
+    /**
+     * Writes the buffered bytes to the stream.
+     */
+    public void flush() {
+        drain();
+        if (error == null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * @return true if an I/O error happened; the error itself is returned by {@link #getError()}.
+     */
+    public boolean checkError() {
+        flush();
+        return error != null;
+    }
+
+    /**
+     * @return The first I/O error, or null if there was none.
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Flushes the buffer and closes the stream.
+     */
+    @Override
+    public void close() {
+        flush();
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+    }
+
+    private void startCell() {
+        if (rowStarted) {
+            put(SEPARATOR);
+        }
+        rowStarted = true;
+    }
+
+    private void digits(long value) {
+        int length = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            length++;
+        }
+        ensure(length);
+        for (int i = position + length - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += length;
+    }
+
+    private void put(byte b) {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = b;
+    }
+
+    private void ensure(int bytes) {
+        if (position + bytes > buffer.length) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        if (position == 0) {
+            return;
+        }
+        if (error == null) {
+            try {
+                out.write(buffer, 0, position);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        bytesWritten += position;
+        position = 0;
+    }
+}
@@ -1,6 +1,3 @@
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Represents a car with various details such as type, model, condition, and more.
  * Provides both getters and setters for manipulating car properties.
@@ -20,6 +17,17 @@ public class Car implements ICSVSerializable {
 	    private int carsAvailable;
 	    private boolean hasTurbo;
 
+	    /*
+	     * Codes of the text fields in the shared SymbolTables, kept next to the canonical
+	     * Strings so that filters can compare ints instead of Strings.
+	     */
+	    private int typeCode;
+	    private int modelCode;
+	    private int conditionCode;
+	    private int colorCode;
+	    private int transmissionCode;
+	    private int fuelTypeCode;
+
 	    /**
 	     * Constructs a new Car instance with detailed specifications.
 	     *
@@ -41,37 +49,44 @@ public class Car implements ICSVSerializable {
 	               float price, String transmission, String vin, String fuelType, int year, 
 	               int carsAvailable, boolean hasTurbo) {
 	        this.id = id;
-	        this.type = type;
-	        this.model = model;
-	        this.condition = condition;
-	        this.color = color;
+	        this.typeCode = SymbolTable.TYPES.code(type);
+	        this.type = SymbolTable.TYPES.symbol(typeCode);
+	        this.modelCode = SymbolTable.MODELS.code(model);
+	        this.model = SymbolTable.MODELS.symbol(modelCode);
+	        this.conditionCode = SymbolTable.CONDITIONS.code(condition);
+	        this.condition = SymbolTable.CONDITIONS.symbol(conditionCode);
+	        this.colorCode = SymbolTable.COLORS.code(color);
+	        this.color = SymbolTable.COLORS.symbol(colorCode);
 	        this.capacity = capacity;
 	        this.price = price;
-	        this.transmission = transmission;
+	        this.transmissionCode = SymbolTable.TRANSMISSIONS.code(transmission);
+	        this.transmission = SymbolTable.TRANSMISSIONS.symbol(transmissionCode);
 	        this.vin = vin;
-	        this.fuelType = fuelType;
+	        this.fuelTypeCode = SymbolTable.FUEL_TYPES.code(fuelType);
+	        this.fuelType = SymbolTable.FUEL_TYPES.symbol(fuelTypeCode);
 	        this.year = year;
 	        this.carsAvailable = carsAvailable;
 	        this.hasTurbo = hasTurbo;
 	    }
 
 	    /**
-	     * Displays the complete details of the car.
+	     * Displays the complete details of the car. Values are read through the getters so that
+	     * subclasses backed by other storage display correctly.
 	     */
 	    public void displayDetails() {
-	        System.out.println("ID: " + id +
-	                           ", Type: " + type +
-	                           ", Model: " + model +
-	                           ", Condition: " + condition +
-	                           ", Color: " + color +
-	                           ", Capacity: " + capacity +
-	                           ", Price: $" + price +
-	                           ", Transmission: " + transmission +
-	                           ", VIN: " + vin +
-	                           ", Fuel Type: " + fuelType +
-	                           ", Year: " + year +
-	                           ", Cars Available: " + carsAvailable +
-	                           ", Turbo: " + (hasTurbo ? "Yes" : "No"));
+	        System.out.println("ID: " + getId() +
+	                           ", Type: " + getType() +
+	                           ", Model: " + getModel() +
+	                           ", Condition: " + getCondition() +
+	                           ", Color: " + getColor() +
+	                           ", Capacity: " + getCapacity() +
+	                           ", Price: $" + getPrice() +
+	                           ", Transmission: " + getTransmission() +
+	                           ", VIN: " + getVin() +
+	                           ", Fuel Type: " + getFuelType() +
+	                           ", Year: " + getYear() +
+	                           ", Cars Available: " + getCarsAvailable() +
+	                           ", Turbo: " + (getHasTurbo() ? "Yes" : "No"));
 	    }
 
 	    /**
@@ -80,34 +95,7 @@ public class Car implements ICSVSerializable {
 	     * @return A String array containing all car details for CSV storage.
 	     */
 	    public String[] ArrayListToCSV() {
-	        Map<String, String> carValues = new HashMap<>();
-	        carValues.put("ID", String.valueOf(id));
-	        carValues.put("Car Type", type);
-	        carValues.put("Model", model);
-	        carValues.put("Condition", condition);
-	        carValues.put("Color", color);
-	        carValues.put("Capacity", String.valueOf(capacity));
-	        carValues.put("Year", String.valueOf(year));
-
-	        carValues.put("Transmission", transmission);
-	        carValues.put("VIN", vin);
-	        carValues.put("Fuel Type", fuelType);
-	        carValues.put("Price", String.format("%.2f", price));
-	        carValues.put("Cars Available", String.valueOf(carsAvailable));
-	        carValues.put("hasTurbo", hasTurbo ? "Yes" : "No");
-	       
-
-	        // Create an array matching the order of the header
-	        
-	        String[] csvValues = new String[loadAllCars.header.length];
-	        for (int i = 0; i < loadAllCars.header.length; i++) {
-	            csvValues[i] = carValues.getOrDefault(loadAllCars.header[i], "");
-	            
-
-	        }
-	        
-
-	        return csvValues;
+	        return CarCSVSerializer.forHeader(loadAllCars.header).toArray(this);
 	    }
 
 
@@ -191,6 +179,48 @@ public class Car implements ICSVSerializable {
         return carsAvailable;
     }
 
+    /**
+     * @return The code of the type in {@link SymbolTable#TYPES}.
+     */
+    public int getTypeCode() {
+        return typeCode;
+    }
+
+    /**
+     * @return The code of the model in {@link SymbolTable#MODELS}.
+     */
+    public int getModelCode() {
+        return modelCode;
+    }
+
+    /**
+     * @return The code of the condition in {@link SymbolTable#CONDITIONS}.
+     */
+    public int getConditionCode() {
+        return conditionCode;
+    }
+
+    /**
+     * @return The code of the color in {@link SymbolTable#COLORS}.
+     */
+    public int getColorCode() {
+        return colorCode;
+    }
+
+    /**
+     * @return The code of the transmission in {@link SymbolTable#TRANSMISSIONS}.
+     */
+    public int getTransmissionCode() {
+        return transmissionCode;
+    }
+
+    /**
+     * @return The code of the fuel type in {@link SymbolTable#FUEL_TYPES}.
+     */
+    public int getFuelTypeCode() {
+        return fuelTypeCode;
+    }
+
     // Setters
     
  
@@ -207,7 +237,8 @@ public class Car implements ICSVSerializable {
      * @param type The new type for the car.
      */
     public void setType(String type) {
-        this.type = type;
+        this.typeCode = SymbolTable.TYPES.code(type);
+        this.type = SymbolTable.TYPES.symbol(typeCode);
     }
 
     /**
@@ -215,7 +246,8 @@ public class Car implements ICSVSerializable {
      * @param model The new model for the car.
      */
     public void setModel(String model) {
-        this.model = model;
+        this.modelCode = SymbolTable.MODELS.code(model);
+        this.model = SymbolTable.MODELS.symbol(modelCode);
     }
 
     /**
@@ -223,7 +255,8 @@ public class Car implements ICSVSerializable {
      * @param condition The new condition of the car (e.g., New, Used).
      */
     public void setCondition(String condition) {
-        this.condition = condition;
+        this.conditionCode = SymbolTable.CONDITIONS.code(condition);
+        this.condition = SymbolTable.CONDITIONS.symbol(conditionCode);
     }
 
     /**
@@ -231,7 +264,8 @@ public class Car implements ICSVSerializable {
      * @param color The new color for the car.
      */
     public void setColor(String color) {
-        this.color = color;
+        this.colorCode = SymbolTable.COLORS.code(color);
+        this.color = SymbolTable.COLORS.symbol(colorCode);
     }
 
     /**
@@ -248,7 +282,8 @@ public class Car implements ICSVSerializable {
      * @param fuelType The new fuel type for the car (e.g., Gasoline, Electric).
      */
     public void setFuelType(String fuelType) {
-        this.fuelType = fuelType;
+        this.fuelTypeCode = SymbolTable.FUEL_TYPES.code(fuelType);
+        this.fuelType = SymbolTable.FUEL_TYPES.symbol(fuelTypeCode);
     }
 
     /**
@@ -256,7 +291,8 @@ public class Car implements ICSVSerializable {
      * @param transmission The new transmission type for the car (e.g., Automatic, Manual).
      */
     public void setTransmission(String transmission) {
-        this.transmission = transmission;
+        this.transmissionCode = SymbolTable.TRANSMISSIONS.code(transmission);
+        this.transmission = SymbolTable.TRANSMISSIONS.symbol(transmissionCode);
     }
 
     /**
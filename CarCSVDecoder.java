@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * Reads cars from rows of the car CSV file. The header is resolved once into the column of each car
+ * field, so decoding a row reads its cells by position and passes them straight to the car constructor,
+ * without building a map of the row.
+ * <p>
+ * Fields whose column is missing from the header get the same defaults as before: 0 for numbers,
+ * "No" for text and false for the turbo flag. Cells missing from a short row are read as empty.
+ */
+public final class CarCSVDecoder {
+
+    private static final int ID = 0;
+    private static final int TYPE = 1;
+    private static final int MODEL = 2;
+    private static final int CONDITION = 3;
+    private static final int COLOR = 4;
+    private static final int CAPACITY = 5;
+    private static final int YEAR = 6;
+    private static final int TRANSMISSION = 7;
+    private static final int VIN = 8;
+    private static final int FUEL_TYPE = 9;
+    private static final int PRICE = 10;
+    private static final int CARS_AVAILABLE = 11;
+    private static final int TURBO = 12;
+    private static final int FIELD_COUNT = 13;
+
+    /**
+     * Marks a field whose column is not in the header.
+     */
+    private static final int ABSENT = -1;
+
+    /**
+     * The column of each field, or {@link #ABSENT}.
+     */
+    private final int[] columns = new int[FIELD_COUNT];
+
+    /**
+     * Resolves the columns of a header. When a column name repeats, the last one is used.
+     *
+     * @param header The column names of the car CSV file.
+     */
+    public CarCSVDecoder(String[] header) {
+        Arrays.fill(columns, ABSENT);
+        for (int i = 0; i < header.length; i++) {
+            int field = fieldOf(header[i]);
+            if (field != ABSENT) {
+                columns[field] = i;
+            }
+        }
+    }
+
+    private static int fieldOf(String column) {
+        switch (column) {
+            case "ID": return ID;
+            case "Car Type": return TYPE;
+            case "Model": return MODEL;
+            case "Condition": return CONDITION;
+            case "Color": return COLOR;
+            case "Capacity": return CAPACITY;
+            case "Year": return YEAR;
+            case "Transmission": return TRANSMISSION;
+            case "VIN": return VIN;
+            case "Fuel Type": return FUEL_TYPE;
+            case "Price": return PRICE;
+            case "Cars Available": return CARS_AVAILABLE;
+            case "hasTurbo": return TURBO;
+            default: return ABSENT;
+        }
+    }
+
+    /**
+     * Creates the car described by a row, of the subclass that matches its type.
+     *
+     * @param row The cells of the row.
+     * @return The new car.
+     * @throws NumberFormatException If the year or the number of cars available is not a number.
+     */
+    public Car decode(String[] row) {
+        int id = parseInt(cell(row, ID, "0"));
+        int capacity = parseInt(cell(row, CAPACITY, "0"));
+        float price = parseFloat(cell(row, PRICE, "0"));
+        int carsAvailable = Integer.parseInt(cell(row, CARS_AVAILABLE, "0"));
+        boolean hasTurbo = parseBoolean(cell(row, TURBO, "false"));
+        int year = Integer.parseInt(cell(row, YEAR, "0"));
+
+        return loadAllCars.createCar(id, cell(row, TYPE, "No"), cell(row, MODEL, "No"), cell(row, CONDITION, "No"),
+                cell(row, COLOR, "No"), capacity, price, cell(row, TRANSMISSION, "No"), cell(row, VIN, "No"),
+                cell(row, FUEL_TYPE, "No"), year, carsAvailable, hasTurbo);
+    }
+
+    /**
+     * Reads the trimmed cell of a field, or the default when the header has no column for it.
+     */
+    private String cell(String[] row, int field, String defaultValue) {
+        int column = columns[field];
+        if (column == ABSENT) {
+            return defaultValue;
+        }
+        return column < row.length ? row[column].trim() : "";
+    }
+
+    /**
+     * Parses an integer, returning 0 if the value is not a number.
+     */
+    private static int parseInt(String value) {
+        if (value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parses a float, returning 0.0f if the value is not a number.
+     */
+    private static float parseFloat(String value) {
+        if (value.isEmpty()) {
+            return 0.0f;
+        }
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return 0.0f;
+        }
+    }
+
+    /**
+     * Recognizes "true" or "yes" (case insensitive) as true, anything else as false.
+     */
+    private static boolean parseBoolean(String value) {
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+}
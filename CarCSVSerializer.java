@@ -0,0 +1,128 @@
+/**
+ * Writes cars as rows of the car CSV file. The header is compiled once into the field of each
+ * column, so writing a row is a loop over ints with no map lookups and no temporary Strings.
+ */
+public final class CarCSVSerializer {
+
+    private static final int UNKNOWN = -1;
+    private static final int ID = 0;
+    private static final int TYPE = 1;
+    private static final int MODEL = 2;
+    private static final int CONDITION = 3;
+    private static final int COLOR = 4;
+    private static final int CAPACITY = 5;
+    private static final int YEAR = 6;
+    private static final int TRANSMISSION = 7;
+    private static final int VIN = 8;
+    private static final int FUEL_TYPE = 9;
+    private static final int PRICE = 10;
+    private static final int CARS_AVAILABLE = 11;
+    private static final int TURBO = 12;
+
+    /**
+     * The serializer compiled for the last header used, reused while the header does not change.
+     */
+    private static volatile CarCSVSerializer cached;
+
+    private final String[] header;
+    private final int[] fields;
+
+    private CarCSVSerializer(String[] header) {
+        this.header = header;
+        this.fields = new int[header.length];
+        for (int i = 0; i < header.length; i++) {
+            fields[i] = fieldOf(header[i]);
+        }
+    }
+
+    /**
+     * Returns the serializer for a header, compiling it only when the header differs from the last one.
+     *
+     * @param header The column names of the car CSV file, such as {@link loadAllCars#header}.
+     * @return The serializer for that header.
+     */
+    public static CarCSVSerializer forHeader(String[] header) {
+        CarCSVSerializer serializer = cached;
+        if (serializer == null || serializer.header != header) {
+            serializer = new CarCSVSerializer(header);
+            cached = serializer;
+        }
+        return serializer;
+    }
+
+    private static int fieldOf(String column) {
+        switch (column) {
+            case "ID": return ID;
+            case "Car Type": return TYPE;
+            case "Model": return MODEL;
+            case "Condition": return CONDITION;
+            case "Color": return COLOR;
+            case "Capacity": return CAPACITY;
+            case "Year": return YEAR;
+            case "Transmission": return TRANSMISSION;
+            case "VIN": return VIN;
+            case "Fuel Type": return FUEL_TYPE;
+            case "Price": return PRICE;
+            case "Cars Available": return CARS_AVAILABLE;
+            case "hasTurbo": return TURBO;
+            default: return UNKNOWN;
+        }
+    }
+
+    /**
+     * Writes a car as one row. Columns the serializer does not know are left empty.
+     *
+     * @param car The car to write.
+     * @param out The writer receiving the row.
+     */
+    public void write(Car car, CSVRowWriter out) {
+        for (int field : fields) {
+            switch (field) {
+                case ID: out.integer(car.getId()); break;
+                case TYPE: out.text(car.getType()); break;
+                case MODEL: out.text(car.getModel()); break;
+                case CONDITION: out.text(car.getCondition()); break;
+                case COLOR: out.text(car.getColor()); break;
+                case CAPACITY: out.integer(car.getCapacity()); break;
+                case YEAR: out.integer(car.getYear()); break;
+                case TRANSMISSION: out.text(car.getTransmission()); break;
+                case VIN: out.text(car.getVin()); break;
+                case FUEL_TYPE: out.text(car.getFuelType()); break;
+                case PRICE: out.decimal2(car.getPrice()); break;
+                case CARS_AVAILABLE: out.integer(car.getCarsAvailable()); break;
+                case TURBO: out.bool(car.getHasTurbo(), "Yes", "No"); break;
+                default: out.text(""); break;
+            }
+        }
+        out.endRow();
+    }
+
+    /**
+     * Converts a car into the String values of one row, in header order.
+     *
+     * @param car The car to convert.
+     * @return The values of the row.
+     */
+    public String[] toArray(Car car) {
+        String[] values = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            switch (fields[i]) {
+                case ID: values[i] = String.valueOf(car.getId()); break;
+                case TYPE: values[i] = car.getType(); break;
+                case MODEL: values[i] = car.getModel(); break;
+                case CONDITION: values[i] = car.getCondition(); break;
+                case COLOR: values[i] = car.getColor(); break;
+                case CAPACITY: values[i] = String.valueOf(car.getCapacity()); break;
+                case YEAR: values[i] = String.valueOf(car.getYear()); break;
+                case TRANSMISSION: values[i] = car.getTransmission(); break;
+                case VIN: values[i] = car.getVin(); break;
+                case FUEL_TYPE: values[i] = car.getFuelType(); break;
+                case PRICE: values[i] = String.format("%.2f", car.getPrice()); break;
+                case CARS_AVAILABLE: values[i] = String.valueOf(car.getCarsAvailable()); break;
+                case TURBO: values[i] = car.getHasTurbo() ? "Yes" : "No"; break;
+                default: values[i] = ""; break;
+            }
+        }
+        return values;
+    }
+}
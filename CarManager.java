@@ -1,42 +1,338 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.time.Year;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Manages car-related operations including loading cars, processing purchases, and handling inventory.
  * This class is responsible for interfacing with car data stored in CSV files and managing the car purchasing process.
  */
 public class CarManager {
+
+    /**
+     * The columns read from a bulk import file, in the order used by {@link #validateImportRow}.
+     */
+    private static final String[] IMPORT_COLUMNS = {"Car Type", "Model", "Condition", "Color", "Capacity", "Year",
+            "Fuel Type", "Transmission", "VIN", "Price", "Cars Available", "hasTurbo"};
+
+    /**
+     * The car types accepted by a bulk import.
+     */
+    private static final String[] IMPORT_TYPES = {"Sedan", "SUV", "Hatchback", "Pickup"};
+
+    /**
+     * A VIN is 17 upper case letters or digits.
+     */
+    private static final Pattern VIN_PATTERN = Pattern.compile("[A-Z0-9]{17}");
+
+    /**
+     * The oldest model year accepted by a bulk import.
+     */
+    private static final int MIN_IMPORT_YEAR = 1886;
+
+    /**
+     * The name of the car CSV file inside a data directory.
+     */
+    public static final String CAR_FILE = "car_data_part2.csv";
+
+    /**
+     * The name of the ticket CSV file inside a data directory.
+     */
+    public static final String TICKET_FILE = "issued_tickets.csv";
+
+    private static final LatencyHistogram PURCHASE_TIMER = Metrics.timer("purchaseCar");
+    private static final LatencyHistogram PURCHASE_ORDER_TIMER = Metrics.timer("purchaseCars");
+    private static final LatencyHistogram SAVE_TIMER = Metrics.timer("csv.saveCars");
+    private static final LatencyHistogram PRINT_TIMER = Metrics.timer("printAllCars");
+    private static final LatencyHistogram PRINT_CONDITION_TIMER = Metrics.timer("printConditionCars");
+    private static final LatencyHistogram ADD_TIMER = Metrics.timer("addCar");
+    private static final LatencyHistogram IMPORT_TIMER = Metrics.timer("importCars");
+    private static final LatencyHistogram REMOVE_TIMER = Metrics.timer("removeCar");
+    private static final LatencyHistogram FIND_TIMER = Metrics.timer("findCarById");
+    private static final LatencyHistogram REVENUE_TIMER = Metrics.timer("getRevenue");
+    private static final LatencyHistogram DISPLAY_REVENUE_TIMER = Metrics.timer("displayRevenue");
+
+    /**
+     * The path of the CSV file the inventory is loaded from and saved to.
+     */
+    private final String carFilePath;
+
+    /**
+     * The path of the CSV file tickets are read from and appended to.
+     */
+    private final String ticketFilePath;
 	
     /**
-     * A list of all cars currently available in the inventory
+     * The current snapshot of all cars in the inventory. Readers take the snapshot once and iterate it
+     * without locking; writers hold the lock of this CarManager, build the next snapshot and publish it
+     * by swapping this reference.
      */
-    private List<Car> cars;
+    private final AtomicReference<InventorySnapshot> inventory;
     /**
      * Stores ticket information for each car purchase. Each ticket is represented as an array of strings
-     * containing detailed data about the transaction. This list is read from "issued_tickets.csv".
+     * containing detailed data about the transaction. This ledger is read from "issued_tickets.csv".
      */
-    private List<String[]> ticketData;
+    private final TicketLedger ticketData;
+
+    /**
+     * Publishes changes to stock, sales and balances to interested subscribers.
+     */
+    private final InventoryEventPublisher events = new InventoryEventPublisher();
+
+    /**
+     * Computes purchase prices and refunds from the pricing rules of the data directory.
+     */
+    private final PricingEngine pricing;
+
+    /**
+     * Suggests cars in stock in place of sold-out ones. Created the first time a suggestion is needed.
+     */
+    private volatile CarRecommender recommender;
+    private final Object recommenderLock = new Object();
+
+    /**
+     * Held while the car CSV file is rewritten, so two saves do not write the file at the same time.
+     * Saves read a snapshot and do not need the lock of this CarManager, so purchases go on meanwhile.
+     */
+    private final Object saveLock = new Object();
 
     
     /**
      * Initializes a CarManager object, loading cars from a CSV file and reading ticket data.
      */
     public CarManager() {
-        this.cars = loadAllCars.loadCarsFromCSV();
-        this.ticketData = CSVManager.readFromCSV("issued_tickets.csv");
-       
+        this(null);
+    }
+
+    /**
+     * Initializes a CarManager object whose car and ticket CSV files live in the given directory.
+     *
+     * @param dataDirectory The directory holding car_data_part2.csv and issued_tickets.csv, or null
+     *                      for the working directory.
+     */
+    public CarManager(String dataDirectory) {
+        this(dataDirectory, CarStore.configuredMode());
+    }
+
+    /**
+     * Initializes a CarManager object whose car and ticket CSV files live in the given directory,
+     * keeping the inventory in the given storage mode.
+     *
+     * @param dataDirectory The directory holding car_data_part2.csv and issued_tickets.csv, or null
+     *                      for the working directory.
+     * @param storageMode How cars are kept, as objects, in compact columns or in memory-mapped files
+     *                    next to the CSV files (which also holds the tickets).
+     */
+    public CarManager(String dataDirectory, CarStore.Mode storageMode) {
+        this(dataDirectory, storageMode, Runnable::run);
+    }
+
+    /**
+     * Initializes a CarManager object, reading the tickets on the given executor while the calling
+     * thread loads the cars. The constructor returns once both are loaded.
+     *
+     * @param dataDirectory The directory holding car_data_part2.csv and issued_tickets.csv, or null
+     *                      for the working directory.
+     * @param storageMode How cars are kept, as objects, in compact columns or in memory-mapped files.
+     * @param ticketLoader Runs the loading of the tickets, for example on another thread.
+     */
+    public CarManager(String dataDirectory, CarStore.Mode storageMode, Executor ticketLoader) {
+        this.carFilePath = dataFile(dataDirectory, CAR_FILE);
+        this.ticketFilePath = dataFile(dataDirectory, TICKET_FILE);
+        this.pricing = new PricingEngine(dataFile(dataDirectory, PricingEngine.RULES_FILE));
+        InventorySnapshot snapshot = null;
+        TicketLedger tickets = null;
+        if (storageMode == CarStore.Mode.MAPPED) {
+            try {
+                MappedCarStore store = MappedCarStore.open(carFilePath);
+                CompletableFuture<TicketLedger> mappedTickets = CompletableFuture.supplyAsync(
+                        () -> MappedTicketLedger.open(ticketFilePath), ticketLoader);
+                InventorySnapshot restored = restoreMapped(store);
+                tickets = join(mappedTickets);
+                snapshot = restored;
+            } catch (UncheckedIOException e) {
+                System.out.println("Could not open the mapped inventory, keeping it in memory: " + e.getMessage());
+                storageMode = CarStore.Mode.COLUMNAR;
+            }
+        }
+        if (snapshot == null) {
+            CompletableFuture<TicketLedger> heapTickets = CompletableFuture.supplyAsync(
+                    () -> new TicketLedger(CSVManager.readFromCSV(ticketFilePath)), ticketLoader);
+            snapshot = InventorySnapshot.of(CarStore.create(storageMode), loadAllCars.loadCarsFromCSV(carFilePath));
+            tickets = join(heapTickets);
+        }
+        this.inventory = new AtomicReference<>(snapshot);
+        this.ticketData = tickets;
+    }
+
+    /**
+     * Waits for a ledger being loaded, rethrowing what the loading threw.
+     */
+    private static TicketLedger join(CompletableFuture<TicketLedger> tickets) {
+        try {
+            return tickets.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the inventory of a mapped store. The car CSV file is only parsed when it changed since
+     * the store last matched it; otherwise the cars are used straight from the mapped file.
+     *
+     * @param store The mapped store of the car CSV file.
+     * @return The first inventory snapshot.
+     */
+    private InventorySnapshot restoreMapped(MappedCarStore store) {
+        File carFile = new File(carFilePath);
+        if (store.matches(carFile)) {
+            loadAllCars.loadHeader(carFilePath);
+            return InventorySnapshot.restore(store);
+        }
+        store.clear();
+        InventorySnapshot snapshot = InventorySnapshot.of(store, loadAllCars.loadCarsFromCSV(carFilePath));
+        store.sourceSaved(carFile);
+        return snapshot;
+    }
+
+    /**
+     * Resolves the path of a data file inside a data directory.
+     *
+     * @param dataDirectory The data directory, or null for the working directory.
+     * @param fileName The name of the file.
+     * @return The path of the file.
+     */
+    static String dataFile(String dataDirectory, String fileName) {
+        return dataDirectory == null ? fileName : new File(dataDirectory, fileName).getPath();
+    }
+
+    /**
+     * @return The path of the CSV file holding the inventory.
+     */
+    public String getCarFilePath() {
+        return carFilePath;
+    }
+
+    /**
+     * @return The path of the CSV file holding the issued tickets.
+     */
+    public String getTicketFilePath() {
+        return ticketFilePath;
+    }
+
+    /**
+     * Returns the current inventory snapshot. The snapshot never changes, so it can be iterated
+     * while cars are being added or removed.
+     *
+     * @return The current inventory snapshot.
+     */
+    public InventorySnapshot getInventory() {
+        return inventory.get();
+    }
+
+    /**
+     * Returns the publisher of inventory and sales events. Subscribe to it to be notified when cars are
+     * added or removed, stock changes, tickets are issued or deleted, or a balance changes.
+     *
+     * @return The event publisher of this CarManager.
+     */
+    public InventoryEventPublisher getEvents() {
+        return events;
+    }
+
+    /**
+     * @return The pricing engine that computes what purchases cost and what returns refund.
+     */
+    public PricingEngine getPricing() {
+        return pricing;
+    }
+
+    /**
+     * Returns the recommender of similar cars in stock, creating it and starting to compute its
+     * suggestions the first time.
+     *
+     * @return The recommender, or null if {@code -Dcarshop.recommendations=0} turns suggestions off.
+     */
+    public CarRecommender getRecommender() {
+        CarRecommender current = recommender;
+        if (current == null && Integer.getInteger("carshop.recommendations", CarRecommender.DEFAULT_K) > 0) {
+            synchronized (recommenderLock) {
+                current = recommender;
+                if (current == null) {
+                    current = new CarRecommender(this);
+                    recommender = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Prints the cars in stock most similar to a sold-out car, if there are any.
+     *
+     * @param carId The ID of the sold-out car.
+     */
+    private void printSimilarInStock(int carId) {
+        CarRecommender current = getRecommender();
+        List<CarRecommender.Suggestion> similar = current == null ? List.of() : current.similarInStock(carId);
+        if (!similar.isEmpty()) {
+            System.out.println("Similar cars in stock:");
+            for (CarRecommender.Suggestion suggestion : similar) {
+                System.out.println("    " + suggestion);
+            }
+        }
+    }
+
+    /**
+     * Publishes the changes collected in a builder as the next inventory epoch. Callers must hold
+     * the lock of this CarManager so that writers do not overwrite each other.
+     *
+     * @param changes The batch of changes to publish.
+     */
+    private void publish(InventorySnapshot.Builder changes) {
+        if (changes.isModified() && !inventory.compareAndSet(changes.getBase(), changes.build())) {
+            throw new IllegalStateException("The inventory was changed by another writer.");
+        }
     }
 
     /**
      * Prints details of all cars available in the shop.
      */
     public void printAllCars() {
-        for (Car car : cars) {
+        long start = System.nanoTime();
+        try {
+            printAllCarsUntimed();
+        } finally {
+            SlowOperationLog.finish(PRINT_TIMER, start, inventory.get().size(), -1, null, null);
+        }
+    }
+
+    private void printAllCarsUntimed() {
+        inventory.get().scan(car -> {
             car.displayDetails();
+            if (car.getCarsAvailable() <= 0) {
+                printSimilarInStock(car.getId());
+            }
             System.out.println();
-        }
+        });
     }
 
     /**
@@ -45,18 +341,36 @@ public class CarManager {
      * @param usedOrNew The condition of the cars to display. Should be either "New" or "Used".
      */
     public void printConditionCars(String usedOrNew) {
-        for (Car car : cars) {
-            if (usedOrNew.equals(car.getCondition())) {
+        long start = System.nanoTime();
+        try {
+            printConditionCarsUntimed(usedOrNew);
+        } finally {
+            SlowOperationLog.finish(PRINT_CONDITION_TIMER, start, inventory.get().size(), -1, usedOrNew, null);
+        }
+    }
+
+    private void printConditionCarsUntimed(String usedOrNew) {
+        int condition = SymbolTable.CONDITIONS.lookup(usedOrNew);
+        if (condition == SymbolTable.NO_CODE) {
+            return; // No car has ever had this condition
+        }
+        inventory.get().scan(car -> {
+            if (car.getConditionCode() == condition) {
                 car.displayDetails();
+                if (car.getCarsAvailable() <= 0) {
+                    printSimilarInStock(car.getId());
+                }
                 System.out.println(); // Adds an empty line between car details for readability
             }
-        }
+        });
     }
 
     /**
      * Attempts to purchase a car with the given ID for the currently logged-in user. If the user has enough funds
-     * and there is enough cars available, the car is purchased. Then it issues a ticket for the customer and saves it in the 
-     * issue_tickets.csv file. 
+     * for the price computed by the {@link PricingEngine} and there is enough cars available, the car is purchased. Then it issues a ticket for the customer and saves it in the 
+     * issue_tickets.csv file. The ticket is written before the stock and the balance change, so a
+     * ticket that cannot be saved leaves the purchase undone. Purchases hold the lock of this
+     * CarManager, so two customers cannot both buy the last car.
      * 
      * @param username The username of the buyer.
      * @param ID The ID of the car to purchase.
@@ -64,56 +378,37 @@ public class CarManager {
      * @return true if the purchase is successful; false otherwise.
      */
     public boolean purchaseCar(String username, String ID, UserManager userManager)throws Exception {
-    	
-    	float discount = (float) .9;
-    	
+        long start = System.nanoTime();
+        ShopEvents.Purchase event = new ShopEvents.Purchase();
+        event.begin();
+        boolean purchased = false;
+        try {
+            purchased = purchaseCarUntimed(username, ID, userManager);
+            return purchased;
+        } finally {
+            SlowOperationLog.finish(PURCHASE_TIMER, start, purchased ? 1 : 0, -1, username, ID);
+            if (event.shouldCommit()) {
+                event.username = username;
+                event.carIds = ID;
+                event.cars = 1;
+                event.purchased = purchased;
+                event.commit();
+            }
+        }
+    }
 
-    	
-        User currentUser = userManager.findUserByUsername(username);
-        if (currentUser == null) {
+    private synchronized boolean purchaseCarUntimed(String username, String ID, UserManager userManager) throws Exception {
+        if (userManager.findUserByUsername(username) == null) {
             System.out.println("No user is currently logged in or user not found.");
             return false;
         }
 
-        float userFunds = currentUser.getMoneyAvailable();
-
             int carId = Integer.parseInt(ID); 
 
-            for (Car car : cars) {
+            for (Car car : inventory.get()) {
                 if (carId == car.getId()) {
-                	
-                    if (userFunds >= car.getPrice()) {
-                        if (car.getCarsAvailable() > 0) {
-                        	
-                        	float taxes = (float) .0625;
-                        	float price = car.getPrice()*(1+taxes);
-                        	if(currentUser.isMinerCarsMembership()) {
-                        		price *= discount;
-                        	}
-                        	
-                            currentUser.setMoneyAvailable(userFunds - price);
-                            IssueTicket ticket = new IssueTicket(ID, username, car.getType(), car.getModel(), Year.now().getValue(), car.getColor(), car.getPrice());
-                            
-                            currentUser.setCarsPurchased(currentUser.getCarsPurchased() + 1);
-                            
-                            List<String[]> dataToWrite = new ArrayList<>();
-                            dataToWrite.add(ticket.CSVparser());
-                            
-                        
-                            CSVManager.writeToCSV("issued_tickets.csv", dataToWrite);
-                            
-                            car.setCarsAvailable(car.getCarsAvailable() - 1);
-                  
-
-                            return true;
-                        } else {
-                            System.out.println("No cars available.");
-                            return false;
-                        }
-                    } else {
-                        System.out.println("Insufficient funds.");
-                        return false;
-                    }
+                    // The balance is checked and charged while the user cannot leave the cache
+                    return userManager.updateUser(username, currentUser -> purchaseUnit(car, ID, username, currentUser)) != null;
                 }
             }
  
@@ -121,19 +416,275 @@ public class CarManager {
         System.out.println("Car with ID " + ID + " not found.");
         return false;
     }
-    
-    
+
+    /**
+     * Sells one unit of a car to a user, saving its ticket, with the amount charged, first.
+     *
+     * @return true if the car was purchased and the user charged.
+     */
+    private boolean purchaseUnit(Car car, String ID, String username, User currentUser) {
+        float userFunds = currentUser.getMoneyAvailable();
+        float price = pricing.purchasePrice(car, currentUser);
+        if (userFunds >= price) {
+            if (car.getCarsAvailable() > 0) {
+                IssueTicket ticket = new IssueTicket(ID, username, car.getType(), car.getModel(), Year.now().getValue(), car.getColor(), car.getPrice(), price);
+
+                List<String[]> dataToWrite = new ArrayList<>();
+                dataToWrite.add(ticket.CSVparser());
+
+                if (!appendTickets(dataToWrite)) {
+                    System.out.println("The ticket could not be saved, the car was not purchased.");
+                    return false;
+                }
+
+                currentUser.setMoneyAvailable(userFunds - price);
+                currentUser.setCarsPurchased(currentUser.getCarsPurchased() + 1);
+                car.setCarsAvailable(car.getCarsAvailable() - 1);
+
+                if (events.hasSubscribers()) {
+                    events.publish(InventoryEvent.ticketIssued(ticket));
+                    events.publish(InventoryEvent.stockChanged(car));
+                    events.publish(InventoryEvent.balanceChanged(currentUser));
+                }
+
+                return true;
+            } else {
+                System.out.println("No cars available.");
+                printSimilarInStock(car.getId());
+                return false;
+            }
+        } else {
+            System.out.println("Insufficient funds.");
+            return false;
+        }
+    }
+
     /**
-     * Saves the current state of car inventory to a CSV file.
+     * Purchases several cars in a single all-or-nothing transaction. Every line is validated first
+     * (car exists, enough stock for all requested units of that car, and enough funds for the whole
+     * order, each car priced by the {@link PricingEngine}); if any check fails nothing is changed. All
+     * tickets are then appended to issued_tickets.csv in one write, and only once they are saved are
+     * stock and user data updated; if the write fails, the rows already written are cut off again and
+     * nothing is purchased. The checks and the changes happen under the lock of this CarManager, so
+     * concurrent orders cannot both take the same stock.
+     *
+     * @param username The username of the buyer.
+     * @param IDs The IDs of the cars to purchase. The same ID may appear several times to buy several units.
+     * @param userManager an instance of the UserManager object.
+     * @return true if the whole order was purchased; false otherwise.
+     */
+    public boolean purchaseCars(String username, List<String> IDs, UserManager userManager) {
+        long start = System.nanoTime();
+        ShopEvents.Purchase event = new ShopEvents.Purchase();
+        event.begin();
+        boolean purchased = false;
+        try {
+            purchased = purchaseCarsUntimed(username, IDs, userManager);
+            return purchased;
+        } finally {
+            SlowOperationLog.finish(PURCHASE_ORDER_TIMER, start, purchased ? IDs.size() : 0, -1, username, IDs);
+            if (event.shouldCommit()) {
+                event.username = username;
+                event.carIds = IDs == null ? null : String.join(",", IDs);
+                event.cars = IDs == null ? 0 : IDs.size();
+                event.purchased = purchased;
+                event.commit();
+            }
+        }
+    }
+
+    private synchronized boolean purchaseCarsUntimed(String username, List<String> IDs, UserManager userManager) {
+        if (userManager.findUserByUsername(username) == null) {
+            System.out.println("No user is currently logged in or user not found.");
+            return false;
+        }
+        if (IDs == null || IDs.isEmpty()) {
+            System.out.println("No cars selected.");
+            return false;
+        }
+
+        // Resolve every line up front and count how many units each car needs
+        List<Car> orderCars = new ArrayList<>(IDs.size());
+        Map<Car, Integer> unitsPerCar = new LinkedHashMap<>();
+        for (String ID : IDs) {
+            Car car;
+            try {
+                car = findCarById(Integer.parseInt(ID.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid car ID: " + ID);
+                return false;
+            }
+            if (car == null) {
+                System.out.println("Car with ID " + ID + " not found.");
+                return false;
+            }
+            orderCars.add(car);
+            unitsPerCar.merge(car, 1, Integer::sum);
+        }
+
+        for (Map.Entry<Car, Integer> entry : unitsPerCar.entrySet()) {
+            if (entry.getKey().getCarsAvailable() < entry.getValue()) {
+                System.out.println("Not enough cars available for ID " + entry.getKey().getId() + ".");
+                printSimilarInStock(entry.getKey().getId());
+                return false;
+            }
+        }
+
+        // The balance is checked and charged while the user cannot leave the cache
+        return userManager.updateUser(username, currentUser -> purchaseOrder(orderCars, unitsPerCar, username, currentUser)) != null;
+    }
+
+    /**
+     * Prices a checked order for a user and, if the user can pay for it, saves its tickets, each with
+     * the amount charged for its car, and applies it.
+     *
+     * @return true if the whole order was purchased and the user charged.
+     */
+    private boolean purchaseOrder(List<Car> orderCars, Map<Car, Integer> unitsPerCar, String username, User currentUser) {
+        float[] prices = new float[orderCars.size()];
+        float total = 0;
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = pricing.purchasePrice(orderCars.get(i), currentUser);
+            total += prices[i];
+        }
+        if (currentUser.getMoneyAvailable() < total) {
+            System.out.println("Insufficient funds.");
+            return false;
+        }
+
+        // Every check passed, save the tickets and then apply the whole order
+        List<IssueTicket> tickets = new ArrayList<>(orderCars.size());
+        List<String[]> dataToWrite = new ArrayList<>(orderCars.size());
+        int year = Year.now().getValue();
+        for (int i = 0; i < prices.length; i++) {
+            Car car = orderCars.get(i);
+            IssueTicket ticket = new IssueTicket(String.valueOf(car.getId()), username, car.getType(), car.getModel(), year, car.getColor(), car.getPrice(), prices[i]);
+            tickets.add(ticket);
+            dataToWrite.add(ticket.CSVparser());
+        }
+        if (!appendTickets(dataToWrite)) {
+            System.out.println("The tickets could not be saved, no car was purchased.");
+            return false;
+        }
+
+        for (Map.Entry<Car, Integer> entry : unitsPerCar.entrySet()) {
+            entry.getKey().setCarsAvailable(entry.getKey().getCarsAvailable() - entry.getValue());
+        }
+        currentUser.setMoneyAvailable(currentUser.getMoneyAvailable() - total);
+        currentUser.setCarsPurchased(currentUser.getCarsPurchased() + orderCars.size());
+
+        if (events.hasSubscribers()) {
+            for (IssueTicket ticket : tickets) {
+                events.publish(InventoryEvent.ticketIssued(ticket));
+            }
+            for (Car car : unitsPerCar.keySet()) {
+                events.publish(InventoryEvent.stockChanged(car));
+            }
+            events.publish(InventoryEvent.balanceChanged(currentUser));
+        }
+
+        return true;
+    }
+
+    /**
+     * Appends tickets to the ticket file and to the tickets in memory. If the file cannot be written,
+     * it is cut back to its length before the write, so it holds all of the tickets or none of them.
+     *
+     * @param tickets The ticket rows to append.
+     * @return true if every ticket was saved; false if none was.
+     */
+    private boolean appendTickets(List<String[]> tickets) {
+        ShopEvents.TicketWrite event = new ShopEvents.TicketWrite();
+        File file = new File(ticketFilePath);
+        long sizeBefore = file.length();
+        event.begin();
+        if (!CSVManager.writeToCSV(ticketFilePath, tickets)) {
+            truncateTickets(file, sizeBefore);
+            return false;
+        }
+        ticketData.addAll(tickets);
+        if (event.shouldCommit()) {
+            event.file = ticketFilePath;
+            event.carIds = tickets.stream().map(row -> row[0]).collect(Collectors.joining(","));
+            event.rows = tickets.size();
+            event.bytes = file.length() - sizeBefore;
+            event.commit();
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the first ticket of a car and a username from the ticket file and from the tickets in
+     * memory, so revenue no longer counts a returned car. The ticket file is rewritten, or with the
+     * mapped storage only the line of the ticket is blanked, under the lock of this CarManager, so
+     * tickets appended by purchases meanwhile are not lost.
+     *
+     * @param carId The ID of the car.
+     * @param username The username of the ticket holder.
+     * @return The row of the deleted ticket, with the amount it charged, or null if no ticket was deleted.
+     * @throws IOException If the ticket file could not be read or written.
+     */
+    public synchronized String[] deleteTicket(int carId, String username) throws IOException {
+        return ticketData.deleteTicket(ticketFilePath, carId, username);
+    }
+
+    /**
+     * Cuts the ticket file back to a length it had before a failed write.
+     */
+    private static void truncateTickets(File file, long length) {
+        if (!file.isFile() || file.length() <= length) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        } catch (IOException e) {
+            System.out.println("Could not remove the partly written tickets from " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the current state of car inventory to a CSV file. Saves from several threads write the
+     * file one after another.
      */
     public void saveCarsToCSV() {
-        List<String[]> carDataWrite = new ArrayList<>();
-        carDataWrite.add(loadAllCars.header);  // Ensure the header is included
-        for (Car car : cars) {
-            carDataWrite.add(car.ArrayListToCSV());
-            
+        long start = System.nanoTime();
+        ShopEvents.InventorySave event = new ShopEvents.InventorySave();
+        event.begin();
+        try {
+            event.saved = saveCarsToCSVUntimed(event);
+        } finally {
+            SlowOperationLog.finish(SAVE_TIMER, start, event.rows, event.bytes, carFilePath, null);
+            if (event.shouldCommit()) {
+                event.file = carFilePath;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean saveCarsToCSVUntimed(ShopEvents.InventorySave event) {
+        synchronized (saveLock) {
+            return writeCarsToCSV(event);
         }
-        CSVManager.updateCSV("car_data_part2.csv", carDataWrite);
+    }
+
+    private boolean writeCarsToCSV(ShopEvents.InventorySave event) {
+        CarCSVSerializer serializer = CarCSVSerializer.forHeader(loadAllCars.header);
+        try (CSVRowWriter writer = new CSVRowWriter(carFilePath, false)) {
+            writer.row(loadAllCars.header);  // Ensure the header is included
+            inventory.get().scan(car -> serializer.write(car, writer));
+            boolean failed = writer.checkError();
+            event.rows = writer.getRowsWritten() - 1;
+            event.bytes = writer.getBytesWritten();
+            if (failed) {
+                System.out.println("An error occurred while writing to the CSV file: " + writer.getError().getMessage());
+                return false;
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing to the CSV file: " + e.getMessage());
+            return false;
+        }
+        inventory.get().getStore().sourceSaved(new File(carFilePath));
+        return true;
     }
     
     
@@ -144,7 +695,7 @@ public class CarManager {
      */
     private int getNextId() {
         int maxId = 0;
-        for (Car car : cars) {
+        for (Car car : inventory.get()) {
             if (car.getId() > maxId) {
                 maxId = car.getId(); // Continuously find the highest ID
             }
@@ -171,30 +722,251 @@ public class CarManager {
 	 * @param hasTurbo Whether the car has a turbo feature.
 	 */
     public void addCar(String type, String model, String condition, String color, int capacity, int year, String fuelType, String transmission, String vin, float price, int carsAvailable, boolean hasTurbo) {
+        long start = System.nanoTime();
+        try {
+            addCarUntimed(type, model, condition, color, capacity, year, fuelType, transmission, vin, price, carsAvailable, hasTurbo);
+        } finally {
+            SlowOperationLog.finish(ADD_TIMER, start, 1, -1, vin, carsAvailable);
+        }
+    }
+
+    private synchronized void addCarUntimed(String type, String model, String condition, String color, int capacity, int year, String fuelType, String transmission, String vin, float price, int carsAvailable, boolean hasTurbo) {
     	
     	
     	int id = getNextId();
 
        
-        for (Car car : cars) {
-            if (car.getVin().equals(vin)) {
-                System.out.println("Updating Cars Available for VIN: " + vin);
-                car.setCarsAvailable(car.getCarsAvailable() + carsAvailable); // Update cars available count
-                saveCarsToCSV(); // Save changes to CSV
-                return;
+        Car car = inventory.get().find(existing -> existing.getVin().equals(vin));
+        if (car != null) {
+            System.out.println("Updating Cars Available for VIN: " + vin);
+            car.setCarsAvailable(car.getCarsAvailable() + carsAvailable); // Update cars available count
+            if (events.hasSubscribers()) {
+                events.publish(InventoryEvent.stockChanged(car));
             }
+            saveCarsToCSV(); // Save changes to CSV
+            return;
         }
 
         // If no car with the same VIN exists, create a new car
         Car newCar = new Car(id, type, model, condition, color, capacity, price, transmission, vin, fuelType, year, carsAvailable, hasTurbo);
 
-        cars.add(newCar);
+        InventorySnapshot.Builder changes = inventory.get().toBuilder();
+        newCar = changes.add(newCar);
+        publish(changes);
+        if (events.hasSubscribers()) {
+            events.publish(InventoryEvent.carAdded(newCar));
+        }
 
         
         saveCarsToCSV(); // Save changes to CSV
         System.out.println("New car added with ID: " + id + " and VIN: " + vin);
     }
 
+    /**
+     * Imports cars in bulk from a supplier CSV file that uses the same column names as the car CSV.
+     * Rows are streamed from the file and validated in parallel (VIN format, year range, price, type
+     * and numeric fields). Valid rows whose VIN already exists, in the inventory or earlier in the same
+     * file, only increase the number of cars available; new VINs are added with fresh IDs. Rejected rows
+     * are written to the quarantine file together with the reason, and the inventory is saved once at the end.
+     *
+     * @param filePath The path of the supplier CSV file.
+     * @param quarantineFilePath The path of the CSV file that receives rejected rows.
+     * @return The number of rows that were imported, or -1 if the file could not be read.
+     */
+    public int importCars(String filePath, String quarantineFilePath) {
+        long start = System.nanoTime();
+        int result = 0;
+        try {
+            result = importCarsUntimed(filePath, quarantineFilePath);
+            return result;
+        } finally {
+            SlowOperationLog.finish(IMPORT_TIMER, start, result, -1, filePath, quarantineFilePath);
+        }
+    }
+
+    private synchronized int importCarsUntimed(String filePath, String quarantineFilePath) {
+        List<ImportRow> rows;
+        String[] importHeader;
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                System.out.println("The import file is empty: " + filePath);
+                return -1;
+            }
+            importHeader = headerLine.split(",");
+            int[] columns = resolveImportColumns(importHeader);
+            if (columns == null) {
+                return -1;
+            }
+            rows = reader.lines()
+                    .parallel()
+                    .filter(line -> !line.trim().isEmpty())
+                    .map(line -> validateImportRow(line, columns))
+                    .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("An error occurred while reading the import file: " + e.getMessage());
+            return -1;
+        }
+
+        InventorySnapshot.Builder changes = inventory.get().toBuilder();
+        Map<String, Car> carsByVin = new HashMap<>();
+        for (Car car : changes.getBase()) {
+            carsByVin.put(car.getVin(), car);
+        }
+
+        int firstNewId = getNextId();
+        int nextId = firstNewId;
+        List<Car> changedCars = new ArrayList<>();
+        int added = 0;
+        int merged = 0;
+        List<String[]> rejected = new ArrayList<>();
+        for (ImportRow row : rows) {
+            if (row.car == null) {
+                rejected.add(new String[]{row.line, row.reason});
+                continue;
+            }
+            Car existing = carsByVin.get(row.car.getVin());
+            if (existing != null) {
+                existing.setCarsAvailable(existing.getCarsAvailable() + row.car.getCarsAvailable());
+                changedCars.add(existing);
+                merged++;
+            } else {
+                row.car.setId(nextId++);
+                Car stored = changes.add(row.car);
+                carsByVin.put(stored.getVin(), stored);
+                changedCars.add(stored);
+                added++;
+            }
+        }
+
+        publish(changes); // All new cars become visible together in one epoch
+        if (events.hasSubscribers()) {
+            for (Car car : changedCars) {
+                events.publish(car.getId() >= firstNewId ? InventoryEvent.carAdded(car) : InventoryEvent.stockChanged(car));
+            }
+        }
+        if (added + merged > 0) {
+            saveCarsToCSV();
+        }
+        int rejectedCount = rejected.size();
+        if (rejectedCount > 0) {
+            rejected.add(0, new String[]{String.join(",", importHeader), "Reason"});
+            CSVManager.updateCSV(quarantineFilePath, rejected);
+        }
+
+        System.out.println("Import finished: " + added + " new cars, " + merged + " stock updates, "
+                + rejectedCount + " rejected rows"
+                + (rejectedCount == 0 ? "." : " (see " + quarantineFilePath + ")."));
+        return added + merged;
+    }
+
+    /**
+     * Maps the columns needed by {@link #importCars} to their position in the import header.
+     *
+     * @param importHeader The header row of the import file.
+     * @return The column positions in {@code IMPORT_COLUMNS} order, or null if a required column is missing.
+     */
+    private static int[] resolveImportColumns(String[] importHeader) {
+        int[] columns = new int[IMPORT_COLUMNS.length];
+        for (int i = 0; i < IMPORT_COLUMNS.length; i++) {
+            columns[i] = -1;
+            for (int j = 0; j < importHeader.length; j++) {
+                if (importHeader[j].trim().equals(IMPORT_COLUMNS[i])) {
+                    columns[i] = j;
+                    break;
+                }
+            }
+            if (columns[i] < 0 && !"hasTurbo".equals(IMPORT_COLUMNS[i])) {
+                System.out.println("The import file is missing the column: " + IMPORT_COLUMNS[i]);
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Parses and validates one row of an import file. This method has no side effects so rows
+     * can be validated in parallel.
+     *
+     * @param line The raw CSV line.
+     * @param columns The column positions resolved by {@link #resolveImportColumns}.
+     * @return The validated row, holding either a car (with ID 0) or the reason it was rejected.
+     */
+    private static ImportRow validateImportRow(String line, int[] columns) {
+        String[] values = line.split(",");
+        String[] fields = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            fields[i] = columns[i] >= 0 && columns[i] < values.length ? values[columns[i]].trim() : "";
+        }
+
+        String type = null;
+        for (String knownType : IMPORT_TYPES) {
+            if (knownType.equalsIgnoreCase(fields[0])) {
+                type = knownType;
+            }
+        }
+        if (type == null) {
+            return new ImportRow(line, "Unknown car type: " + fields[0]);
+        }
+
+        String vin = fields[8].toUpperCase();
+        if (!VIN_PATTERN.matcher(vin).matches()) {
+            return new ImportRow(line, "Invalid VIN: " + fields[8]);
+        }
+
+        int capacity;
+        int year;
+        float price;
+        int carsAvailable;
+        try {
+            capacity = Integer.parseInt(fields[4]);
+            year = Integer.parseInt(fields[5]);
+            price = Float.parseFloat(fields[9]);
+            carsAvailable = Integer.parseInt(fields[10]);
+        } catch (NumberFormatException e) {
+            return new ImportRow(line, "Invalid number: " + e.getMessage());
+        }
+        if (year < MIN_IMPORT_YEAR || year > Year.now().getValue() + 1) {
+            return new ImportRow(line, "Year out of range: " + year);
+        }
+        if (!(price > 0) || Float.isInfinite(price)) {
+            return new ImportRow(line, "Invalid price: " + fields[9]);
+        }
+        if (capacity <= 0) {
+            return new ImportRow(line, "Invalid capacity: " + capacity);
+        }
+        if (carsAvailable < 0) {
+            return new ImportRow(line, "Invalid cars available: " + carsAvailable);
+        }
+
+        boolean hasTurbo = "yes".equalsIgnoreCase(fields[11]) || "true".equalsIgnoreCase(fields[11]);
+        Car car = loadAllCars.createCar(0, type, fields[1], fields[2], fields[3], capacity, price,
+                fields[7], vin, fields[6], year, carsAvailable, hasTurbo);
+        return new ImportRow(line, car);
+    }
+
+    /**
+     * The outcome of validating one row of an import file: either a car ready to be merged into
+     * the inventory or the reason the row was rejected.
+     */
+    private static class ImportRow {
+        private final String line;
+        private final Car car;
+        private final String reason;
+
+        ImportRow(String line, Car car) {
+            this.line = line;
+            this.car = car;
+            this.reason = null;
+        }
+
+        ImportRow(String line, String reason) {
+            this.line = line;
+            this.car = null;
+            this.reason = reason;
+        }
+    }
+
     /**
      * Removes a car from the inventory based on its VIN.
      *
@@ -202,7 +974,26 @@ public class CarManager {
      * @return true if the car was successfully removed; false otherwise.
      */
     public boolean removeCar(String vin) {
-        boolean removed = cars.removeIf(car -> car.getVin().equals(vin));
+        long start = System.nanoTime();
+        boolean result = false;
+        try {
+            result = removeCarUntimed(vin);
+            return result;
+        } finally {
+            SlowOperationLog.finish(REMOVE_TIMER, start, result ? 1 : 0, -1, vin, null);
+        }
+    }
+
+    private synchronized boolean removeCarUntimed(String vin) {
+        InventorySnapshot.Builder changes = inventory.get().toBuilder();
+        List<Car> removedCars = new ArrayList<>();
+        boolean removed = changes.removeIf(car -> car.getVin().equals(vin) && removedCars.add(car));
+        publish(changes);
+        if (events.hasSubscribers()) {
+            for (Car car : removedCars) {
+                events.publish(InventoryEvent.carRemoved(car));
+            }
+        }
         if (removed) {
             saveCarsToCSV(); // Update CSV file
             System.out.println("Car removed: VIN " + vin);
@@ -220,12 +1011,21 @@ public class CarManager {
      * @return The Car object if found; null otherwise.
      */
     public Car findCarById(int carId) {
-        for (Car car : cars) {
-            if (car.getId() == carId) {
-                return car;  // Return the car if its ID matches the provided carId
+        long start = System.nanoTime();
+        Car result = null;
+        try {
+            result = findCarByIdUntimed(carId);
+            return result;
+        } finally {
+            long nanos = FIND_TIMER.recordSince(start);
+            if (SlowOperationLog.isSlow(FIND_TIMER, nanos)) {
+                SlowOperationLog.write(FIND_TIMER, nanos, -1, -1, carId, null); // Boxes the ID only when slow
             }
         }
-        return null;  // Return null if no car is found with the specified ID
+    }
+
+    private Car findCarByIdUntimed(int carId) {
+        return inventory.get().find(car -> car.getId() == carId); // null if no car has the specified ID
     }
     
     /**
@@ -235,13 +1035,18 @@ public class CarManager {
      * @return Total revenue for the given car type.
      */
     public double getRevenueByType(String type) {
-        double totalRevenue = 0.0;
-        for (String[] ticket : ticketData) {
-            if (ticket[2].equalsIgnoreCase(type)) { // Using index 2 for car type
-                totalRevenue += Double.parseDouble(ticket[6]); // Using index 6 for price
-            }
+        long start = System.nanoTime();
+        double result = 0;
+        try {
+            result = getRevenueByTypeUntimed(type);
+            return result;
+        } finally {
+            SlowOperationLog.finish(REVENUE_TIMER, start, -1, -1, type, null);
         }
-        return totalRevenue;
+    }
+
+    private double getRevenueByTypeUntimed(String type) {
+        return ticketData.revenueByType(type);
     }
 
     /**
@@ -251,13 +1056,18 @@ public class CarManager {
      * @return Total revenue for the given car ID.
      */
     public double getRevenueById(String id) {
-        double totalRevenue = 0.0;
-        for (String[] ticket : ticketData) {
-            if (ticket.length > 6 && ticket[0].equals(id)) { // Using index 0 for ID
-                totalRevenue += Double.parseDouble(ticket[6]); // Using index 6 for price
-            }
+        long start = System.nanoTime();
+        double result = 0;
+        try {
+            result = getRevenueByIdUntimed(id);
+            return result;
+        } finally {
+            SlowOperationLog.finish(REVENUE_TIMER, start, -1, -1, id, null);
         }
-        return totalRevenue;
+    }
+
+    private double getRevenueByIdUntimed(String id) {
+        return ticketData.revenueById(id);
     }
     
     /**
@@ -266,6 +1076,15 @@ public class CarManager {
      * @param identifier The car type or ID to display revenue for.
      */
     public void displayRevenue(String identifier) {
+        long start = System.nanoTime();
+        try {
+            displayRevenueUntimed(identifier);
+        } finally {
+            SlowOperationLog.finish(DISPLAY_REVENUE_TIMER, start, -1, -1, identifier, null);
+        }
+    }
+
+    private void displayRevenueUntimed(String identifier) {
         // Attempt to calculate revenue as type first
         double revenueByType = getRevenueByType(identifier);
         if (revenueByType > 0) {
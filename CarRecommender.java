@@ -0,0 +1,636 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suggests similar cars that are in stock, for a car that is sold out, so a failed purchase or a
+ * listing of a sold-out car can offer something in its place.
+ * <p>
+ * Every car is turned into a vector: its price (on a log scale), year and capacity, standardized over
+ * the inventory, and its type, fuel type, transmission and turbo as one-hot parts. Similarity is the
+ * weighted squared distance between vectors, so a car of another type or far off in price is a poor
+ * match. The nearest cars in stock are precomputed for every car, so a suggestion is a lookup of a
+ * few IDs. Every list holds twice {@code k} cars, so a car selling out is usually just dropped from
+ * the lists that held it; a list is only searched for again once fewer than {@code k} remain.
+ * <p>
+ * The lists are kept up to date from the {@link InventoryEventPublisher} of the CarManager: a car
+ * coming back into stock is offered to every list it is closer than the worst entry of, and a car
+ * selling out is removed from only the lists that held it. Events arrive shortly after the change, so
+ * a suggestion can lag a purchase by a moment.
+ * <p>
+ * The publisher drops events when the buffer of the recommender is full, for example during a large
+ * import. The recommender is told of every dropped event and then builds all lists again from the
+ * current inventory on a background thread, so a missed event is never kept. The same build also
+ * runs when more than a quarter of the cars were added or removed since the last one, so the scales
+ * follow the inventory, and {@link #resync()} runs it on request, for example after prices were
+ * changed on the cars directly, which publishes no event. A build is done off the lock and then
+ * compared with the live inventory, so events that arrived while building are not lost. The first
+ * build runs when the recommender is created; for more than 2000 cars it runs on the background
+ * thread, and suggestions are empty until it is ready.
+ */
+public final class CarRecommender implements InventoryEventPublisher.LossAwareSubscriber {
+
+    /**
+     * The number of suggestions kept per car, unless {@code -Dcarshop.recommendations} says otherwise;
+     * 0 turns suggestions off.
+     */
+    public static final int DEFAULT_K = 5;
+
+    private static final int INLINE_BUILD_LIMIT = 2000;
+
+    /**
+     * Every list holds this many times {@code k} cars.
+     */
+    private static final int SPARE_FACTOR = 2;
+
+    /**
+     * The fraction of the cars that can be added or removed before the scales are computed again.
+     */
+    private static final double DRIFT_FRACTION = 0.25;
+
+    private static final double PRICE_WEIGHT = 1.5;
+    private static final double YEAR_WEIGHT = 1.0;
+    private static final double CAPACITY_WEIGHT = 0.5;
+    private static final double TYPE_WEIGHT = 2.0;
+    private static final double FUEL_WEIGHT = 0.5;
+    private static final double TRANSMISSION_WEIGHT = 0.25;
+    private static final double TURBO_WEIGHT = 0.25;
+
+    /**
+     * A car offered as a suggestion, as it was when the recommender learned of it.
+     */
+    public static final class Suggestion {
+        private final int id;
+        private final String type;
+        private final String model;
+        private final int year;
+        private final float price;
+
+        private Suggestion(Car car) {
+            this.id = car.getId();
+            this.type = car.getType();
+            this.model = car.getModel();
+            this.year = car.getYear();
+            this.price = car.getPrice();
+        }
+
+        /**
+         * @return The ID of the suggested car.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return The type of the suggested car.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return The model of the suggested car.
+         */
+        public String getModel() {
+            return model;
+        }
+
+        /**
+         * @return The model year of the suggested car.
+         */
+        public int getYear() {
+            return year;
+        }
+
+        /**
+         * @return The price of the suggested car, before taxes and discounts.
+         */
+        public float getPrice() {
+            return price;
+        }
+
+        @Override
+        public String toString() {
+            return "ID: " + id + ", " + year + " " + model + " (" + type + "), Price: $" + price;
+        }
+    }
+
+    /**
+     * The vector of one car and its nearest cars in stock. The neighbours are replaced as a whole, so
+     * readers need no lock; everything else that changes is only touched by the writer.
+     */
+    private static final class Entry {
+        private final Suggestion suggestion;
+        private final double price;
+        private final double year;
+        private final double capacity;
+        private final int type;
+        private final int fuel;
+        private final int transmission;
+        private final boolean turbo;
+        private volatile boolean inStock;
+        private volatile int[] neighbours;
+        private double[] distances;
+        private boolean complete; // The neighbours are every other car in stock
+        private Set<Integer> referencedBy; // The cars whose neighbours include this one, created when first needed
+
+        private Entry(Car car, double price, double year, double capacity) {
+            this.suggestion = new Suggestion(car);
+            this.price = price;
+            this.year = year;
+            this.capacity = capacity;
+            this.type = SymbolTable.TYPES.foldedCode(car.getTypeCode());
+            this.fuel = SymbolTable.FUEL_TYPES.foldedCode(car.getFuelTypeCode());
+            this.transmission = SymbolTable.TRANSMISSIONS.foldedCode(car.getTransmissionCode());
+            this.turbo = car.getHasTurbo();
+            this.inStock = car.getCarsAvailable() > 0;
+        }
+
+        private double distance(Entry other) {
+            double dp = price - other.price;
+            double dy = year - other.year;
+            double dc = capacity - other.capacity;
+            double d = PRICE_WEIGHT * dp * dp + YEAR_WEIGHT * dy * dy + CAPACITY_WEIGHT * dc * dc;
+            if (type != other.type) {
+                d += TYPE_WEIGHT;
+            }
+            if (fuel != other.fuel) {
+                d += FUEL_WEIGHT;
+            }
+            if (transmission != other.transmission) {
+                d += TRANSMISSION_WEIGHT;
+            }
+            if (turbo != other.turbo) {
+                d += TURBO_WEIGHT;
+            }
+            return d;
+        }
+    }
+
+    private final CarManager carManager;
+    private final int k;
+    private final int capacity;
+    private volatile Index index; // null until the first build is done
+
+    private final AtomicInteger buildRequests = new AtomicInteger();
+    private final AtomicBoolean building = new AtomicBoolean();
+    private final AtomicLong missedEvents = new AtomicLong();
+
+    /**
+     * Creates a recommender for the cars of a CarManager with the number of suggestions of
+     * {@code -Dcarshop.recommendations}, and starts building the lists.
+     *
+     * @param carManager The CarManager whose inventory and events are followed.
+     */
+    public CarRecommender(CarManager carManager) {
+        this(carManager, Integer.getInteger("carshop.recommendations", DEFAULT_K));
+    }
+
+    /**
+     * Creates a recommender for the cars of a CarManager and starts building the lists.
+     *
+     * @param carManager The CarManager whose inventory and events are followed.
+     * @param k The number of suggestions kept per car.
+     */
+    public CarRecommender(CarManager carManager, int k) {
+        this.carManager = carManager;
+        this.k = Math.max(1, k);
+        this.capacity = this.k * SPARE_FACTOR;
+        carManager.getEvents().subscribe(this); // Before reading the inventory, so no change is missed
+        if (carManager.getInventory().size() <= INLINE_BUILD_LIMIT) {
+            buildRequests.incrementAndGet();
+            building.set(true);
+            runBuilds();
+        } else {
+            requestBuild();
+        }
+    }
+
+    /**
+     * @return true once the suggestions of every car have been computed.
+     */
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * @return The number of events dropped for the recommender, each of which made it build its lists again.
+     */
+    public long getMissedEvents() {
+        return missedEvents.get();
+    }
+
+    /**
+     * Builds the lists again from the current inventory on a background thread, with new scales. Call
+     * this after changing cars in a way that publishes no event, such as a new price. Suggestions keep
+     * coming from the current lists until the new ones are ready.
+     */
+    public void resync() {
+        requestBuild();
+    }
+
+    /**
+     * Returns the cars in stock most similar to a car, most similar first. This does not search the
+     * inventory and takes microseconds.
+     *
+     * @param carId The ID of the car, usually one that is sold out.
+     * @return Up to {@code k} suggestions, or an empty list if the car is unknown or the lists are not
+     *         built yet.
+     */
+    public List<Suggestion> similarInStock(int carId) {
+        Index current = index;
+        Entry entry = current == null ? null : current.entries.get(carId);
+        int[] neighbours = entry == null ? null : entry.neighbours;
+        if (neighbours == null) {
+            return List.of();
+        }
+        List<Suggestion> suggestions = new ArrayList<>(k);
+        for (int id : neighbours) {
+            Entry neighbour = current.entries.get(id);
+            if (neighbour != null && neighbour.inStock) {
+                suggestions.add(neighbour.suggestion);
+                if (suggestions.size() == k) {
+                    break;
+                }
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Starts a build on the background thread, or makes the running one build once more.
+     */
+    private void requestBuild() {
+        buildRequests.incrementAndGet();
+        if (building.compareAndSet(false, true)) {
+            Thread builder = new Thread(this::runBuilds, "recommender");
+            builder.setDaemon(true);
+            builder.start();
+        }
+    }
+
+    /**
+     * Builds the lists until no further build was requested while building.
+     */
+    private void runBuilds() {
+        try {
+            while (true) {
+                int requested = buildRequests.get();
+                build();
+                if (buildRequests.get() != requested) {
+                    continue;
+                }
+                building.set(false);
+                if (buildRequests.get() == requested || !building.compareAndSet(false, true)) {
+                    return; // Any later request started its own build
+                }
+            }
+        } catch (RuntimeException e) {
+            building.set(false);
+            System.out.println("The recommender could not build its suggestions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds new lists from the current inventory without holding the lock, then brings them up to
+     * date with the live inventory and puts them in place.
+     */
+    private void build() {
+        Index built = new Index(carManager.getInventory());
+        built.computeAll();
+        synchronized (this) {
+            built.reconcile(carManager.getInventory());
+            index = built;
+        }
+    }
+
+    private synchronized void stockChanged(int carId, int carsAvailable) {
+        Index current = index;
+        if (current != null) { // Otherwise the first build sees the new stock
+            current.setInStock(carId, carsAvailable > 0);
+        }
+    }
+
+    private synchronized void carAdded(int carId) {
+        Index current = index;
+        Car car = current == null ? null : carManager.findCarById(carId);
+        if (car != null) {
+            current.add(car);
+            checkDrift(current);
+        }
+    }
+
+    private synchronized void carRemoved(int carId) {
+        Index current = index;
+        if (current != null) {
+            current.remove(carId);
+            checkDrift(current);
+        }
+    }
+
+    private void checkDrift(Index current) {
+        if (!current.rebuildRequested && current.changes > Math.max(current.builtSize, 16) * DRIFT_FRACTION) {
+            current.rebuildRequested = true;
+            requestBuild();
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(InventoryEvent event) {
+        switch (event.getType()) {
+            case STOCK_CHANGED:
+                stockChanged(event.getCarId(), event.getCarsAvailable());
+                break;
+            case CAR_ADDED:
+                carAdded(event.getCarId());
+                break;
+            case CAR_REMOVED:
+                carRemoved(event.getCarId());
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onDropped(InventoryEvent missed) {
+        missedEvents.incrementAndGet();
+        requestBuild();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        System.out.println("The recommender stopped following the inventory: " + throwable.getMessage());
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    /**
+     * The vectors and lists of one build, with the scales taken from the inventory at that time. Once
+     * in place it is only changed while holding the lock of the recommender.
+     */
+    private final class Index {
+        private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+        private final double priceMean;
+        private final double priceScale;
+        private final double yearMean;
+        private final double yearScale;
+        private final double capacityMean;
+        private final double capacityScale;
+        private final int builtSize;
+        private int changes; // Cars added or removed since the build
+        private boolean rebuildRequested;
+
+        private Index(InventorySnapshot snapshot) {
+            double[] price = new double[2];
+            double[] year = new double[2];
+            double[] capacity = new double[2];
+            snapshot.scan(car -> {
+                accumulate(price, Math.log1p(Math.max(0, car.getPrice())));
+                accumulate(year, car.getYear());
+                accumulate(capacity, car.getCapacity());
+            });
+            int n = Math.max(1, snapshot.size());
+            this.priceMean = price[0] / n;
+            this.priceScale = scale(price, n);
+            this.yearMean = year[0] / n;
+            this.yearScale = scale(year, n);
+            this.capacityMean = capacity[0] / n;
+            this.capacityScale = scale(capacity, n);
+            this.builtSize = snapshot.size();
+            snapshot.scan(car -> entries.put(car.getId(), entryOf(car)));
+        }
+
+        private Entry entryOf(Car car) {
+            return new Entry(car, (Math.log1p(Math.max(0, car.getPrice())) - priceMean) * priceScale,
+                    (car.getYear() - yearMean) * yearScale, (car.getCapacity() - capacityMean) * capacityScale);
+        }
+
+        private void computeAll() {
+            for (Entry entry : entries.values()) {
+                computeNeighbours(entry);
+            }
+        }
+
+        /**
+         * Brings the lists up to date with the inventory: changes of stock, cars added or removed, and
+         * prices changed since the lists were built.
+         */
+        private void reconcile(InventorySnapshot snapshot) {
+            Set<Integer> live = new HashSet<>();
+            snapshot.scan(car -> {
+                live.add(car.getId());
+                Entry entry = entries.get(car.getId());
+                if (entry != null && Float.compare(entry.suggestion.price, car.getPrice()) != 0) {
+                    remove(car.getId());
+                    entry = null;
+                }
+                if (entry == null) {
+                    add(car);
+                } else {
+                    setInStock(car.getId(), car.getCarsAvailable() > 0);
+                }
+            });
+            for (Integer id : new ArrayList<>(entries.keySet())) {
+                if (!live.contains(id)) {
+                    remove(id);
+                }
+            }
+        }
+
+        private void setInStock(int carId, boolean inStock) {
+            Entry entry = entries.get(carId);
+            if (entry == null || inStock == entry.inStock) {
+                return;
+            }
+            entry.inStock = inStock;
+            if (inStock) {
+                offer(entry);
+            } else {
+                withdraw(entry);
+            }
+        }
+
+        private void add(Car car) {
+            if (entries.containsKey(car.getId())) {
+                return;
+            }
+            Entry entry = entryOf(car);
+            entries.put(car.getId(), entry);
+            computeNeighbours(entry);
+            if (entry.inStock) {
+                offer(entry);
+            }
+            changes++;
+        }
+
+        private void remove(int carId) {
+            Entry entry = entries.get(carId);
+            if (entry == null) {
+                return;
+            }
+            entry.inStock = false;
+            withdraw(entry);
+            setNeighbours(entry, new int[0], new double[0]);
+            entries.remove(carId);
+            changes++;
+        }
+
+        /**
+         * Finds the nearest cars in stock of one car by comparing it with every other car.
+         */
+        private void computeNeighbours(Entry entry) {
+            int[] ids = new int[capacity];
+            double[] distances = new double[capacity];
+            int size = 0;
+            for (Entry other : entries.values()) {
+                if (!other.inStock || other == entry) {
+                    continue;
+                }
+                double d = entry.distance(other);
+                if (size < capacity || isCloser(d, other.suggestion.id, distances[size - 1], ids[size - 1])) {
+                    size = insert(ids, distances, size, other.suggestion.id, d);
+                }
+            }
+            entry.complete = size < capacity;
+            setNeighbours(entry, Arrays.copyOf(ids, size), Arrays.copyOf(distances, size));
+        }
+
+        private void setNeighbours(Entry entry, int[] ids, double[] distances) {
+            int[] previous = entry.neighbours;
+            if (previous != null) {
+                for (int id : previous) {
+                    Entry neighbour = entries.get(id);
+                    if (neighbour != null && neighbour.referencedBy != null) {
+                        neighbour.referencedBy.remove(entry.suggestion.id);
+                    }
+                }
+            }
+            for (int id : ids) {
+                Entry neighbour = entries.get(id);
+                if (neighbour != null) {
+                    if (neighbour.referencedBy == null) {
+                        neighbour.referencedBy = new HashSet<>();
+                    }
+                    neighbour.referencedBy.add(entry.suggestion.id);
+                }
+            }
+            entry.distances = distances;
+            entry.neighbours = ids;
+        }
+
+        /**
+         * Offers a car that came into stock to every list it belongs in. A list that is not full only
+         * takes a car farther than its last one if it holds every car in stock, as it may otherwise skip
+         * a closer car it no longer holds.
+         */
+        private void offer(Entry added) {
+            for (Entry entry : entries.values()) {
+                int[] ids = entry.neighbours;
+                if (entry == added || ids == null) {
+                    continue;
+                }
+                double d = entry.distance(added);
+                int size = ids.length;
+                boolean closer = size > 0 && isCloser(d, added.suggestion.id, entry.distances[size - 1], ids[size - 1]);
+                if (closer || (size < capacity && entry.complete)) {
+                    int[] newIds = Arrays.copyOf(ids, Math.min(size + 1, capacity));
+                    double[] newDistances = Arrays.copyOf(entry.distances, newIds.length);
+                    insert(newIds, newDistances, size, added.suggestion.id, d);
+                    if (size == capacity) {
+                        entry.complete = false; // The last car was pushed out
+                    }
+                    setNeighbours(entry, newIds, newDistances);
+                }
+            }
+        }
+
+        /**
+         * Removes a car that sold out or was removed from the lists that held it. Only a list left with
+         * fewer than {@code k} cars, that did not hold every car in stock, is searched for again.
+         */
+        private void withdraw(Entry removed) {
+            if (removed.referencedBy == null) {
+                return;
+            }
+            for (Integer id : new ArrayList<>(removed.referencedBy)) {
+                Entry entry = entries.get(id);
+                int position = entry == null ? -1 : indexOf(entry.neighbours, removed.suggestion.id);
+                if (position < 0) {
+                    continue;
+                }
+                int size = entry.neighbours.length - 1;
+                if (size < k && !entry.complete) {
+                    computeNeighbours(entry);
+                    continue;
+                }
+                int[] newIds = new int[size];
+                double[] newDistances = new double[size];
+                System.arraycopy(entry.neighbours, 0, newIds, 0, position);
+                System.arraycopy(entry.distances, 0, newDistances, 0, position);
+                System.arraycopy(entry.neighbours, position + 1, newIds, position, size - position);
+                System.arraycopy(entry.distances, position + 1, newDistances, position, size - position);
+                setNeighbours(entry, newIds, newDistances);
+            }
+        }
+    }
+
+    private static void accumulate(double[] sums, double value) {
+        sums[0] += value;
+        sums[1] += value * value;
+    }
+
+    private static double scale(double[] sums, int n) {
+        double mean = sums[0] / n;
+        double deviation = Math.sqrt(Math.max(0, sums[1] / n - mean * mean));
+        return deviation > 0 ? 1 / deviation : 1;
+    }
+
+    private static int indexOf(int[] ids, int id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Orders by distance, then by ID, so equally similar cars come in a stable order.
+     */
+    private static boolean isCloser(double distance, int id, double thanDistance, int thanId) {
+        return distance < thanDistance || (distance == thanDistance && id < thanId);
+    }
+
+    /**
+     * Inserts a car into a sorted list of at most {@code ids.length} cars, dropping the last if full.
+     *
+     * @return The new size of the list.
+     */
+    private static int insert(int[] ids, double[] distances, int size, int id, double distance) {
+        int position = Math.min(size, ids.length - 1);
+        while (position > 0 && isCloser(distance, id, distances[position - 1], ids[position - 1])) {
+            ids[position] = ids[position - 1];
+            distances[position] = distances[position - 1];
+            position--;
+        }
+        ids[position] = id;
+        distances[position] = distance;
+        return Math.min(size + 1, ids.length);
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Stores the cars of an inventory by row number. {@link InventorySnapshot}s refer to cars by their row,
+ * so the same snapshot logic works whether cars are kept as objects or in compact columns.
+ * <p>
+ * Rows are only ever appended. A removed car keeps its row until the inventory is loaded again, which
+ * lets older snapshots keep reading it. Rows are kept in fixed-size pages, so appending never moves
+ * existing data and a stock update on a row can never be lost by a concurrent append.
+ */
+public abstract class CarStore {
+
+    /**
+     * The available storage modes.
+     */
+    public enum Mode {
+        /** Every car is a regular {@link Car} object. */
+        OBJECTS,
+        /** Car fields are kept in parallel primitive columns and read through flyweight views. */
+        COLUMNAR,
+        /** Cars are kept off the heap in a memory-mapped file next to the car CSV file, see {@link MappedCarStore}. */
+        MAPPED
+    }
+
+    /**
+     * The number of bits of a row number used for the position inside a page.
+     */
+    static final int PAGE_BITS = 12;
+
+    /**
+     * The number of rows in one page.
+     */
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /**
+     * Selects the position inside a page from a row number.
+     */
+    static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * Creates an empty store for the given mode.
+     *
+     * @param mode The storage mode, OBJECTS or COLUMNAR. Mapped stores belong to a file and are
+     *             opened with {@link MappedCarStore#open(String)}.
+     * @return A new, empty store.
+     */
+    public static CarStore create(Mode mode) {
+        switch (mode) {
+            case COLUMNAR:
+                return new ColumnarCarStore();
+            case MAPPED:
+                throw new IllegalArgumentException("A mapped store must be opened with MappedCarStore.open");
+            default:
+                return new ObjectCarStore();
+        }
+    }
+
+    /**
+     * Reads the storage mode from the {@code carshop.storage} system property ("objects", "columnar"
+     * or "mapped").
+     *
+     * @return The configured storage mode, OBJECTS if none is set.
+     */
+    public static Mode configuredMode() {
+        String mode = System.getProperty("carshop.storage", "objects");
+        try {
+            return Mode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown storage mode " + mode + ", using objects.");
+            return Mode.OBJECTS;
+        }
+    }
+
+    /**
+     * Adds a car to the store. Callers must hold the writer lock of the owning {@link CarManager}.
+     *
+     * @param car The car to add.
+     * @return The row of the new car.
+     */
+    public abstract int append(Car car);
+
+    /**
+     * Returns the car stored in a row. The returned car stays bound to the row and can be kept.
+     *
+     * @param row The row of the car.
+     * @return The car stored in that row.
+     */
+    public abstract Car car(int row);
+
+    /**
+     * Returns a car object that {@link #bind} can point at any row, so scans do not create one object
+     * per car. The flyweight must not be kept after the scan.
+     *
+     * @return A reusable car for scans.
+     */
+    public abstract Car flyweight();
+
+    /**
+     * Points a flyweight at a row.
+     *
+     * @param flyweight A car obtained from {@link #flyweight()} of this store.
+     * @param row The row to read.
+     * @return The car to use for this row, which may be the flyweight itself.
+     */
+    public abstract Car bind(Car flyweight, int row);
+
+    /**
+     * @return The number of rows used so far, including rows of removed cars.
+     */
+    public abstract int rowCount();
+
+    /**
+     * Tells the store that the car in a row was removed from the inventory. Stores that outlive the
+     * process use it to leave the row out when they are opened again; the car can still be read.
+     *
+     * @param row The row of the removed car.
+     */
+    public void release(int row) {
+    }
+
+    /**
+     * @param row A row of the store.
+     * @return true if the car in that row was removed from the inventory.
+     */
+    public boolean isReleased(int row) {
+        return false;
+    }
+
+    /**
+     * Tells the store that the inventory was just saved to its CSV file. Stores that outlive the
+     * process use it to know they match the file.
+     *
+     * @param csvFile The car CSV file that was written.
+     */
+    public void sourceSaved(File csvFile) {
+    }
+
+    /**
+     * Keeps cars as regular objects, the original storage of the shop.
+     */
+    static final class ObjectCarStore extends CarStore {
+        private volatile Car[][] pages = new Car[0][];
+        private int rowCount = 0;
+
+        @Override
+        public int append(Car car) {
+            int row = rowCount;
+            if ((row >>> PAGE_BITS) == pages.length) {
+                Car[][] grown = Arrays.copyOf(pages, pages.length + 1);
+                grown[pages.length] = new Car[PAGE_SIZE];
+                pages = grown;
+            }
+            pages[row >>> PAGE_BITS][row & PAGE_MASK] = car;
+            rowCount = row + 1;
+            return row;
+        }
+
+        @Override
+        public Car car(int row) {
+            return pages[row >>> PAGE_BITS][row & PAGE_MASK];
+        }
+
+        @Override
+        public Car flyweight() {
+            return null;
+        }
+
+        @Override
+        public Car bind(Car flyweight, int row) {
+            return car(row);
+        }
+
+        @Override
+        public int rowCount() {
+            return rowCount;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keeps car fields in parallel primitive columns instead of one object per car. Text fields that
+ * repeat (type, model, condition, color, transmission, fuel type) are stored as codes of the shared
+ * {@link SymbolTable}s and VINs are packed into shared byte pages, so a car costs a few dozen bytes
+ * instead of a {@link Car} object plus seven Strings.
+ * <p>
+ * Cars are read and updated through {@link View}s, flyweight {@link Car}s bound to a row. Setters
+ * write straight into the columns, so the rest of the shop uses views like any other car.
+ */
+public final class ColumnarCarStore extends CarStore {
+
+    private static final int ID = 0;
+    private static final int TYPE = 1;
+    private static final int MODEL = 2;
+    private static final int CONDITION = 3;
+    private static final int COLOR = 4;
+    private static final int CAPACITY = 5;
+    private static final int PRICE = 6;
+    private static final int TRANSMISSION = 7;
+    private static final int VIN = 8;
+    private static final int FUEL_TYPE = 9;
+    private static final int YEAR = 10;
+    private static final int CARS_AVAILABLE = 11;
+    private static final int TURBO = 12;
+    private static final int COLUMN_COUNT = 13;
+
+    /**
+     * The size of one page of packed VIN bytes.
+     */
+    private static final int VIN_PAGE_SIZE = 1 << 16;
+
+    /**
+     * The columns, each split into pages: {@code columns[column][page][position]}. Prices are stored
+     * as float bits and VINs as the position of their bytes in {@link #vinPages}.
+     */
+    private volatile int[][][] columns = new int[COLUMN_COUNT][0][];
+
+    /**
+     * VIN bytes, each VIN prefixed by its length.
+     */
+    private volatile byte[][] vinPages = new byte[0][];
+    private int vinEnd = 0;
+
+    private int rowCount = 0;
+
+    @Override
+    public int append(Car car) {
+        int row = rowCount;
+        if ((row >>> PAGE_BITS) == columns[0].length) {
+            int[][][] grown = new int[COLUMN_COUNT][][];
+            for (int column = 0; column < COLUMN_COUNT; column++) {
+                grown[column] = Arrays.copyOf(columns[column], columns[column].length + 1);
+                grown[column][columns[column].length] = new int[PAGE_SIZE];
+            }
+            columns = grown;
+        }
+        set(ID, row, car.getId());
+        set(TYPE, row, car.getTypeCode());
+        set(MODEL, row, car.getModelCode());
+        set(CONDITION, row, car.getConditionCode());
+        set(COLOR, row, car.getColorCode());
+        set(CAPACITY, row, car.getCapacity());
+        set(PRICE, row, Float.floatToRawIntBits(car.getPrice()));
+        set(TRANSMISSION, row, car.getTransmissionCode());
+        set(VIN, row, packVin(car.getVin()));
+        set(FUEL_TYPE, row, car.getFuelTypeCode());
+        set(YEAR, row, car.getYear());
+        set(CARS_AVAILABLE, row, car.getCarsAvailable());
+        set(TURBO, row, car.getHasTurbo() ? 1 : 0);
+        rowCount = row + 1;
+        return row;
+    }
+
+    @Override
+    public Car car(int row) {
+        return new View(this, row);
+    }
+
+    @Override
+    public Car flyweight() {
+        return new View(this, -1);
+    }
+
+    @Override
+    public Car bind(Car flyweight, int row) {
+        View view = (View) flyweight;
+        view.row = row;
+        return view;
+    }
+
+    @Override
+    public int rowCount() {
+        return rowCount;
+    }
+
+    private int get(int column, int row) {
+        return columns[column][row >>> PAGE_BITS][row & PAGE_MASK];
+    }
+
+    private void set(int column, int row, int value) {
+        columns[column][row >>> PAGE_BITS][row & PAGE_MASK] = value;
+    }
+
+    /**
+     * Appends a VIN to the VIN pages. VINs longer than 255 bytes are cut.
+     *
+     * @return The position of the VIN.
+     */
+    private synchronized int packVin(String vin) {
+        byte[] bytes = (vin == null ? "" : vin).getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, 255);
+        if (vinPages.length == 0 || (vinEnd % VIN_PAGE_SIZE) + length + 1 > VIN_PAGE_SIZE) {
+            byte[][] grown = Arrays.copyOf(vinPages, vinPages.length + 1);
+            grown[vinPages.length] = new byte[VIN_PAGE_SIZE];
+            vinEnd = vinPages.length * VIN_PAGE_SIZE;
+            vinPages = grown;
+        }
+        int position = vinEnd;
+        byte[] page = vinPages[position / VIN_PAGE_SIZE];
+        int offset = position % VIN_PAGE_SIZE;
+        page[offset] = (byte) length;
+        System.arraycopy(bytes, 0, page, offset + 1, length);
+        vinEnd = position + length + 1;
+        return position;
+    }
+
+    private String unpackVin(int position) {
+        byte[] page = vinPages[position / VIN_PAGE_SIZE];
+        int offset = position % VIN_PAGE_SIZE;
+        return new String(page, offset + 1, page[offset] & 0xFF, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A {@link Car} that reads and writes one row of a {@link ColumnarCarStore}. The fields inherited
+     * from Car are not used.
+     */
+    public static final class View extends Car {
+        private final ColumnarCarStore store;
+        private int row;
+
+        View(ColumnarCarStore store, int row) {
+            super(0, null, null, null, null, 0, 0, null, null, null, 0, 0, false);
+            this.store = store;
+            this.row = row;
+        }
+
+        @Override
+        public int getId() {
+            return store.get(ID, row);
+        }
+
+        @Override
+        public String getType() {
+            return SymbolTable.TYPES.symbol(store.get(TYPE, row));
+        }
+
+        @Override
+        public String getModel() {
+            return SymbolTable.MODELS.symbol(store.get(MODEL, row));
+        }
+
+        @Override
+        public String getCondition() {
+            return SymbolTable.CONDITIONS.symbol(store.get(CONDITION, row));
+        }
+
+        @Override
+        public String getColor() {
+            return SymbolTable.COLORS.symbol(store.get(COLOR, row));
+        }
+
+        @Override
+        public int getTypeCode() {
+            return store.get(TYPE, row);
+        }
+
+        @Override
+        public int getModelCode() {
+            return store.get(MODEL, row);
+        }
+
+        @Override
+        public int getConditionCode() {
+            return store.get(CONDITION, row);
+        }
+
+        @Override
+        public int getColorCode() {
+            return store.get(COLOR, row);
+        }
+
+        @Override
+        public int getTransmissionCode() {
+            return store.get(TRANSMISSION, row);
+        }
+
+        @Override
+        public int getFuelTypeCode() {
+            return store.get(FUEL_TYPE, row);
+        }
+
+        @Override
+        public int getCapacity() {
+            return store.get(CAPACITY, row);
+        }
+
+        @Override
+        public String getFuelType() {
+            return SymbolTable.FUEL_TYPES.symbol(store.get(FUEL_TYPE, row));
+        }
+
+        @Override
+        public String getTransmission() {
+            return SymbolTable.TRANSMISSIONS.symbol(store.get(TRANSMISSION, row));
+        }
+
+        @Override
+        public String getVin() {
+            return store.unpackVin(store.get(VIN, row));
+        }
+
+        @Override
+        public float getPrice() {
+            return Float.intBitsToFloat(store.get(PRICE, row));
+        }
+
+        @Override
+        public int getCarsAvailable() {
+            return store.get(CARS_AVAILABLE, row);
+        }
+
+        @Override
+        public boolean getHasTurbo() {
+            return store.get(TURBO, row) != 0;
+        }
+
+        @Override
+        public int getYear() {
+            return store.get(YEAR, row);
+        }
+
+        @Override
+        public void setId(int id) {
+            store.set(ID, row, id);
+        }
+
+        @Override
+        public void setType(String type) {
+            store.set(TYPE, row, SymbolTable.TYPES.code(type));
+        }
+
+        @Override
+        public void setModel(String model) {
+            store.set(MODEL, row, SymbolTable.MODELS.code(model));
+        }
+
+        @Override
+        public void setCondition(String condition) {
+            store.set(CONDITION, row, SymbolTable.CONDITIONS.code(condition));
+        }
+
+        @Override
+        public void setColor(String color) {
+            store.set(COLOR, row, SymbolTable.COLORS.code(color));
+        }
+
+        @Override
+        public void setCapacity(int capacity) {
+            store.set(CAPACITY, row, capacity);
+        }
+
+        @Override
+        public void setFuelType(String fuelType) {
+            store.set(FUEL_TYPE, row, SymbolTable.FUEL_TYPES.code(fuelType));
+        }
+
+        @Override
+        public void setTransmission(String transmission) {
+            store.set(TRANSMISSION, row, SymbolTable.TRANSMISSIONS.code(transmission));
+        }
+
+        @Override
+        public void setVin(String vin) {
+            store.set(VIN, row, store.packVin(vin));
+        }
+
+        @Override
+        public void setPrice(float price) {
+            store.set(PRICE, row, Float.floatToRawIntBits(price));
+        }
+
+        @Override
+        public void setCarsAvailable(int carsAvailable) {
+            store.set(CARS_AVAILABLE, row, carsAvailable);
+        }
+
+        @Override
+        public void setHasTurbo(boolean hasTurbo) {
+            store.set(TURBO, row, hasTurbo ? 1 : 0);
+        }
+
+        @Override
+        public void setYear(int year) {
+            store.set(YEAR, row, year);
+        }
+
+        /**
+         * Two views are equal when they read the same row of the same store.
+         */
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof View && ((View) other).store == store && ((View) other).row == row;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(store) * 31 + row;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that counts the bytes passing through it, so writers that encode text can report
+ * the bytes they really wrote rather than the number of characters.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    /**
+     * Creates a stream counting the bytes written to another stream.
+     *
+     * @param out The stream receiving the bytes. It is closed with this stream.
+     */
+    public CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    /**
+     * @return The number of bytes written so far. Bytes still buffered by a writer on top of this
+     *         stream are not counted until it flushes them.
+     */
+    public long getCount() {
+        return count;
+    }
+}
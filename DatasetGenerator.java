@@ -0,0 +1,409 @@
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * Writes synthetic car, user and ticket files in the format of the shop, so loading, queries and
+ * saving can be measured and profiled at sizes far beyond the sample data. The same seed always
+ * produces the same files, byte for byte.
+ * <p>
+ * Rows are streamed to disk as they are generated, and every car and user is a function of the seed
+ * and its ID alone, so a ticket can repeat the details of its car without the cars being kept in
+ * memory. The only memory that grows with the size is one purchase counter per user, which makes tens
+ * of millions of rows possible with a small heap.
+ * <p>
+ * The values follow the sample data: the mix of car types, models, colors and fuel types, new cars
+ * from the last two years and used cars of any age, prices from the type with depreciation by age,
+ * and users with about 20,000 to 50,000 to spend. Purchases are skewed: a few cars and a few users
+ * account for most tickets, and ticket IDs are time-ordered IDs spread over the last years, in issue
+ * order. Passwords are written in plain text, like in the sample data, and are hashed when the user
+ * first logs in.
+ * <p>
+ * Usage: {@code java DatasetGenerator [dir=.] [cars=100000] [users=10000] [tickets=100000] [seed=1]
+ * [year=2024] [years=5]}, where year is the newest model and ticket year and years is how many years
+ * the tickets span.
+ */
+public class DatasetGenerator {
+
+    static final String CAR_HEADER = "Capacity,Car Type,Cars Available,Condition,Color,ID,Year,Price,Transmission,VIN,Fuel Type,Model,hasTurbo";
+    static final String USER_HEADER = "Money Available,Password,Last Name,ID,Cars Purchased,First Name,Username,MinerCars Membership";
+
+    private static final String[] TYPES = {"Sedan", "SUV", "Hatchback", "Pickup"};
+    private static final int[] TYPE_WEIGHTS = {28, 26, 23, 22};
+    private static final String[][] MODELS = {
+            {"Toyota Camry", "Honda Accord", "Nissan Altima", "Ford Fusion"},
+            {"Toyota RAV4", "Ford Explorer", "Honda CR-V", "Chevrolet Tahoe"},
+            {"Honda Fit", "Ford Fiesta", "Toyota Prius", "Volkswagen Golf"},
+            {"Ford F-150", "Toyota Tacoma", "Chevrolet Silverado", "Ram 1500"},
+    };
+    private static final int[][] CAPACITIES = {{5}, {5, 5, 5, 7, 8}, {5, 5, 5, 4}, {5, 5, 2, 1}};
+    private static final float[] BASE_PRICES = {27_000f, 36_000f, 22_000f, 42_000f};
+    private static final String[] COLORS = {"Silver", "Black", "White", "Blue", "Red", "Green", "Yellow"};
+    private static final int[] COLOR_WEIGHTS = {20, 20, 20, 12, 12, 8, 8};
+    private static final String[] FUEL_TYPES = {"Hybrid", "Gasoline", "Diesel", "Electric"};
+    private static final int[] FUEL_WEIGHTS = {32, 26, 23, 18};
+
+    private static final String[] FIRST_NAMES = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael",
+            "Linda", "David", "Elizabeth", "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas",
+            "Sarah", "Charles", "Karen", "Daniel", "Nancy", "Matthew", "Lisa", "Anthony", "Betty", "Mark", "Sandra",
+            "Steven", "Ashley", "Andrew", "Emily", "Maria", "Kevin", "Laura", "Brian", "Amy", "George", "Anna", "Ethan"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+            "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas",
+            "Taylor", "Moore", "Jackson", "Martin", "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark",
+            "Ramirez", "Lewis", "Robinson", "Walker", "Young", "Allen", "King", "Wright", "Scott", "Torres", "Nguyen"};
+
+    private static final char[] VIN_CHARACTERS = "ABCDEFGHJKLMNPRSTUVWXYZ0123456789".toCharArray();
+    private static final char[] PASSWORD_CHARACTERS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789!#$%&()*+-.?@^_".toCharArray();
+
+    /**
+     * Separate streams of random numbers, so adding a column to one kind of row does not change the others.
+     */
+    private static final long CAR_STREAM = 1;
+    private static final long USER_STREAM = 2;
+    private static final long TICKET_STREAM = 3;
+
+    private final long seed;
+    private int referenceYear = 2024;
+    private int years = 5;
+    private int stock = -1;
+
+    /**
+     * The names of the user last passed to {@link #appendUsername}.
+     */
+    private int firstNameIndex;
+    private int lastNameIndex;
+
+    /**
+     * The details of one car, reused from row to row.
+     */
+    private static final class CarSpec {
+        private int type;
+        private String model;
+        private String color;
+        private int year;
+        private float price;
+    }
+
+    /**
+     * A small random number generator that can be reset to any seed without allocating (SplitMix64).
+     */
+    private static final class Random {
+        private long state;
+
+        private void reset(long seed, long stream, long index) {
+            state = mix(seed ^ mix(stream * 0x9E3779B97F4A7C15L + index));
+        }
+
+        private long nextLong() {
+            return mix(state += 0x9E3779B97F4A7C15L);
+        }
+
+        private double nextDouble() {
+            return (nextLong() >>> 11) * 0x1.0p-53;
+        }
+
+        private int nextInt(int bound) {
+            return (int) ((nextLong() >>> 33) * bound >>> 31);
+        }
+
+        private int pick(int[] weights) {
+            int total = 0;
+            for (int weight : weights) {
+                total += weight;
+            }
+            int value = nextInt(total);
+            for (int i = 0; i < weights.length; i++) {
+                value -= weights[i];
+                if (value < 0) {
+                    return i;
+                }
+            }
+            return weights.length - 1;
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Creates a generator.
+     *
+     * @param seed The seed all values are derived from.
+     */
+    public DatasetGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the newest model year and the year of the newest tickets, 2024 by default.
+     *
+     * @param referenceYear The newest year.
+     */
+    public void setReferenceYear(int referenceYear) {
+        this.referenceYear = referenceYear;
+    }
+
+    /**
+     * Sets how many years the tickets span, 5 by default.
+     *
+     * @param years The number of years, at least 1.
+     */
+    public void setYears(int years) {
+        this.years = Math.max(1, years);
+    }
+
+    /**
+     * Gives every car the same number available instead of 0 to 10, for example so purchases in a
+     * benchmark do not run out.
+     *
+     * @param stock The number of each car available, or -1 for varied stock.
+     */
+    public void setStock(int stock) {
+        this.stock = stock;
+    }
+
+    /**
+     * Writes the car, ticket and user files of the shop into a directory, replacing existing files.
+     *
+     * @param directory The data directory.
+     * @param cars The number of cars.
+     * @param users The number of users.
+     * @param tickets The number of tickets.
+     * @throws IOException If a file cannot be written.
+     */
+    public void generate(String directory, int cars, int users, int tickets) throws IOException {
+        writeCars(CarManager.dataFile(directory, CarManager.CAR_FILE), cars);
+        int[] purchases = writeTickets(CarManager.dataFile(directory, CarManager.TICKET_FILE), tickets, cars, users);
+        writeUsers(CarManager.dataFile(directory, UserManager.USER_FILE), users, purchases);
+    }
+
+    /**
+     * Writes a car file with IDs from 1 to the given number.
+     *
+     * @param filePath The path of the car file.
+     * @param count The number of cars.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeCars(String filePath, int count) throws IOException {
+        Random random = new Random();
+        CarSpec car = new CarSpec();
+        StringBuilder vin = new StringBuilder(17);
+        try (CSVRowWriter out = new CSVRowWriter(filePath, false)) {
+            out.row(CAR_HEADER.split(","));
+            for (int id = 1; id <= count; id++) {
+                describeCar(id, car, random);
+                // Values only the car file has come after those tickets repeat
+                vin.setLength(0);
+                for (int i = 0; i < 17; i++) {
+                    vin.append(VIN_CHARACTERS[random.nextInt(VIN_CHARACTERS.length)]);
+                }
+                int[] capacities = CAPACITIES[car.type];
+                out.integer(capacities[random.nextInt(capacities.length)]);
+                out.text(TYPES[car.type]);
+                out.integer(stock >= 0 ? stock : random.nextInt(11));
+                out.text(car.year >= referenceYear - 1 && random.nextInt(5) > 0 ? "New" : "Used");
+                out.text(car.color);
+                out.integer(id);
+                out.integer(car.year);
+                out.decimal2(car.price);
+                out.text(random.nextInt(100) < 55 ? "Manual" : "Automatic");
+                out.text(vin);
+                out.text(FUEL_TYPES[random.pick(FUEL_WEIGHTS)]);
+                out.text(car.model);
+                out.text(random.nextInt(100) < 16 ? "Yes" : "No");
+                out.endRow();
+            }
+            check(out, filePath);
+        }
+    }
+
+    /**
+     * Writes a ticket file. Tickets are in issue order, spread over the configured years; popular cars
+     * and frequent buyers get most of them.
+     *
+     * @param filePath The path of the ticket file.
+     * @param count The number of tickets.
+     * @param cars The number of cars the tickets refer to.
+     * @param users The number of users the tickets refer to.
+     * @return The number of tickets of each user, indexed by user ID.
+     * @throws IOException If the file cannot be written.
+     */
+    public int[] writeTickets(String filePath, int count, int cars, int users) throws IOException {
+        int[] purchases = new int[users + 1];
+        Random random = new Random();
+        CarSpec car = new CarSpec();
+        StringBuilder username = new StringBuilder(32);
+
+        long[] yearStarts = new long[years + 1];
+        int firstYear = referenceYear - years + 1;
+        for (int i = 0; i <= years; i++) {
+            yearStarts[i] = LocalDate.of(firstYear + i, 1, 1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+        long start = yearStarts[0];
+        double millisPerTicket = (double) (yearStarts[years] - start) / Math.max(1, count);
+        random.reset(seed, TICKET_STREAM, -1);
+        long node = random.nextLong();
+
+        try (CSVRowWriter out = new CSVRowWriter(filePath, false)) {
+            long lastMillis = Long.MIN_VALUE;
+            int counter = 0;
+            int yearIndex = 0;
+            for (int i = 0; i < count && cars > 0 && users > 0; i++) {
+                random.reset(seed, TICKET_STREAM, i);
+                int carId = 1 + (int) (cars * Math.pow(random.nextDouble(), 2));
+                int userId = 1 + (int) (users * Math.pow(random.nextDouble(), 3));
+                long millis = start + (long) ((i + random.nextDouble()) * millisPerTicket);
+                if (millis > lastMillis) {
+                    lastMillis = millis;
+                    counter = 0;
+                } else {
+                    counter++;
+                }
+                while (yearIndex < years - 1 && lastMillis >= yearStarts[yearIndex + 1]) {
+                    yearIndex++;
+                }
+                purchases[userId]++;
+
+                describeCar(carId, car, random);
+                username.setLength(0);
+                appendUsername(userId, username, random);
+                out.integer(carId);
+                out.text(username);
+                out.text(TYPES[car.type]);
+                out.text(car.model);
+                out.integer(firstYear + yearIndex);
+                out.text(car.color);
+                out.text(String.valueOf(car.price));
+                out.text(TicketIdGenerator.idOf(lastMillis, counter, node));
+                out.endRow();
+            }
+            check(out, filePath);
+        }
+        return purchases;
+    }
+
+    /**
+     * Writes a user file with IDs from 1 to the given number.
+     *
+     * @param filePath The path of the user file.
+     * @param count The number of users.
+     * @param purchases The number of cars each user bought, indexed by user ID, or null for none.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeUsers(String filePath, int count, int[] purchases) throws IOException {
+        Random random = new Random();
+        StringBuilder text = new StringBuilder(32);
+        try (CSVRowWriter out = new CSVRowWriter(filePath, false)) {
+            out.row(USER_HEADER.split(","));
+            for (int id = 1; id <= count; id++) {
+                text.setLength(0);
+                appendUsername(id, text, random);
+                String firstName = FIRST_NAMES[firstNameIndex];
+                String lastName = LAST_NAMES[lastNameIndex];
+                int usernameLength = text.length();
+                for (int i = 0; i < 8; i++) {
+                    text.append(PASSWORD_CHARACTERS[random.nextInt(PASSWORD_CHARACTERS.length)]);
+                }
+                double money = 20_000 + 12_000 * Math.abs(random.nextDouble() + random.nextDouble() + random.nextDouble() - 1.5) * 2;
+                out.decimal2((float) money);
+                out.text(text.subSequence(usernameLength, text.length()));
+                out.text(lastName);
+                out.integer(id);
+                out.integer(purchases != null && id < purchases.length ? purchases[id] : 0);
+                out.text(firstName);
+                text.setLength(usernameLength);
+                out.text(text);
+                out.text(random.nextInt(100) < 45 ? "true" : "false");
+                out.endRow();
+            }
+            check(out, filePath);
+        }
+    }
+
+    /**
+     * Derives the details of a car that tickets repeat: type, model, color, year and price.
+     */
+    private void describeCar(int id, CarSpec car, Random random) {
+        random.reset(seed, CAR_STREAM, id);
+        car.type = random.pick(TYPE_WEIGHTS);
+        String[] models = MODELS[car.type];
+        car.model = models[random.nextInt(models.length)];
+        car.color = COLORS[random.pick(COLOR_WEIGHTS)];
+        // About a quarter of the cars are this or last year's models, the rest thin out with age
+        int age = random.nextInt(4) == 0 ? random.nextInt(2) : (int) (27 * Math.pow(random.nextDouble(), 1.5));
+        car.year = referenceYear - age;
+        double price = BASE_PRICES[car.type] * Math.pow(0.93, age) * (0.8 + 0.45 * random.nextDouble());
+        car.price = (float) (Math.round(Math.max(3_000, price) * 100) / 100.0);
+    }
+
+    /**
+     * Appends the username of a user, its first and last name without spaces in lower case followed
+     * by the ID so it is unique, and leaves the generator ready for the rest of the user.
+     */
+    private void appendUsername(int id, StringBuilder out, Random random) {
+        random.reset(seed, USER_STREAM, id);
+        firstNameIndex = random.nextInt(FIRST_NAMES.length);
+        lastNameIndex = random.nextInt(LAST_NAMES.length);
+        appendLowerCase(FIRST_NAMES[firstNameIndex], out);
+        appendLowerCase(LAST_NAMES[lastNameIndex], out);
+        out.append(id);
+    }
+
+    private static void appendLowerCase(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            out.append(Character.toLowerCase(value.charAt(i)));
+        }
+    }
+
+    private static void check(CSVRowWriter out, String filePath) throws IOException {
+        out.flush();
+        if (out.checkError()) {
+            throw new IOException("Could not write " + filePath);
+        }
+    }
+
+    /**
+     * Generates a data set.
+     *
+     * @param args Options as key=value: dir, cars, users, tickets, seed, year and years.
+     */
+    public static void main(String[] args) throws IOException {
+        String directory = ".";
+        int cars = 100_000;
+        int users = 10_000;
+        int tickets = 100_000;
+        long seed = 1;
+        int referenceYear = 2024;
+        int years = 5;
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            String value = option.length > 1 ? option[1].trim().replace("_", "") : "";
+            switch (option[0]) {
+                case "dir": directory = value; break;
+                case "cars": cars = Integer.parseInt(value); break;
+                case "users": users = Integer.parseInt(value); break;
+                case "tickets": tickets = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "year": referenceYear = Integer.parseInt(value); break;
+                case "years": years = Integer.parseInt(value); break;
+                default:
+                    System.out.println("Unknown option " + arg);
+                    return;
+            }
+        }
+        new File(directory).mkdirs();
+
+        DatasetGenerator generator = new DatasetGenerator(seed);
+        generator.setReferenceYear(referenceYear);
+        generator.setYears(years);
+        long start = System.nanoTime();
+        generator.generate(directory, cars, users, tickets);
+        System.out.printf("Wrote %,d cars, %,d users and %,d tickets to %s in %.1f s.%n", cars, users, tickets,
+                new File(directory).getAbsolutePath(), (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Describes one change to the inventory or to sales data, as published by {@link InventoryEventPublisher}.
+ * Fields that do not apply to the event type are left empty (null for text, -1 for numbers).
+ */
+public final class InventoryEvent {
+
+    /**
+     * The kinds of change that are published.
+     */
+    public enum Type {
+        /** A new car was added to the inventory. */
+        CAR_ADDED,
+        /** A car was removed from the inventory. */
+        CAR_REMOVED,
+        /** The number of cars available for a car changed. */
+        STOCK_CHANGED,
+        /** A ticket was issued for a purchase. */
+        TICKET_ISSUED,
+        /** A ticket was deleted because a car was returned. */
+        TICKET_DELETED,
+        /** The money available to a user changed. */
+        BALANCE_CHANGED
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final int carId;
+    private final String vin;
+    private final String username;
+    private final int carsAvailable;
+    private final float balance;
+    private final String ticketId;
+
+    private InventoryEvent(Type type, int carId, String vin, String username, int carsAvailable, float balance, String ticketId) {
+        this.type = type;
+        this.timestamp = System.currentTimeMillis();
+        this.carId = carId;
+        this.vin = vin;
+        this.username = username;
+        this.carsAvailable = carsAvailable;
+        this.balance = balance;
+        this.ticketId = ticketId;
+    }
+
+    /**
+     * @param car The car that was added.
+     * @return A CAR_ADDED event.
+     */
+    public static InventoryEvent carAdded(Car car) {
+        return new InventoryEvent(Type.CAR_ADDED, car.getId(), car.getVin(), null, car.getCarsAvailable(), -1, null);
+    }
+
+    /**
+     * @param car The car that was removed.
+     * @return A CAR_REMOVED event.
+     */
+    public static InventoryEvent carRemoved(Car car) {
+        return new InventoryEvent(Type.CAR_REMOVED, car.getId(), car.getVin(), null, car.getCarsAvailable(), -1, null);
+    }
+
+    /**
+     * @param car The car whose number of cars available changed, already holding the new value.
+     * @return A STOCK_CHANGED event.
+     */
+    public static InventoryEvent stockChanged(Car car) {
+        return new InventoryEvent(Type.STOCK_CHANGED, car.getId(), car.getVin(), null, car.getCarsAvailable(), -1, null);
+    }
+
+    /**
+     * @param ticket The ticket that was issued.
+     * @return A TICKET_ISSUED event.
+     */
+    public static InventoryEvent ticketIssued(IssueTicket ticket) {
+        return new InventoryEvent(Type.TICKET_ISSUED, parseCarId(ticket.getID()), null, ticket.getUsername(), -1, ticket.getPrice(), ticket.getUniqueID());
+    }
+
+    /**
+     * @param carId The ID of the car on the deleted ticket.
+     * @param username The username on the deleted ticket.
+     * @return A TICKET_DELETED event.
+     */
+    public static InventoryEvent ticketDeleted(int carId, String username) {
+        return new InventoryEvent(Type.TICKET_DELETED, carId, null, username, -1, -1, null);
+    }
+
+    /**
+     * @param user The user whose money available changed, already holding the new value.
+     * @return A BALANCE_CHANGED event.
+     */
+    public static InventoryEvent balanceChanged(User user) {
+        return new InventoryEvent(Type.BALANCE_CHANGED, -1, null, user.getUsername(), -1, user.getMoneyAvailable(), null);
+    }
+
+    private static int parseCarId(String id) {
+        try {
+            return Integer.parseInt(id.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return The kind of change.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The time the event was created, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return The ID of the car involved, or -1.
+     */
+    public int getCarId() {
+        return carId;
+    }
+
+    /**
+     * @return The VIN of the car involved, or null.
+     */
+    public String getVin() {
+        return vin;
+    }
+
+    /**
+     * @return The username of the user involved, or null.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return The number of cars available after the change, or -1.
+     */
+    public int getCarsAvailable() {
+        return carsAvailable;
+    }
+
+    /**
+     * @return The new balance for BALANCE_CHANGED, the ticket price for TICKET_ISSUED, or -1.
+     */
+    public float getBalance() {
+        return balance;
+    }
+
+    /**
+     * @return The unique ID of the issued ticket, or null.
+     */
+    public String getTicketId() {
+        return ticketId;
+    }
+
+    @Override
+    public String toString() {
+        return type + " at " + timestamp
+                + (carId >= 0 ? ", Car ID: " + carId : "")
+                + (vin != null ? ", VIN: " + vin : "")
+                + (username != null ? ", Username: " + username : "")
+                + (carsAvailable >= 0 ? ", Cars Available: " + carsAvailable : "")
+                + (balance >= 0 ? ", Amount: " + balance : "")
+                + (ticketId != null ? ", Ticket: " + ticketId : "");
+    }
+}
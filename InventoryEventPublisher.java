@@ -0,0 +1,104 @@
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes {@link InventoryEvent}s to any number of {@link Flow.Subscriber}s, such as report writers
+ * or caches that need to know when stock, sales or balances change.
+ * <p>
+ * Each subscriber has its own bounded buffer and receives events on a pool thread at the pace it
+ * requests them. Publishing never blocks: if a subscriber's buffer is full, the event is dropped for
+ * that subscriber only and counted, so a slow consumer cannot stall a purchase. Subscribers that keep
+ * state derived from the events implement {@link LossAwareSubscriber} to be told when they missed one,
+ * so they can resynchronize from the inventory.
+ */
+public class InventoryEventPublisher implements Flow.Publisher<InventoryEvent> {
+
+    /**
+     * The default number of events buffered for each subscriber.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /**
+     * A subscriber that is told when an event was dropped for it.
+     */
+    public interface LossAwareSubscriber extends Flow.Subscriber<InventoryEvent> {
+
+        /**
+         * Called on the publishing thread, possibly while the inventory is locked, when an event could
+         * not be buffered for this subscriber. It must return quickly and must not publish.
+         *
+         * @param missed The event that was dropped.
+         */
+        void onDropped(InventoryEvent missed);
+    }
+
+    private final SubmissionPublisher<InventoryEvent> publisher;
+
+    /**
+     * The number of events that were dropped because a subscriber's buffer was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates a publisher with the default buffer size for each subscriber.
+     */
+    public InventoryEventPublisher() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a publisher with the given buffer size for each subscriber.
+     *
+     * @param bufferSize The maximum number of events buffered for one subscriber.
+     */
+    public InventoryEventPublisher(int bufferSize) {
+        this.publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), bufferSize);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super InventoryEvent> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * @return true if at least one subscriber is registered. Callers can check this before creating events.
+     */
+    public boolean hasSubscribers() {
+        return publisher.hasSubscribers();
+    }
+
+    /**
+     * Offers an event to every subscriber without blocking. Subscribers whose buffer is full miss the
+     * event, and are told so if they are a {@link LossAwareSubscriber}.
+     *
+     * @param event The event to publish.
+     */
+    public void publish(InventoryEvent event) {
+        if (publisher.isClosed()) {
+            return;
+        }
+        publisher.offer(event, (subscriber, missed) -> {
+            dropped.incrementAndGet();
+            if (subscriber instanceof LossAwareSubscriber) {
+                ((LossAwareSubscriber) subscriber).onDropped(missed);
+            }
+            return false; // Never retry, the purchase path must not wait for a subscriber
+        });
+    }
+
+    /**
+     * @return The number of events dropped so far because a subscriber could not keep up.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Completes every subscription after the events already buffered have been delivered.
+     */
+    public void close() {
+        publisher.close();
+    }
+}
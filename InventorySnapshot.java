@@ -0,0 +1,335 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * An immutable, versioned view of the car inventory. Readers iterate a snapshot without locking and
+ * without the risk of a {@link java.util.ConcurrentModificationException}, while writers build a new
+ * snapshot and publish it by swapping a reference (see {@link CarManager}).
+ * <p>
+ * A snapshot lists the rows of its cars in a {@link CarStore}, in small chunks. A new snapshot shares
+ * every chunk that was not touched by the change, so adding or removing a car copies one chunk and the
+ * chunk table instead of the whole list. The snapshot only fixes which cars are in the inventory;
+ * fields such as the number of cars available are still updated in the store.
+ */
+public final class InventorySnapshot extends AbstractList<Car> implements RandomAccess {
+
+    /**
+     * The maximum number of cars stored in one chunk.
+     */
+    static final int CHUNK_SIZE = 32;
+
+    /**
+     * The store holding the cars listed by this snapshot.
+     */
+    private final CarStore store;
+
+    /**
+     * The version of this snapshot. Every published change creates a snapshot with a higher epoch.
+     */
+    private final long epoch;
+
+    /**
+     * The chunks holding the rows of the cars. Chunks are never modified once the snapshot is created.
+     */
+    private final int[][] chunks;
+
+    /**
+     * The index of the first car of each chunk.
+     */
+    private final int[] offsets;
+
+    /**
+     * The total number of cars in the snapshot.
+     */
+    private final int size;
+
+    private InventorySnapshot(CarStore store, long epoch, int[][] chunks, int[] offsets, int size) {
+        this.store = store;
+        this.epoch = epoch;
+        this.chunks = chunks;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * Creates the first snapshot of an inventory from a list of cars, copying them into the store.
+     *
+     * @param store The store that will hold the cars.
+     * @param cars The cars in the inventory.
+     * @return A snapshot with epoch 0 holding the given cars.
+     */
+    public static InventorySnapshot of(CarStore store, List<Car> cars) {
+        Builder builder = empty(store).toBuilder();
+        for (Car car : cars) {
+            builder.add(car);
+        }
+        return builder.build(0);
+    }
+
+    /**
+     * Creates the first snapshot of an inventory from the cars already in a store, leaving out the
+     * rows of removed cars. Used to reopen a store that outlives the process.
+     *
+     * @param store The store holding the cars.
+     * @return A snapshot with epoch 0 holding every car of the store that was not removed.
+     */
+    public static InventorySnapshot restore(CarStore store) {
+        Builder builder = empty(store).toBuilder();
+        int[] chunk = new int[CHUNK_SIZE];
+        int used = 0;
+        int rowCount = store.rowCount();
+        for (int row = 0; row < rowCount; row++) {
+            if (!store.isReleased(row)) {
+                chunk[used++] = row;
+                if (used == CHUNK_SIZE) {
+                    builder.chunks.add(chunk);
+                    chunk = new int[CHUNK_SIZE];
+                    used = 0;
+                }
+            }
+        }
+        if (used > 0) {
+            builder.chunks.add(Arrays.copyOf(chunk, used));
+        }
+        return builder.build(0);
+    }
+
+    /**
+     * Creates the snapshot of an empty inventory.
+     *
+     * @param store The store that will hold the cars.
+     * @return An empty snapshot with epoch 0.
+     */
+    public static InventorySnapshot empty(CarStore store) {
+        return new InventorySnapshot(store, 0, new int[0][], new int[0], 0);
+    }
+
+    /**
+     * @return The version of this snapshot.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return The store holding the cars of this snapshot.
+     */
+    public CarStore getStore() {
+        return store;
+    }
+
+    @Override
+    public Car get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int chunk = Arrays.binarySearch(offsets, index);
+        if (chunk < 0) {
+            chunk = -chunk - 2; // The chunk that starts before the index
+        }
+        return store.car(chunks[chunk][index - offsets[chunk]]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Car> iterator() {
+        return new Iterator<Car>() {
+            private int chunk = 0;
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return chunk < chunks.length;
+            }
+
+            @Override
+            public Car next() {
+                if (chunk >= chunks.length) {
+                    throw new NoSuchElementException();
+                }
+                int row = chunks[chunk][position++];
+                if (position == chunks[chunk].length) {
+                    chunk++;
+                    position = 0;
+                }
+                return store.car(row);
+            }
+        };
+    }
+
+    @Override
+    public void forEach(Consumer<? super Car> action) {
+        for (int[] chunk : chunks) {
+            for (int row : chunk) {
+                action.accept(store.car(row));
+            }
+        }
+    }
+
+    /**
+     * Visits every car like {@link #forEach}, but may pass the same reusable car object for every row.
+     * Use it for read-only scans such as listing or saving; the car passed to the action must not be kept.
+     *
+     * @param action The action to run for each car.
+     */
+    public void scan(Consumer<? super Car> action) {
+        Car flyweight = store.flyweight();
+        for (int[] chunk : chunks) {
+            for (int row : chunk) {
+                action.accept(store.bind(flyweight, row));
+            }
+        }
+    }
+
+    /**
+     * Finds the first car matching a condition without creating an object for every car visited.
+     *
+     * @param filter The condition to match.
+     * @return The first matching car, which can be kept, or null if none matches.
+     */
+    public Car find(Predicate<? super Car> filter) {
+        Car flyweight = store.flyweight();
+        for (int[] chunk : chunks) {
+            for (int row : chunk) {
+                if (filter.test(store.bind(flyweight, row))) {
+                    return store.car(row);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts a batch of changes based on this snapshot. The snapshot itself is not modified.
+     *
+     * @return A builder holding the same cars as this snapshot.
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Collects a batch of changes to an inventory snapshot. Untouched chunks are shared with the
+     * original snapshot; a touched chunk is copied.
+     */
+    public static final class Builder {
+        private final InventorySnapshot base;
+        private final List<int[]> chunks;
+        private final List<Integer> released = new ArrayList<>();
+        private boolean modified = false;
+
+        private Builder(InventorySnapshot base) {
+            this.base = base;
+            this.chunks = new ArrayList<>(Arrays.asList(base.chunks));
+        }
+
+        /**
+         * Adds a car at the end of the inventory. The car's values are copied into the store.
+         *
+         * @param car The car to add.
+         * @return The stored car. Later changes must be made on this car, which is the given car
+         *         itself unless the store keeps cars in another form.
+         */
+        public Car add(Car car) {
+            int row = base.store.append(car);
+            addRow(row);
+            return base.store.car(row);
+        }
+
+        private void addRow(int row) {
+            int last = chunks.size() - 1;
+            if (last >= 0 && chunks.get(last).length < CHUNK_SIZE) {
+                int[] chunk = Arrays.copyOf(chunks.get(last), chunks.get(last).length + 1);
+                chunk[chunk.length - 1] = row;
+                chunks.set(last, chunk);
+            } else {
+                chunks.add(new int[]{row});
+            }
+            modified = true;
+        }
+
+        /**
+         * Removes every car matching the filter. Only the chunks that contain a match are copied.
+         *
+         * @param filter The condition for the cars to remove.
+         * @return true if at least one car was removed; false otherwise.
+         */
+        public boolean removeIf(Predicate<? super Car> filter) {
+            boolean removed = false;
+            for (int i = chunks.size() - 1; i >= 0; i--) {
+                int[] chunk = chunks.get(i);
+                int kept = 0;
+                int[] remaining = null;
+                for (int j = 0; j < chunk.length; j++) {
+                    if (filter.test(base.store.car(chunk[j]))) {
+                        released.add(chunk[j]);
+                        if (remaining == null) {
+                            remaining = Arrays.copyOf(chunk, chunk.length);
+                            kept = j;
+                        }
+                    } else if (remaining != null) {
+                        remaining[kept++] = chunk[j];
+                    }
+                }
+                if (remaining != null) {
+                    if (kept == 0) {
+                        chunks.remove(i);
+                    } else {
+                        chunks.set(i, Arrays.copyOf(remaining, kept));
+                    }
+                    removed = true;
+                }
+            }
+            modified |= removed;
+            return removed;
+        }
+
+        /**
+         * @return true if any change was made since the builder was created.
+         */
+        public boolean isModified() {
+            return modified;
+        }
+
+        /**
+         * @return The snapshot this builder started from.
+         */
+        public InventorySnapshot getBase() {
+            return base;
+        }
+
+        /**
+         * Creates the snapshot for the next epoch.
+         *
+         * @return A new snapshot holding the changes made with this builder.
+         */
+        public InventorySnapshot build() {
+            return build(base.epoch + 1);
+        }
+
+        private InventorySnapshot build(long epoch) {
+            for (int row : released) {
+                base.store.release(row);
+            }
+            int[][] newChunks = chunks.toArray(new int[0][]);
+            int[] offsets = new int[newChunks.length];
+            int size = 0;
+            for (int i = 0; i < newChunks.length; i++) {
+                offsets[i] = size;
+                size += newChunks[i].length;
+            }
+            return new InventorySnapshot(base.store, epoch, newChunks, offsets, size);
+        }
+    }
+}
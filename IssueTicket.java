@@ -1,15 +1,19 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.UUID;
+import java.io.OutputStreamWriter;
 
 
 /**
  * Represents a ticket for a purchasing a car, encapsulates details ID, username,
  * car type, model, year, and color.
+ * <p>
+ * A ticket row holds the car ID, username, car type, model, year, color, price and unique ID, and
+ * then the amount the customer was charged, so a return refunds exactly that amount. Tickets issued
+ * before the charged amount was recorded end after the unique ID.
  */
 public class IssueTicket {
 	
@@ -57,6 +61,12 @@ public class IssueTicket {
      * A unique identifier that is generated to ensure each ticket is distinctly identifiable.
      */
     private String UniqueID;
+
+    /**
+     * The amount the customer was charged for the car, taxes and discounts included, or NaN if it
+     * is not known.
+     */
+    private float charged = Float.NaN;
     
     /**
      * Constructs an IssueTicket with the specified details.
@@ -81,16 +91,34 @@ public class IssueTicket {
         this.UniqueID = generateUniqueID();
         
     }
+
+    /**
+     * Constructs an IssueTicket with the specified details and the amount the customer was charged.
+     *
+     * @param ID The unique identifier for the ticket.
+     * @param username The username of the user associated with the ticket.
+     * @param carType The type of car associated with the ticket.
+     * @param model The model of the car.
+     * @param year The year of manufacture of the car.
+     * @param color The color of the car.
+     * @param Price the price of the car.
+     * @param charged The amount charged for the car, as computed by {@link PricingEngine#purchasePrice}.
+     */
+    public IssueTicket(String ID, String username, String carType, String model, int year, String color, float Price, float charged) {
+        this(ID, username, carType, model, year, color, Price);
+        this.charged = charged;
+    }
     
     
     /**
-     * Generates a unique identifier for the ticket using a UUID.
-     * This ID is intended for ensuring each ticket is distinctly identifiable beyond its normal ID.
+     * Generates a unique identifier for the ticket, a time-ordered UUID from {@link TicketIdGenerator}.
+     * This ID is intended for ensuring each ticket is distinctly identifiable beyond its normal ID,
+     * and sorts the tickets by the time they were issued.
      *
      * @return A unique identifier as a String.
      */
     private String generateUniqueID() {
-        return UUID.randomUUID().toString();
+        return TicketIdGenerator.next();
     }
     
     /**
@@ -113,7 +141,8 @@ public class IssueTicket {
                         "\n Year: " + ticketData[4] +
                         "\n Color: " + ticketData[5] +
                         "\n Price: " + ticketData[6] +
-                    	"\n UniqueID " + ticketData[7]);
+                    	"\n UniqueID " + ticketData[7] +
+                        (ticketData.length > 8 ? "\n Charged: " + ticketData[8] : ""));
                     	
                     System.out.println();
                 }
@@ -229,6 +258,32 @@ public class IssueTicket {
     public void setPrice(float Price) {
         this.Price = Price;
     }
+
+    /**
+     * @return The amount the customer was charged for the car, or NaN if it is not known.
+     */
+    public float getCharged() {
+        return charged;
+    }
+
+    /**
+     * Reads the amount charged from a ticket row in the CSV layout.
+     *
+     * @param ticket The ticket row.
+     * @return The amount charged, or NaN if the row was written before the amount was recorded or
+     *         the amount cannot be read.
+     */
+    public static float chargedOf(String[] ticket) {
+        if (ticket.length <= 8) {
+            return Float.NaN;
+        }
+        try {
+            return Float.parseFloat(ticket[8]);
+        } catch (NumberFormatException e) {
+            System.out.println("Error parsing the charged amount of a ticket: " + e.getMessage());
+            return Float.NaN;
+        }
+    }
     
     /**
      * Prints the details of the ticket.
@@ -243,7 +298,10 @@ public class IssueTicket {
      * @return A String array representing the ticket details.
      */
     public String[] CSVparser() {
-        return new String[]{ID, username, carType, model, String.valueOf(year), color, String.valueOf(Price), UniqueID};
+        if (Float.isNaN(charged)) {
+            return new String[]{ID, username, carType, model, String.valueOf(year), color, String.valueOf(Price), UniqueID};
+        }
+        return new String[]{ID, username, carType, model, String.valueOf(year), color, String.valueOf(Price), UniqueID, String.valueOf(charged)};
     }
     
     /**
@@ -277,30 +335,87 @@ public class IssueTicket {
      * @throws IOException If there's an issue reading or writing to the CSV file.
      */
     public static boolean deleteTicket(int ticketID, String username) throws IOException {
+        return deleteTicket(FILE_PATH, ticketID, username);
+    }
+
+    /**
+     * Deletes the first occurrence of a ticket with the specified ID and username from the given
+     * ticket file and returns a boolean indicating whether the deletion was successful.
+     *
+     * @param filePath The path of the ticket CSV file.
+     * @param ticketID The ID of the ticket to delete (integer type).
+     * @param username The username associated with the ticket.
+     * @return true if the ticket was successfully deleted, false otherwise.
+     * @throws IOException If there's an issue reading or writing to the CSV file.
+     */
+    public static boolean deleteTicket(String filePath, int ticketID, String username) throws IOException {
+        return deleteTicketRow(filePath, ticketID, username) != null;
+    }
+
+    /**
+     * Deletes the first occurrence of a ticket with the specified ID and username from the given
+     * ticket file and returns its row, for example to refund the amount it records.
+     *
+     * @param filePath The path of the ticket CSV file.
+     * @param ticketID The ID of the ticket to delete (integer type).
+     * @param username The username associated with the ticket.
+     * @return The row of the deleted ticket, or null if no ticket was deleted.
+     * @throws IOException If there's an issue reading or writing to the CSV file.
+     */
+    public static String[] deleteTicketRow(String filePath, int ticketID, String username) throws IOException {
+        ShopEvents.TicketDelete event = new ShopEvents.TicketDelete();
+        event.begin();
+        try {
+            String[] deleted = deleteTicket(filePath, ticketID, username, event);
+            event.deleted = deleted != null;
+            return deleted;
+        } finally {
+            if (event.shouldCommit()) {
+                event.file = filePath;
+                event.username = username;
+                event.carId = ticketID;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Deletes a ticket, returning its row or null, and counts the rows read and bytes written into a
+     * flight recorder event.
+     */
+    private static String[] deleteTicket(String filePath, int ticketID, String username, ShopEvents.TicketDelete event) throws IOException {
         String idString = String.valueOf(ticketID);  
-        File originalFile = new File(FILE_PATH);
-        File tempFile = new File("temp_" + FILE_PATH);
+        File originalFile = new File(filePath);
+        // A temporary file of its own, so deletions from other threads or processes do not share it
+        File tempFile = File.createTempFile("temp_" + originalFile.getName() + "_", ".tmp", originalFile.getAbsoluteFile().getParentFile());
 
-        boolean found = false; 
+        String[] found = null; 
 
+        CountingOutputStream counter = new CountingOutputStream(new FileOutputStream(tempFile));
         try (BufferedReader reader = new BufferedReader(new FileReader(originalFile));
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(counter))) {
 
             String line;
 
             while ((line = reader.readLine()) != null) {
+                event.rowsRead++;
                 String[] ticketData = line.split(",");
                 // Check if the current line's ticket matches the ID and username
-                if (!found && ticketData.length > 1 && ticketData[0].trim().equals(idString) && ticketData[1].trim().equalsIgnoreCase(username)) {
-                    found = true; // Mark that we've found and are deleting the matching ticket
+                if (found == null && ticketData.length > 1 && ticketData[0].trim().equals(idString) && ticketData[1].trim().equalsIgnoreCase(username)) {
+                    found = ticketData; // Mark that we've found and are deleting the matching ticket
                 } else {
                     writer.write(line + System.lineSeparator()); // Write non-matching lines to the temp file
                 }
             }
+        } catch (IOException e) {
+            counter.close();
+            tempFile.delete();
+            throw e;
         }
+        event.bytes = counter.getCount();
 
         // Only perform file operations if a matching ticket was found and deleted
-        if (found) {
+        if (found != null) {
             boolean deleteSuccessful = originalFile.delete();
             boolean renameSuccessful = tempFile.renameTo(originalFile);
 
@@ -317,14 +432,14 @@ public class IssueTicket {
                 }
             } else {
                 System.out.println("Ticket with ID: " + idString + " and username: " + username + " deleted successfully.");
-                return true;
+                return found;
             }
         } else {
             System.out.println("No ticket found with ID: " + idString + " and username: " + username + ".");
           
             tempFile.delete(); 
-            return false;
+            return null;
         }
-        return false;
+        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long an operation takes in buckets of fixed relative width, in the manner of an HDR
+ * histogram: durations below 32 ns each get their own bucket, and every power of two above is split
+ * into 16 buckets, so a percentile read from the buckets is within about 6% of the real duration at
+ * any scale, from nanoseconds to hours, in a fixed 5 KB per stripe.
+ * <p>
+ * Recording takes no lock: the counts are kept in several stripes chosen by the recording thread,
+ * so threads recording at the same time rarely update the same cache line, and {@link #snapshot}
+ * adds the stripes up.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+
+    /**
+     * Durations are counted up to 2^44 ns, about 4.9 hours; longer ones count as that.
+     */
+    private static final long MAX_VALUE = (1L << 44) - 1;
+
+    /**
+     * The number of buckets of a stripe.
+     */
+    static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    /**
+     * Unused slots between stripes, so neighbouring stripes do not share a cache line.
+     */
+    private static final int PADDING = 16;
+
+    private final String name;
+    private final int stripeMask;
+    private final AtomicLongArray counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * The duration from which an operation is written to the {@link SlowOperationLog}.
+     */
+    private volatile long slowThresholdNanos = SlowOperationLog.initialThresholdNanos();
+
+    /**
+     * Creates a histogram. Use {@link Metrics#timer} to get a registered one.
+     *
+     * @param name The name of the measured operation.
+     */
+    LatencyHistogram(String name) {
+        this.name = name;
+        int stripes = Integer.highestOneBit(Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())) * 2 - 1);
+        this.stripeMask = stripes - 1;
+        this.counts = new AtomicLongArray(stripes * (BUCKETS + PADDING));
+    }
+
+    /**
+     * @return The name of the measured operation.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one operation.
+     *
+     * @param nanos The duration of the operation in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(0, nanos), MAX_VALUE);
+        @SuppressWarnings("deprecation") // Thread.threadId() is not available before Java 19
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        counts.getAndIncrement(stripe * (BUCKETS + PADDING) + bucketOf(value));
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    /**
+     * Records an operation that started at the given time.
+     *
+     * @param startNanos The {@link System#nanoTime()} when the operation started.
+     * @return The duration of the operation in nanoseconds.
+     */
+    public long recordSince(long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        record(nanos);
+        return nanos;
+    }
+
+    /**
+     * @return The number of operations recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return The mean duration of all operations in nanoseconds, or 0 if none were recorded.
+     */
+    public double getMeanNanos() {
+        long operations = count.sum();
+        return operations == 0 ? 0 : (double) totalNanos.sum() / operations;
+    }
+
+    /**
+     * @return The longest duration recorded in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return The duration from which an operation counts as slow, in nanoseconds.
+     */
+    public long getSlowThresholdNanos() {
+        return slowThresholdNanos;
+    }
+
+    /**
+     * @param nanos The duration from which an operation counts as slow, in nanoseconds.
+     */
+    void setSlowThresholdNanos(long nanos) {
+        slowThresholdNanos = nanos;
+    }
+
+    /**
+     * Adds up the counts of all stripes. Operations recorded meanwhile may or may not be included.
+     *
+     * @return The number of operations in each bucket since the histogram was created.
+     */
+    public long[] snapshot() {
+        long[] buckets = new long[BUCKETS];
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            int base = stripe * (BUCKETS + PADDING);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] += counts.get(base + i);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Reads a percentile from bucket counts, such as those of {@link #snapshot} or the difference of
+     * two snapshots.
+     *
+     * @param buckets The number of operations in each bucket.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The highest duration in nanoseconds of the bucket holding the percentile, or 0 if the
+     *         buckets are empty.
+     */
+    public static long percentile(long[] buckets, double percentile) {
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(buckets.length - 1);
+    }
+
+    /**
+     * Finds the bucket of a duration.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return shift * HALF_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest duration counted in a bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / HALF_COUNT - 1;
+        long lowest = (long) (bucket % HALF_COUNT + HALF_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -1,4 +1,4 @@
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.time.LocalDateTime;
@@ -10,7 +10,25 @@ import java.time.format.DateTimeFormatter;
  */
 public class Log {
 
-    private static final String LOG_FILE_PATH = "Log.txt"; // The path to the log file
+    private static volatile String logFilePath = System.getProperty("carshop.log", "Log.txt"); // The path to the log file
+
+    private static final LatencyHistogram LOG_TIMER = Metrics.timer("log.log");
+
+    /**
+     * Changes the file log entries are appended to, for example to keep benchmarks away from Log.txt.
+     *
+     * @param filePath The path of the log file.
+     */
+    public static void setLogFilePath(String filePath) {
+        logFilePath = filePath;
+    }
+
+    /**
+     * @return The path of the log file, Log.txt unless set with {@code -Dcarshop.log} or {@link #setLogFilePath}.
+     */
+    public static String getLogFilePath() {
+        return logFilePath;
+    }
 
     /**
      * Writes a log entry to the log file for a specified user action. Each log entry includes
@@ -21,8 +39,12 @@ public class Log {
      * @param action A description of the action being logged (print, logged in, etc.)
      */
     public static void log(String username, String action) {
-        try (FileWriter fw = new FileWriter(LOG_FILE_PATH, true);
-             PrintWriter pw = new PrintWriter(fw)) {
+        long start = System.nanoTime();
+        ShopEvents.LogWrite event = new ShopEvents.LogWrite();
+        event.begin();
+        long bytes = 0;
+        try (CountingOutputStream out = new CountingOutputStream(new FileOutputStream(logFilePath, true));
+             PrintWriter pw = new PrintWriter(out)) {
             // Get the current date and time in the specified format
             LocalDateTime now = LocalDateTime.now();
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss MM/dd/yy");
@@ -33,8 +55,18 @@ public class Log {
             
             // Write the log message to file
             pw.println(logMessage);
+            pw.flush();
+            bytes = out.getCount();
         } catch (IOException e) {
             System.err.println("An error occurred while writing to the log file: " + e.getMessage());
+        } finally {
+            LOG_TIMER.recordSince(start);
+            if (event.shouldCommit()) {
+                event.file = logFilePath;
+                event.username = username;
+                event.bytes = bytes;
+                event.commit();
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,500 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Replays the user actions recorded in a log file against a copy of the shop data, and reports the
+ * throughput and latency of every kind of action, so a change can be checked against real traffic.
+ * <p>
+ * Every log line the shop writes for a user action becomes an operation: logins, failed logins,
+ * purchases, returns, listing cars, viewing tickets and signing out, each followed by its log entry
+ * like in the shop. The log does not record car IDs or passwords, so a purchase buys a random car in
+ * stock, a failed purchase asks for a car that does not exist, a return gives back the last car the
+ * user bought during the replay, and users whose password is already hashed get a known password in
+ * the copy before the replay starts. The login throttle of the shop applies as usual, so replaying
+ * many failed logins faster than they happened locks the user out for the rest of the replay. Every
+ * user logs in from a terminal of their own, so the logins of all users do not share one source limit.
+ * <p>
+ * The operations of a user stay in order on one session; sessions run at the same time on virtual
+ * threads where the JVM has them, otherwise on platform threads. All sessions share one CarManager and
+ * UserManager like the kiosks of one shop: purchases, returns and ticket deletions take the lock of the
+ * CarManager, saves of the car file take turns, and every session thread keeps its own login, so the
+ * replay measures how the shop handles concurrent users, including waiting for those locks. In
+ * {@code original} mode every
+ * operation starts at its logged time after the start, in {@code compressed} mode time runs
+ * {@code speed} times faster, and in {@code max} mode operations run back to back. Idle gaps longer
+ * than {@code maxGap} seconds, such as nights, are shortened to that.
+ * <p>
+ * Usage: {@code java LogReplay [log=Log.txt] [data=.] [mode=compressed] [speed=60] [sessions=8]
+ * [lines=1-1000] [repeat=1] [maxGap=60] [seed=1]}. The data directory is only read; the replay works
+ * on a temporary copy that is deleted afterwards.
+ */
+public class LogReplay {
+
+    private static final Pattern LINE = Pattern.compile("^(\\d\\d:\\d\\d:\\d\\d \\d\\d/\\d\\d/\\d\\d) - (\\S+) (.+)$");
+    private static final Pattern CARS = Pattern.compile("(purchased|failed to purchase) (\\d+) cars");
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss MM/dd/yy");
+
+    private static final PrintStream CONSOLE = System.out;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    /**
+     * The kinds of logged actions that are replayed.
+     */
+    enum Action {
+        LOGIN("logged in"),
+        FAILED_LOGIN("attempted to log in for more than 3 times"),
+        PRINT_ALL("printed all cars"),
+        PRINT_NEW("printed new cars"),
+        PRINT_USED("printed used cars"),
+        PURCHASE("purchased a car"),
+        FAILED_PURCHASE("failed to purchase a car"),
+        PURCHASE_ORDER(null),
+        VIEW_TICKETS("viewed tickets"),
+        RETURN("Returned Car"),
+        SIGN_OUT("signed out");
+
+        private final String logged;
+
+        Action(String logged) {
+            this.logged = logged;
+        }
+    }
+
+    /**
+     * One logged action.
+     */
+    static final class Operation {
+        private final long millis;
+        private final String username;
+        private final Action action;
+        private final String text;
+        private final int cars;
+        private final boolean expectedToFail;
+
+        Operation(long millis, String username, Action action, String text, int cars, boolean expectedToFail) {
+            this.millis = millis;
+            this.username = username;
+            this.action = action;
+            this.text = text;
+            this.cars = cars;
+            this.expectedToFail = expectedToFail;
+        }
+    }
+
+    /**
+     * The measurements of one kind of action.
+     */
+    private static final class Result {
+        private final LatencyHistogram latency;
+        private final LongAdder failed = new LongAdder();
+
+        private Result(String name) {
+            this.latency = new LatencyHistogram(name);
+        }
+    }
+
+    private final CarManager carManager;
+    private final UserManager userManager;
+    private final Map<String, String> passwords = new HashMap<>();
+    private final Map<Action, Result> results = new LinkedHashMap<>();
+    private final LatencyHistogram lateness = new LatencyHistogram("lateness");
+    private final long seed;
+
+    private LogReplay(CarManager carManager, UserManager userManager, long seed) {
+        this.carManager = carManager;
+        this.userManager = userManager;
+        this.seed = seed;
+        for (Action action : Action.values()) {
+            results.put(action, new Result(action.name()));
+        }
+    }
+
+    /**
+     * Turns log lines into operations. Lines that are not user actions, such as startup times or
+     * admin panel visits, are left out.
+     *
+     * @param lines The lines of the log.
+     * @return The operations in log order.
+     */
+    static List<Operation> parse(List<String> lines) {
+        List<Operation> operations = new ArrayList<>();
+        for (String line : lines) {
+            Matcher matcher = LINE.matcher(line);
+            if (!matcher.matches()) {
+                continue;
+            }
+            long millis;
+            try {
+                millis = LocalDateTime.parse(matcher.group(1), TIME).toInstant(ZoneOffset.UTC).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                continue;
+            }
+            String username = matcher.group(2);
+            String text = matcher.group(3).trim();
+            Matcher cars = CARS.matcher(text);
+            if (cars.matches()) {
+                operations.add(new Operation(millis, username, Action.PURCHASE_ORDER, text,
+                        Integer.parseInt(cars.group(2)), cars.group(1).startsWith("failed")));
+                continue;
+            }
+            for (Action action : Action.values()) {
+                if (text.equals(action.logged)) {
+                    operations.add(new Operation(millis, username, action, text, 1,
+                            action == Action.FAILED_LOGIN || action == Action.FAILED_PURCHASE));
+                    break;
+                }
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Gives every replayed user a password the replay knows. Passwords still in plain text are
+     * kept; hashed ones are replaced in the copy by a new hash of a known password.
+     */
+    private void preparePasswords(List<Operation> operations) {
+        for (Operation operation : operations) {
+            if (passwords.containsKey(operation.username)) {
+                continue;
+            }
+            User user = userManager.findUserByUsername(operation.username);
+            if (user == null) {
+                passwords.put(operation.username, "");
+            } else if (PasswordHasher.isHash(user.getPassword())) {
+                String password = "replay-" + operation.username;
+                String hash = PasswordHasher.hash(password);
+                userManager.updateUser(operation.username, replayed -> {
+                    replayed.setPassword(hash);
+                    return true;
+                });
+                passwords.put(operation.username, password);
+            } else {
+                passwords.put(operation.username, user.getPassword());
+            }
+        }
+        userManager.saveUsersToCSV();
+    }
+
+    /**
+     * Runs the operations of one session in order, waiting for their time unless the speed is infinite.
+     */
+    private void runSession(List<Operation> operations, long startNanos, long[] offsets, double speed, Random random)
+            throws Exception {
+        Deque<Integer> bought = new ArrayDeque<>();
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            if (!Double.isInfinite(speed)) {
+                long due = startNanos + (long) (offsets[i] / speed * 1e6);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                }
+                lateness.record(System.nanoTime() - due);
+            }
+            long start = System.nanoTime();
+            boolean succeeded = perform(operation, bought, random);
+            Result result = results.get(operation.action);
+            result.latency.recordSince(start);
+            if (!succeeded) {
+                result.failed.increment();
+            }
+        }
+    }
+
+    private boolean perform(Operation operation, Deque<Integer> bought, Random random) throws Exception {
+        String username = operation.username;
+        boolean succeeded;
+        switch (operation.action) {
+            case LOGIN:
+                succeeded = userManager.authenticateUser(username, passwords.get(username), "replay:" + username);
+                break;
+            case FAILED_LOGIN:
+                succeeded = userManager.authenticateUser(username, "not-" + passwords.get(username), "replay:" + username);
+                break;
+            case PRINT_ALL:
+                carManager.printAllCars();
+                succeeded = true;
+                break;
+            case PRINT_NEW:
+                carManager.printConditionCars("New");
+                succeeded = true;
+                break;
+            case PRINT_USED:
+                carManager.printConditionCars("Used");
+                succeeded = true;
+                break;
+            case PURCHASE: {
+                Car car = carInStock(random);
+                succeeded = car != null && carManager.purchaseCar(username, String.valueOf(car.getId()), userManager);
+                if (succeeded) {
+                    bought.push(car.getId());
+                }
+                break;
+            }
+            case FAILED_PURCHASE:
+                succeeded = carManager.purchaseCar(username, "0", userManager); // No car has ID 0
+                break;
+            case PURCHASE_ORDER: {
+                List<String> ids = new ArrayList<>();
+                for (int i = 0; i < operation.cars; i++) {
+                    Car car = operation.expectedToFail ? null : carInStock(random);
+                    ids.add(car == null ? "0" : String.valueOf(car.getId()));
+                }
+                succeeded = carManager.purchaseCars(username, ids, userManager);
+                break;
+            }
+            case VIEW_TICKETS:
+                IssueTicket.viewTicketsForUser(username, carManager.getTicketFilePath());
+                succeeded = true;
+                break;
+            case RETURN:
+                succeeded = !bought.isEmpty() && userManager.returnCar(username, bought.pop(), carManager);
+                break;
+            case SIGN_OUT:
+                carManager.saveCarsToCSV();
+                userManager.saveUsersToCSV();
+                userManager.logout();
+                succeeded = true;
+                break;
+            default:
+                return false;
+        }
+        Log.log(username, operation.text);
+        return succeeded != operation.expectedToFail;
+    }
+
+    /**
+     * Picks a random car that is in stock, or null after a few cars that are not.
+     */
+    private Car carInStock(Random random) {
+        InventorySnapshot inventory = carManager.getInventory();
+        for (int attempt = 0; attempt < 10 && !inventory.isEmpty(); attempt++) {
+            Car car = inventory.get(random.nextInt(inventory.size()));
+            if (car.getCarsAvailable() > 0) {
+                return car;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replays the operations on the given number of sessions and prints the report.
+     */
+    private void run(List<Operation> operations, int sessions, double speed, long maxGapMillis) throws Exception {
+        // Times relative to the first operation, with long idle gaps shortened
+        long[] offsets = new long[operations.size()];
+        for (int i = 1; i < offsets.length; i++) {
+            long gap = Math.max(0, operations.get(i).millis - operations.get(i - 1).millis);
+            offsets[i] = offsets[i - 1] + Math.min(gap, maxGapMillis);
+        }
+        List<List<Operation>> sessionOperations = new ArrayList<>();
+        List<List<Long>> sessionOffsets = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            sessionOperations.add(new ArrayList<>());
+            sessionOffsets.add(new ArrayList<>());
+        }
+        for (int i = 0; i < operations.size(); i++) {
+            int session = Math.floorMod(operations.get(i).username.hashCode(), sessions);
+            sessionOperations.get(session).add(operations.get(i));
+            sessionOffsets.get(session).add(offsets[i]);
+        }
+
+        String threads;
+        ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            threads = "virtual threads";
+        } catch (ReflectiveOperationException e) {
+            executor = Executors.newFixedThreadPool(sessions, task -> {
+                Thread thread = new Thread(task, "replay-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+            threads = "platform threads (virtual threads need Java 21)";
+        }
+
+        System.setOut(DISCARD);
+        long start = System.nanoTime();
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            List<Operation> ops = sessionOperations.get(i);
+            long[] opOffsets = sessionOffsets.get(i).stream().mapToLong(Long::longValue).toArray();
+            Random random = new Random(seed + i);
+            running.add(executor.submit(() -> {
+                runSession(ops, start, opOffsets, speed, random);
+                return null;
+            }));
+        }
+        Throwable failure = null;
+        for (Future<?> session : running) {
+            try {
+                session.get();
+            } catch (Exception e) {
+                failure = failure == null ? e.getCause() : failure;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        System.setOut(CONSOLE);
+
+        if (failure != null) {
+            System.out.println("A session stopped with an error: " + failure);
+        }
+        System.out.printf("Replayed %,d operations on %d sessions (%s) in %.2f s: %,.1f operations/s%n",
+                operations.size(), sessions, threads, seconds, operations.size() / seconds);
+        System.out.printf("%-16s %8s %8s %10s %12s %12s %12s %12s %12s%n",
+                "Action", "Ops", "Failed", "Ops/s", "Mean", "p50", "p99", "p99.9", "Max");
+        for (Map.Entry<Action, Result> entry : results.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            if (latency.getCount() == 0) {
+                continue;
+            }
+            System.out.printf("%-16s %,8d %,8d %,10.1f %12s %12s %12s %12s %12s%n", entry.getKey().name().toLowerCase(),
+                    latency.getCount(), entry.getValue().failed.sum(), latency.getCount() / seconds,
+                    formatNanos(latency.getMeanNanos()), percentile(latency, 50), percentile(latency, 99),
+                    percentile(latency, 99.9), formatNanos(latency.getMaxNanos()));
+        }
+        if (lateness.getCount() > 0) {
+            System.out.printf("Started late by p50 %s, p99 %s, max %s%n", percentile(lateness, 50),
+                    percentile(lateness, 99), formatNanos(lateness.getMaxNanos()));
+        }
+        System.out.println("Failed counts operations whose outcome differs from the log.");
+    }
+
+    /**
+     * Formats a percentile of a histogram, which is never more than the longest duration recorded.
+     */
+    private static String percentile(LatencyHistogram histogram, double percentile) {
+        return formatNanos(Math.min(LatencyHistogram.percentile(histogram.snapshot(), percentile), histogram.getMaxNanos()));
+    }
+
+    private static String formatNanos(double nanos) {
+        if (nanos >= 1e6) {
+            return String.format("%,.2f ms", nanos / 1e6);
+        }
+        if (nanos >= 1e3) {
+            return String.format("%,.2f us", nanos / 1e3);
+        }
+        return String.format("%,.0f ns", nanos);
+    }
+
+    /**
+     * Replays a log.
+     *
+     * @param args Options as key=value: log, data, mode, speed, sessions, lines, repeat, maxGap and seed.
+     */
+    public static void main(String[] args) throws Exception {
+        String logFile = "Log.txt";
+        String dataDirectory = ".";
+        String mode = "compressed";
+        double speed = 60;
+        int sessions = 8;
+        int firstLine = 1;
+        int lastLine = Integer.MAX_VALUE;
+        int repeat = 1;
+        long maxGapMillis = 60_000;
+        long seed = 1;
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            String value = option.length > 1 ? option[1].trim() : "";
+            switch (option[0]) {
+                case "log": logFile = value; break;
+                case "data": dataDirectory = value; break;
+                case "mode": mode = value; break;
+                case "speed": speed = Double.parseDouble(value); break;
+                case "sessions": sessions = Math.max(1, Integer.parseInt(value)); break;
+                case "lines": {
+                    String[] range = value.split("-", 2);
+                    firstLine = Integer.parseInt(range[0].trim());
+                    lastLine = range.length > 1 && !range[1].isBlank() ? Integer.parseInt(range[1].trim()) : Integer.MAX_VALUE;
+                    break;
+                }
+                case "repeat": repeat = Math.max(1, Integer.parseInt(value)); break;
+                case "maxGap": maxGapMillis = (long) (Double.parseDouble(value) * 1000); break;
+                case "seed": seed = Long.parseLong(value); break;
+                default:
+                    System.out.println("Unknown option " + arg);
+                    return;
+            }
+        }
+        switch (mode) {
+            case "original": speed = 1; break;
+            case "compressed": break;
+            case "max": speed = Double.POSITIVE_INFINITY; break;
+            default:
+                System.out.println("Unknown mode " + mode + ", use original, compressed or max.");
+                return;
+        }
+
+        List<String> lines = Files.readAllLines(Path.of(logFile));
+        List<String> segment = lines.subList(Math.min(lines.size(), Math.max(0, firstLine - 1)), Math.min(lines.size(), lastLine));
+        List<Operation> trace = parse(segment);
+        if (trace.isEmpty()) {
+            System.out.println("No user actions found in " + logFile + ".");
+            return;
+        }
+        List<Operation> operations = new ArrayList<>(trace.size() * repeat);
+        long span = trace.get(trace.size() - 1).millis - trace.get(0).millis + 1000;
+        for (int round = 0; round < repeat; round++) {
+            for (Operation operation : trace) {
+                operations.add(new Operation(operation.millis + round * span, operation.username, operation.action,
+                        operation.text, operation.cars, operation.expectedToFail));
+            }
+        }
+
+        Path copy = Files.createTempDirectory("carshop-replay-");
+        String previousLog = Log.getLogFilePath();
+        try {
+            for (String name : new String[]{CarManager.CAR_FILE, UserManager.USER_FILE, CarManager.TICKET_FILE}) {
+                Path source = Path.of(CarManager.dataFile(dataDirectory, name));
+                if (Files.exists(source)) {
+                    Files.copy(source, copy.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Log.setLogFilePath(copy.resolve("Log.txt").toString());
+            System.setOut(DISCARD);
+            CarManager carManager = new CarManager(copy.toString());
+            UserManager userManager = new UserManager(carManager, copy.toString());
+            LogReplay replay = new LogReplay(carManager, userManager, seed);
+            replay.preparePasswords(operations);
+            System.setOut(CONSOLE);
+            System.out.printf("%,d log lines, %,d operations, mode %s%s%n", segment.size(), operations.size(), mode,
+                    Double.isInfinite(speed) ? "" : String.format(", speed %sx, gaps up to %d s", speed, maxGapMillis / 1000));
+            replay.run(operations, sessions, speed, maxGapMillis);
+        } finally {
+            System.setOut(CONSOLE);
+            Log.setLogFilePath(previousLog);
+            deleteDirectory(copy);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Limits login attempts per username and per source (a terminal or address) with token buckets, so a
+ * script cannot try passwords faster than a person and restarting the program does not reset the
+ * count. Every attempt takes a token from the bucket of the username and from the bucket of the
+ * source; a successful login gives back the token of the username only, so owning one valid account
+ * does not let a source mix guesses with real logins to stay under its limit. Buckets refill at a
+ * fixed rate up to their capacity.
+ * <p>
+ * The source limit is shared by everyone at a source. At a kiosk whose logins all come from one
+ * terminal ID, somebody trying many passwords there also makes the kiosk wait for everybody else,
+ * for as long as the attempts keep coming. This is the intended trade-off: the kiosk is slowed down,
+ * but its accounts are not guessed. Give every kiosk its own ID with {@code -Dcarshop.terminal} so one
+ * kiosk under attack does not hold up the others.
+ * <p>
+ * A bucket is one long holding its tokens and the time of its last refill, updated with
+ * compare-and-set, so checking a bucket takes no lock and a rejection costs a hash and a read. The
+ * buckets live in fixed tables of a memory-mapped file, which keeps the state across restarts at a
+ * constant size however many usernames are tried: a key is hashed with a random seed of the file to
+ * its slot, and the rare keys sharing a slot share its tokens.
+ */
+public final class LoginThrottle {
+
+    /**
+     * The name of the throttle file inside a data directory.
+     */
+    public static final String THROTTLE_FILE = "login_throttle.bin";
+
+    private static final int MAGIC = 0x54484C54; // "THLT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SEED_OFFSET = 8;
+
+    /**
+     * The number of buckets per table, a power of two.
+     */
+    private static final int SLOTS = 1 << 16;
+    private static final int TABLE_BYTES = SLOTS * Long.BYTES;
+
+    /**
+     * Tokens are counted in thousandths so refills between two attempts are not lost.
+     */
+    private static final long MILLI_TOKENS = 1000;
+    private static final int TOKEN_BITS = 20;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+    /**
+     * Refill times are stored relative to this time (2023-11-14), which leaves room for centuries.
+     */
+    private static final long EPOCH = 1_700_000_000_000L;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteBuffer state;
+    private final long seed;
+    private final Limit userLimit;
+    private final Limit sourceLimit;
+
+    /**
+     * The capacity and refill rate of the buckets of one table.
+     */
+    public static final class Limit {
+        private final long capacity;
+        private final long millisPerToken;
+
+        /**
+         * @param attempts The attempts allowed in a burst, at most 1000.
+         * @param millisPerAttempt The time after which one more attempt is allowed.
+         */
+        public Limit(int attempts, long millisPerAttempt) {
+            this.capacity = Math.min(Math.max(1, attempts), 1000) * MILLI_TOKENS;
+            this.millisPerToken = Math.max(1, millisPerAttempt);
+        }
+    }
+
+    private LoginThrottle(ByteBuffer state, Limit userLimit, Limit sourceLimit) {
+        this.state = state;
+        this.seed = state.getLong(SEED_OFFSET);
+        this.userLimit = userLimit;
+        this.sourceLimit = sourceLimit;
+    }
+
+    /**
+     * Opens the throttle file, creating it if needed, with the default limits: 5 attempts per username
+     * and one more every minute, 20 attempts per source and one more every 10 seconds. If the file
+     * cannot be opened, the throttle keeps its state in memory only.
+     *
+     * @param filePath The path of the throttle file.
+     * @return The opened throttle.
+     */
+    public static LoginThrottle open(String filePath) {
+        return open(filePath, new Limit(5, 60_000), new Limit(20, 10_000));
+    }
+
+    /**
+     * Opens the throttle file, creating it if needed.
+     *
+     * @param filePath The path of the throttle file, or null to keep the state in memory only.
+     * @param userLimit The limit per username.
+     * @param sourceLimit The limit per source.
+     * @return The opened throttle.
+     */
+    public static LoginThrottle open(String filePath, Limit userLimit, Limit sourceLimit) {
+        long size = HEADER_SIZE + 2L * TABLE_BYTES;
+        ByteBuffer state = null;
+        if (filePath != null) {
+            File file = new File(filePath);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                boolean existed = channel.size() == size;
+                state = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                state.order(ByteOrder.LITTLE_ENDIAN);
+                if (!existed || state.getInt(0) != MAGIC || state.getInt(4) != VERSION) {
+                    initialize(state);
+                }
+            } catch (IOException e) {
+                System.out.println("Could not open the login throttle file, keeping it in memory: " + e.getMessage());
+                state = null;
+            }
+        }
+        if (state == null) {
+            state = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            initialize(state);
+        }
+        return new LoginThrottle(state, userLimit, sourceLimit);
+    }
+
+    private static void initialize(ByteBuffer state) {
+        for (int i = 0; i < state.capacity(); i += Long.BYTES) {
+            state.putLong(i, 0L); // An empty bucket refills to full
+        }
+        state.putLong(SEED_OFFSET, ThreadLocalRandom.current().nextLong());
+        state.putInt(4, VERSION);
+        state.putInt(0, MAGIC);
+    }
+
+    /**
+     * Takes a login attempt from the buckets of a username and a source.
+     *
+     * @param username The username being logged in to.
+     * @param source The terminal or address the attempt comes from.
+     * @return 0 if the attempt may go ahead, otherwise the milliseconds until the next attempt is allowed.
+     */
+    public long acquire(String username, String source) {
+        long now = System.currentTimeMillis();
+        int sourceSlot = slot(1, source);
+        long wait = take(sourceSlot, sourceLimit, now);
+        if (wait > 0) {
+            return wait;
+        }
+        wait = take(slot(0, username), userLimit, now);
+        if (wait > 0) {
+            give(sourceSlot, sourceLimit, now); // The source is charged for tries it could make
+        }
+        return wait;
+    }
+
+    /**
+     * Gives back the username attempt of a successful login, so users who know their password are not
+     * slowed down. The source keeps paying for the attempt.
+     *
+     * @param username The username that logged in.
+     */
+    public void release(String username) {
+        give(slot(0, username), userLimit, System.currentTimeMillis());
+    }
+
+    private long take(int offset, Limit limit, long now) {
+        while (true) {
+            long bucket = (long) LONGS.getVolatile(state, offset);
+            long tokens = refilled(bucket, limit, now);
+            if (tokens < MILLI_TOKENS) {
+                return (MILLI_TOKENS - tokens) * limit.millisPerToken / MILLI_TOKENS + 1;
+            }
+            if (LONGS.compareAndSet(state, offset, bucket, pack(tokens - MILLI_TOKENS, now))) {
+                return 0;
+            }
+        }
+    }
+
+    private void give(int offset, Limit limit, long now) {
+        while (true) {
+            long bucket = (long) LONGS.getVolatile(state, offset);
+            long tokens = Math.min(limit.capacity, refilled(bucket, limit, now) + MILLI_TOKENS);
+            if (LONGS.compareAndSet(state, offset, bucket, pack(tokens, now))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Computes the tokens of a bucket at the given time.
+     */
+    private static long refilled(long bucket, Limit limit, long now) {
+        long last = (bucket >>> TOKEN_BITS) + EPOCH;
+        long tokens = bucket & TOKEN_MASK;
+        if (bucket == 0) {
+            return limit.capacity;
+        }
+        long elapsed = Math.max(0, now - last);
+        long refill = elapsed >= limit.millisPerToken * (limit.capacity / MILLI_TOKENS)
+                ? limit.capacity
+                : elapsed * MILLI_TOKENS / limit.millisPerToken;
+        return Math.min(limit.capacity, tokens + refill);
+    }
+
+    private static long pack(long tokens, long now) {
+        return (Math.max(1, now - EPOCH) << TOKEN_BITS) | tokens;
+    }
+
+    /**
+     * Finds the byte offset of the bucket of a key in a table.
+     */
+    private int slot(int table, String key) {
+        long hash = seed ^ (table + 1) * 0x9E3779B97F4A7C15L;
+        String value = key == null ? "" : key;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 32;
+        return HEADER_SIZE + table * TABLE_BYTES + (int) (hash & (SLOTS - 1)) * Long.BYTES;
+    }
+}
@@ -0,0 +1,382 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keeps cars in fixed-width records of a memory-mapped file next to the car CSV file, so a large
+ * inventory adds almost nothing to the Java heap and does not slow down garbage collection. Text
+ * fields that repeat are stored as codes of a {@link MappedDictionary}; VINs of up to 18 bytes are
+ * stored inside the record.
+ * <p>
+ * Cars are read and updated through {@link View}s like in the {@link ColumnarCarStore}, so stock
+ * and price changes are written straight into the file. As long as the CSV file has not been changed
+ * since the last save, the next start reads the inventory from the file instead of parsing the CSV.
+ */
+public final class MappedCarStore extends CarStore {
+
+    private static final int MAGIC = 0x43415253; // "CARS"
+
+    private static final int ID = 0;
+    private static final int TYPE = 4;
+    private static final int MODEL = 8;
+    private static final int CONDITION = 12;
+    private static final int COLOR = 16;
+    private static final int CAPACITY = 20;
+    private static final int PRICE = 24;
+    private static final int TRANSMISSION = 28;
+    private static final int FUEL_TYPE = 32;
+    private static final int YEAR = 36;
+    private static final int CARS_AVAILABLE = 40;
+    private static final int FLAGS = 44;
+    private static final int VIN_LENGTH = 45;
+    private static final int VIN = 46;
+    private static final int RECORD_SIZE = 64;
+
+    /**
+     * The longest VIN stored inside the record. Longer VINs are stored in the dictionary.
+     */
+    private static final int VIN_CAPACITY = RECORD_SIZE - VIN;
+
+    /**
+     * The VIN length that marks a VIN stored in the dictionary.
+     */
+    private static final byte VIN_IN_DICTIONARY = -1;
+
+    private static final byte TURBO_FLAG = 1;
+    private static final byte RELEASED_FLAG = 2;
+
+    private final MappedRecordFile records;
+    private final MappedDictionary dictionary;
+    private final MappedDictionary.Section types;
+    private final MappedDictionary.Section models;
+    private final MappedDictionary.Section conditions;
+    private final MappedDictionary.Section colors;
+    private final MappedDictionary.Section transmissions;
+    private final MappedDictionary.Section fuelTypes;
+    private final MappedDictionary.Section vins;
+
+    private MappedCarStore(MappedRecordFile records, MappedDictionary dictionary) {
+        this.records = records;
+        this.dictionary = dictionary;
+        this.types = dictionary.section(0);
+        this.models = dictionary.section(1);
+        this.conditions = dictionary.section(2);
+        this.colors = dictionary.section(3);
+        this.transmissions = dictionary.section(4);
+        this.fuelTypes = dictionary.section(5);
+        this.vins = dictionary.section(6);
+    }
+
+    /**
+     * Opens the mapped store of a car CSV file, kept in the files {@code <csv>.rows} and {@code <csv>.dict}.
+     *
+     * @param csvFilePath The path of the car CSV file.
+     * @return The opened store, which may still hold the cars of an earlier run.
+     * @throws java.io.UncheckedIOException If the files cannot be opened.
+     */
+    public static MappedCarStore open(String csvFilePath) {
+        MappedCarStore store = new MappedCarStore(
+                MappedRecordFile.open(new File(csvFilePath + ".rows"), MAGIC, RECORD_SIZE),
+                MappedDictionary.open(new File(csvFilePath + ".dict"), SymbolTable.TYPES, SymbolTable.MODELS,
+                        SymbolTable.CONDITIONS, SymbolTable.COLORS, SymbolTable.TRANSMISSIONS, SymbolTable.FUEL_TYPES, null));
+        store.records.mapCommitted();
+        return store;
+    }
+
+    /**
+     * Checks whether the stored cars can be used instead of loading the CSV file.
+     *
+     * @param csvFile The car CSV file.
+     * @return true if the CSV file has not changed since the store last matched it.
+     */
+    public boolean matches(File csvFile) {
+        return records.matches(csvFile, dictionary.size());
+    }
+
+    /**
+     * Drops every stored car, before the store is filled again from the CSV file.
+     */
+    public void clear() {
+        records.clear();
+        dictionary.clear();
+    }
+
+    @Override
+    public int append(Car car) {
+        int row = records.allocate();
+        records.putInt(row, ID, car.getId());
+        records.putInt(row, TYPE, types.fromSymbol(car.getTypeCode()));
+        records.putInt(row, MODEL, models.fromSymbol(car.getModelCode()));
+        records.putInt(row, CONDITION, conditions.fromSymbol(car.getConditionCode()));
+        records.putInt(row, COLOR, colors.fromSymbol(car.getColorCode()));
+        records.putInt(row, CAPACITY, car.getCapacity());
+        records.putInt(row, PRICE, Float.floatToRawIntBits(car.getPrice()));
+        records.putInt(row, TRANSMISSION, transmissions.fromSymbol(car.getTransmissionCode()));
+        records.putInt(row, FUEL_TYPE, fuelTypes.fromSymbol(car.getFuelTypeCode()));
+        records.putInt(row, YEAR, car.getYear());
+        records.putInt(row, CARS_AVAILABLE, car.getCarsAvailable());
+        records.putByte(row, FLAGS, car.getHasTurbo() ? TURBO_FLAG : 0);
+        putVin(row, car.getVin());
+        records.commit(row + 1);
+        return row;
+    }
+
+    @Override
+    public Car car(int row) {
+        return new View(this, row);
+    }
+
+    @Override
+    public Car flyweight() {
+        return new View(this, -1);
+    }
+
+    @Override
+    public Car bind(Car flyweight, int row) {
+        View view = (View) flyweight;
+        view.row = row;
+        return view;
+    }
+
+    @Override
+    public int rowCount() {
+        return records.count();
+    }
+
+    @Override
+    public void release(int row) {
+        records.putByte(row, FLAGS, (byte) (records.getByte(row, FLAGS) | RELEASED_FLAG));
+    }
+
+    @Override
+    public boolean isReleased(int row) {
+        return (records.getByte(row, FLAGS) & RELEASED_FLAG) != 0;
+    }
+
+    @Override
+    public void sourceSaved(File csvFile) {
+        records.stamp(csvFile, dictionary.size());
+        records.force();
+    }
+
+    private void setFlag(int row, byte flag, boolean set) {
+        byte flags = records.getByte(row, FLAGS);
+        records.putByte(row, FLAGS, (byte) (set ? flags | flag : flags & ~flag));
+    }
+
+    private void putVin(int row, String vin) {
+        byte[] bytes = (vin == null ? "" : vin).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= VIN_CAPACITY) {
+            records.putBytes(row, VIN, bytes, bytes.length);
+            records.putByte(row, VIN_LENGTH, (byte) bytes.length);
+        } else {
+            records.putInt(row, VIN, vins.code(vin));
+            records.putByte(row, VIN_LENGTH, VIN_IN_DICTIONARY);
+        }
+    }
+
+    private String getVin(int row) {
+        byte length = records.getByte(row, VIN_LENGTH);
+        if (length == VIN_IN_DICTIONARY) {
+            return vins.get(records.getInt(row, VIN));
+        }
+        byte[] bytes = new byte[length];
+        records.getBytes(row, VIN, bytes, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A {@link Car} that reads and writes one record of a {@link MappedCarStore}. The fields inherited
+     * from Car are not used.
+     */
+    public static final class View extends Car {
+        private final MappedCarStore store;
+        private int row;
+
+        View(MappedCarStore store, int row) {
+            super(0, null, null, null, null, 0, 0, null, null, null, 0, 0, false);
+            this.store = store;
+            this.row = row;
+        }
+
+        private int field(int field) {
+            return store.records.getInt(row, field);
+        }
+
+        private void field(int field, int value) {
+            store.records.putInt(row, field, value);
+        }
+
+        @Override
+        public int getId() {
+            return field(ID);
+        }
+
+        @Override
+        public String getType() {
+            return SymbolTable.TYPES.symbol(getTypeCode());
+        }
+
+        @Override
+        public String getModel() {
+            return SymbolTable.MODELS.symbol(getModelCode());
+        }
+
+        @Override
+        public String getCondition() {
+            return SymbolTable.CONDITIONS.symbol(getConditionCode());
+        }
+
+        @Override
+        public String getColor() {
+            return SymbolTable.COLORS.symbol(getColorCode());
+        }
+
+        @Override
+        public int getTypeCode() {
+            return store.types.toSymbol(field(TYPE));
+        }
+
+        @Override
+        public int getModelCode() {
+            return store.models.toSymbol(field(MODEL));
+        }
+
+        @Override
+        public int getConditionCode() {
+            return store.conditions.toSymbol(field(CONDITION));
+        }
+
+        @Override
+        public int getColorCode() {
+            return store.colors.toSymbol(field(COLOR));
+        }
+
+        @Override
+        public int getTransmissionCode() {
+            return store.transmissions.toSymbol(field(TRANSMISSION));
+        }
+
+        @Override
+        public int getFuelTypeCode() {
+            return store.fuelTypes.toSymbol(field(FUEL_TYPE));
+        }
+
+        @Override
+        public int getCapacity() {
+            return field(CAPACITY);
+        }
+
+        @Override
+        public String getFuelType() {
+            return SymbolTable.FUEL_TYPES.symbol(getFuelTypeCode());
+        }
+
+        @Override
+        public String getTransmission() {
+            return SymbolTable.TRANSMISSIONS.symbol(getTransmissionCode());
+        }
+
+        @Override
+        public String getVin() {
+            return store.getVin(row);
+        }
+
+        @Override
+        public float getPrice() {
+            return Float.intBitsToFloat(field(PRICE));
+        }
+
+        @Override
+        public int getCarsAvailable() {
+            return field(CARS_AVAILABLE);
+        }
+
+        @Override
+        public boolean getHasTurbo() {
+            return (store.records.getByte(row, FLAGS) & TURBO_FLAG) != 0;
+        }
+
+        @Override
+        public int getYear() {
+            return field(YEAR);
+        }
+
+        @Override
+        public void setId(int id) {
+            field(ID, id);
+        }
+
+        @Override
+        public void setType(String type) {
+            field(TYPE, store.types.fromSymbol(SymbolTable.TYPES.code(type)));
+        }
+
+        @Override
+        public void setModel(String model) {
+            field(MODEL, store.models.fromSymbol(SymbolTable.MODELS.code(model)));
+        }
+
+        @Override
+        public void setCondition(String condition) {
+            field(CONDITION, store.conditions.fromSymbol(SymbolTable.CONDITIONS.code(condition)));
+        }
+
+        @Override
+        public void setColor(String color) {
+            field(COLOR, store.colors.fromSymbol(SymbolTable.COLORS.code(color)));
+        }
+
+        @Override
+        public void setCapacity(int capacity) {
+            field(CAPACITY, capacity);
+        }
+
+        @Override
+        public void setFuelType(String fuelType) {
+            field(FUEL_TYPE, store.fuelTypes.fromSymbol(SymbolTable.FUEL_TYPES.code(fuelType)));
+        }
+
+        @Override
+        public void setTransmission(String transmission) {
+            field(TRANSMISSION, store.transmissions.fromSymbol(SymbolTable.TRANSMISSIONS.code(transmission)));
+        }
+
+        @Override
+        public void setVin(String vin) {
+            store.putVin(row, vin);
+        }
+
+        @Override
+        public void setPrice(float price) {
+            field(PRICE, Float.floatToRawIntBits(price));
+        }
+
+        @Override
+        public void setCarsAvailable(int carsAvailable) {
+            field(CARS_AVAILABLE, carsAvailable);
+        }
+
+        @Override
+        public void setHasTurbo(boolean hasTurbo) {
+            store.setFlag(row, TURBO_FLAG, hasTurbo);
+        }
+
+        @Override
+        public void setYear(int year) {
+            field(YEAR, year);
+        }
+
+        /**
+         * Two views are equal when they read the same record of the same store.
+         */
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof View && ((View) other).store == store && ((View) other).row == row;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(store) * 31 + row;
+        }
+    }
+}
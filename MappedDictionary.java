@@ -0,0 +1,272 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An append-only dictionary of strings stored next to a {@link MappedRecordFile}. Records refer to
+ * repeated text by the code of its entry, and the dictionary file keeps the entries in code order so
+ * the same codes are valid after a restart.
+ * <p>
+ * The dictionary is split into {@link Section}s, one per kind of value (car types, usernames, ...),
+ * each with its own codes. A section tied to a shared {@link SymbolTable} adds its values to the table
+ * as soon as they are read, so lookups in the table find every value of the mapped records, and
+ * translates its codes to and from the codes of the table, which are only valid inside one run.
+ */
+public final class MappedDictionary {
+
+    /**
+     * Marks a translation that has not been looked up yet.
+     */
+    private static final int UNRESOLVED = -2;
+
+    private final File file;
+    private final Section[] sections;
+    private int size = 0;
+    private DataOutputStream out;
+
+    private MappedDictionary(File file, SymbolTable[] tables) {
+        this.file = file;
+        this.sections = new Section[tables.length];
+        for (int kind = 0; kind < tables.length; kind++) {
+            sections[kind] = new Section(kind, tables[kind]);
+        }
+    }
+
+    /**
+     * Opens a dictionary file, reading the entries it already holds. An entry cut short by a crash is
+     * dropped.
+     *
+     * @param file The dictionary file.
+     * @param tables The symbol table of each section, or null for a section of plain text.
+     * @return The opened dictionary.
+     * @throws UncheckedIOException If the file cannot be read.
+     */
+    public static MappedDictionary open(File file, SymbolTable... tables) {
+        MappedDictionary dictionary = new MappedDictionary(file, tables);
+        long validLength = 0;
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    int kind = in.readUnsignedByte();
+                    String entry = in.readUTF();
+                    if (kind >= tables.length) {
+                        break; // Written with another layout
+                    }
+                    dictionary.sections[kind].remember(entry);
+                    dictionary.size++;
+                    validLength += 3 + utfLength(entry);
+                }
+            } catch (EOFException e) {
+                // End of the entries
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + file, e);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(validLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open " + file, e);
+        }
+        return dictionary;
+    }
+
+    /**
+     * @param kind The kind of values, an index into the tables given to {@link #open}.
+     * @return The section holding that kind of values.
+     */
+    public Section section(int kind) {
+        return sections[kind];
+    }
+
+    /**
+     * Drops every entry, leaving an empty dictionary.
+     */
+    public synchronized void clear() {
+        closeOutput();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not clear " + file, e);
+        }
+        for (Section section : sections) {
+            section.reset();
+        }
+        size = 0;
+    }
+
+    /**
+     * @return The number of entries in all sections.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Closes the file the new entries are written to. It is opened again when needed.
+     */
+    public synchronized void closeOutput() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.out.println("Error closing " + file + ": " + e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    private synchronized int add(Section section, String value) {
+        Integer code = section.codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        try {
+            if (out == null) {
+                out = new DataOutputStream(new FileOutputStream(file, true));
+            }
+            out.writeByte(section.kind);
+            out.writeUTF(value);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to " + file, e);
+        }
+        size++;
+        return section.remember(value);
+    }
+
+    /**
+     * Counts the bytes {@link DataOutputStream#writeUTF} uses for a string, without the length prefix.
+     */
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+        }
+        return length;
+    }
+
+    /**
+     * The entries of one kind of value.
+     */
+    public final class Section {
+        private final int kind;
+        private final SymbolTable table;
+        private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+        private volatile String[] entries = new String[16];
+        private volatile int[] toSymbol = new int[16];
+        private volatile int[] fromSymbol = new int[0];
+        private int size = 0;
+
+        private Section(int kind, SymbolTable table) {
+            this.kind = kind;
+            this.table = table;
+        }
+
+        /**
+         * Returns the code of a string, adding it to the dictionary if it is new.
+         *
+         * @param value The string to encode. Null is stored as an empty string.
+         * @return The code of the string in this section.
+         * @throws UncheckedIOException If a new entry cannot be written.
+         */
+        public int code(String value) {
+            if (value == null) {
+                value = "";
+            }
+            Integer code = codes.get(value);
+            return code != null ? code : add(this, value);
+        }
+
+        /**
+         * @param code A code of this section.
+         * @return The string stored under that code.
+         */
+        public String get(int code) {
+            return entries[code];
+        }
+
+        /**
+         * @param code A code of this section, which must be tied to a symbol table.
+         * @return The code of the same string in the symbol table.
+         */
+        public int toSymbol(int code) {
+            return toSymbol[code];
+        }
+
+        /**
+         * @param code A code of this section, which must be tied to a symbol table.
+         * @return The canonical string of the code, taken from the symbol table.
+         */
+        public String symbol(int code) {
+            return table.symbol(toSymbol[code]);
+        }
+
+        /**
+         * @param symbolCode A code of the symbol table of this section.
+         * @return The code of the same string in this section, added if needed.
+         */
+        public int fromSymbol(int symbolCode) {
+            if (symbolCode == SymbolTable.NO_CODE) {
+                return code(null);
+            }
+            int[] map = fromSymbol;
+            if (symbolCode < map.length && map[symbolCode] != UNRESOLVED) {
+                return map[symbolCode];
+            }
+            synchronized (MappedDictionary.this) {
+                map = fromSymbol;
+                if (symbolCode >= map.length) {
+                    int length = Math.max(symbolCode + 1, map.length * 2);
+                    int[] grown = Arrays.copyOf(map, length);
+                    Arrays.fill(grown, map.length, length, UNRESOLVED);
+                    map = grown;
+                }
+                map[symbolCode] = code(table.symbol(symbolCode));
+                fromSymbol = map;
+                return map[symbolCode];
+            }
+        }
+
+        /**
+         * Stores a new entry. Callers hold the lock of the dictionary or are still opening it.
+         */
+        private int remember(String value) {
+            int code = size;
+            String[] currentEntries = entries;
+            int[] currentToSymbol = toSymbol;
+            if (code == currentEntries.length) {
+                currentEntries = Arrays.copyOf(currentEntries, code * 2);
+                currentToSymbol = Arrays.copyOf(currentToSymbol, code * 2);
+            }
+            if (table != null) {
+                currentToSymbol[code] = table.code(value);
+                value = table.symbol(currentToSymbol[code]);
+            }
+            currentEntries[code] = value;
+            toSymbol = currentToSymbol;
+            entries = currentEntries; // Publish the entry before the code can be seen
+            codes.put(value, code);
+            size = code + 1;
+            return code;
+        }
+
+        private void reset() {
+            codes.clear();
+            entries = new String[16];
+            toSymbol = new int[16];
+            fromSymbol = new int[0];
+            size = 0;
+        }
+    }
+}
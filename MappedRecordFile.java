@@ -0,0 +1,260 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A file of fixed-width records that is memory-mapped, so records live outside the Java heap and are
+ * read and updated in place. The file starts with a small header holding the record count and a stamp
+ * of the CSV file the records were built from; the records follow in regions that are mapped as the
+ * file grows.
+ * <p>
+ * Appending is done by one writer at a time: {@link #allocate()} returns the index of the next record,
+ * the caller fills its fields and {@link #commit(int)} makes it part of the file. A record that was
+ * written but not committed when the process stopped is ignored when the file is opened again.
+ */
+public final class MappedRecordFile {
+
+    private static final int HEADER_SIZE = 64;
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RECORD_SIZE_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int SOURCE_LENGTH_OFFSET = 16;
+    private static final int SOURCE_MODIFIED_OFFSET = 24;
+    private static final int DICTIONARY_SIZE_OFFSET = 32;
+
+    /**
+     * The number of bits of a record index used for the position inside a region.
+     */
+    private static final int REGION_BITS = 16;
+    private static final int REGION_MASK = (1 << REGION_BITS) - 1;
+
+    private final File file;
+    private final int recordSize;
+    private final MappedByteBuffer header;
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+    private MappedRecordFile(File file, int recordSize, MappedByteBuffer header) {
+        this.file = file;
+        this.recordSize = recordSize;
+        this.header = header;
+    }
+
+    /**
+     * Opens a record file, creating it if needed. A file written with another layout is emptied.
+     *
+     * @param file The record file.
+     * @param magic A number identifying the kind of records.
+     * @param recordSize The size of one record in bytes.
+     * @return The opened file.
+     * @throws UncheckedIOException If the file cannot be opened or mapped.
+     */
+    public static MappedRecordFile open(File file, int magic, int recordSize) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            boolean valid = channel.size() >= HEADER_SIZE;
+            MappedByteBuffer header = map(channel, 0, HEADER_SIZE);
+            if (!valid || header.getInt(MAGIC_OFFSET) != magic || header.getInt(VERSION_OFFSET) != VERSION
+                    || header.getInt(RECORD_SIZE_OFFSET) != recordSize || header.getInt(COUNT_OFFSET) < 0) {
+                channel.truncate(HEADER_SIZE);
+                for (int i = 0; i < HEADER_SIZE; i++) {
+                    header.put(i, (byte) 0);
+                }
+                header.putInt(MAGIC_OFFSET, magic);
+                header.putInt(VERSION_OFFSET, VERSION);
+                header.putInt(RECORD_SIZE_OFFSET, recordSize);
+            }
+            return new MappedRecordFile(file, recordSize, header);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open " + file, e);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * @return The number of committed records.
+     */
+    public int count() {
+        return header.getInt(COUNT_OFFSET);
+    }
+
+    /**
+     * Returns the index of the next record, mapping more of the file if needed. The record is not
+     * part of the file until it is committed.
+     *
+     * @return The index of the new record.
+     */
+    public synchronized int allocate() {
+        int index = count();
+        int region = index >>> REGION_BITS;
+        if (region == regions.length) {
+            regions = mapRegions(region + 1);
+        }
+        return index;
+    }
+
+    /**
+     * Makes every record before the given count part of the file.
+     *
+     * @param count The new number of records.
+     */
+    public synchronized void commit(int count) {
+        header.putInt(COUNT_OFFSET, count);
+    }
+
+    /**
+     * Removes a committed record, moving the records after it one place forward so their order is kept.
+     *
+     * @param index The record to remove.
+     */
+    public synchronized void remove(int index) {
+        int count = count();
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        byte[] record = new byte[recordSize];
+        for (int i = index + 1; i < count; i++) {
+            region(i).get(offset(i, 0), record, 0, recordSize);
+            region(i - 1).put(offset(i - 1, 0), record, 0, recordSize);
+        }
+        commit(count - 1);
+    }
+
+    /**
+     * Drops every record, leaving an empty file.
+     */
+    public synchronized void clear() {
+        header.putInt(COUNT_OFFSET, 0);
+        header.putLong(SOURCE_LENGTH_OFFSET, 0);
+        header.putLong(SOURCE_MODIFIED_OFFSET, 0);
+        header.putInt(DICTIONARY_SIZE_OFFSET, 0);
+    }
+
+    /**
+     * Maps the regions holding the committed records, so they can be read after opening the file.
+     */
+    public synchronized void mapCommitted() {
+        int needed = (count() + REGION_MASK) >>> REGION_BITS;
+        if (needed > regions.length) {
+            regions = mapRegions(needed);
+        }
+    }
+
+    private MappedByteBuffer[] mapRegions(int needed) {
+        long regionBytes = (long) recordSize << REGION_BITS;
+        MappedByteBuffer[] grown = Arrays.copyOf(regions, needed);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            for (int region = regions.length; region < needed; region++) {
+                grown[region] = map(channel, HEADER_SIZE + region * regionBytes, regionBytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map " + file, e);
+        }
+        return grown;
+    }
+
+    /**
+     * Records the source file the records now match, together with the size of their dictionary.
+     *
+     * @param source The CSV file the records were built from or saved to.
+     * @param dictionarySize The number of entries of the dictionary the records refer to.
+     */
+    public synchronized void stamp(File source, int dictionarySize) {
+        header.putLong(SOURCE_LENGTH_OFFSET, source.length());
+        header.putLong(SOURCE_MODIFIED_OFFSET, source.lastModified());
+        header.putInt(DICTIONARY_SIZE_OFFSET, dictionarySize);
+    }
+
+    /**
+     * Checks whether the records still match their source file: the file has not been changed since
+     * the last {@link #stamp}, and the dictionary still holds every entry it had then.
+     *
+     * @param source The CSV file the records were built from.
+     * @param dictionarySize The number of entries of the dictionary.
+     * @return true if the records can be used instead of reading the source file.
+     */
+    public boolean matches(File source, int dictionarySize) {
+        long modified = header.getLong(SOURCE_MODIFIED_OFFSET);
+        return modified != 0 && source.isFile()
+                && source.length() == header.getLong(SOURCE_LENGTH_OFFSET)
+                && source.lastModified() == modified
+                && dictionarySize >= header.getInt(DICTIONARY_SIZE_OFFSET);
+    }
+
+    /**
+     * Writes changed records to the storage device.
+     */
+    public void force() {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+        header.force();
+    }
+
+    private MappedByteBuffer region(int index) {
+        return regions[index >>> REGION_BITS];
+    }
+
+    private int offset(int index, int field) {
+        return (index & REGION_MASK) * recordSize + field;
+    }
+
+    // Field accessors: index is the record and field the byte offset of the field inside the record.
+
+    public int getInt(int index, int field) {
+        return region(index).getInt(offset(index, field));
+    }
+
+    public void putInt(int index, int field, int value) {
+        region(index).putInt(offset(index, field), value);
+    }
+
+    public long getLong(int index, int field) {
+        return region(index).getLong(offset(index, field));
+    }
+
+    public void putLong(int index, int field, long value) {
+        region(index).putLong(offset(index, field), value);
+    }
+
+    public double getDouble(int index, int field) {
+        return region(index).getDouble(offset(index, field));
+    }
+
+    public void putDouble(int index, int field, double value) {
+        region(index).putDouble(offset(index, field), value);
+    }
+
+    public byte getByte(int index, int field) {
+        return region(index).get(offset(index, field));
+    }
+
+    public void putByte(int index, int field, byte value) {
+        region(index).put(offset(index, field), value);
+    }
+
+    /**
+     * Copies bytes out of a record.
+     */
+    public void getBytes(int index, int field, byte[] target, int length) {
+        region(index).get(offset(index, field), target, 0, length);
+    }
+
+    /**
+     * Copies bytes into a record.
+     */
+    public void putBytes(int index, int field, byte[] source, int length) {
+        region(index).put(offset(index, field), source, 0, length);
+    }
+}
@@ -0,0 +1,671 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A {@link TicketLedger} whose tickets live in fixed-width records of a memory-mapped file next to the
+ * ticket CSV file, so millions of tickets add almost nothing to the Java heap. Car IDs, years, prices,
+ * unique IDs and charged amounts are stored as numbers and the other columns as codes of a {@link MappedDictionary}.
+ * A value that would not be written back exactly the same, such as a car ID with leading zeros, is
+ * stored as text in the dictionary instead.
+ * <p>
+ * Every record also holds the place of its line in the CSV file. Deleting a ticket overwrites its line
+ * with spaces, which every reader of the file skips, and marks its record as deleted, so a return
+ * writes one line instead of the whole file and the ledger keeps matching the file. A hash table in
+ * {@code <csv>.keys}, chained through the records, finds the tickets of a car and a username without
+ * reading the others.
+ * <p>
+ * The ledger is rebuilt from the CSV file only when the file was changed by something other than the
+ * ledger; otherwise opening it is immediate.
+ */
+public final class MappedTicketLedger extends TicketLedger {
+
+    private static final int MAGIC = 0x544B5453; // "TKTS"
+
+    private static final int CAR_ID = 0;
+    private static final int USERNAME = 4;
+    private static final int TYPE = 8;
+    private static final int MODEL = 12;
+    private static final int YEAR = 16;
+    private static final int COLOR = 20;
+    private static final int PRICE = 24;
+    private static final int UNIQUE_HIGH = 32;
+    private static final int UNIQUE_LOW = 40;
+    private static final int PRICE_TEXT = 48;
+    private static final int EXTRA = 52;
+    private static final int FLAGS = 56;
+    private static final int COLUMNS = 57;
+    private static final int KEY = 60;
+    private static final int NEXT = 64;
+    private static final int LINE_LENGTH = 68;
+    private static final int LINE_OFFSET = 72;
+    private static final int CHARGED = 80;
+    private static final int RECORD_SIZE = 88;
+
+    /**
+     * The number of columns of a ticket with a record field of its own. Further columns are kept
+     * together as one dictionary entry.
+     */
+    private static final int RECORD_COLUMNS = 9;
+
+    private static final byte CAR_ID_TEXT = 1;
+    private static final byte YEAR_TEXT = 2;
+    private static final byte PRICE_AS_TEXT = 4;
+    private static final byte UNIQUE_TEXT = 8;
+    private static final byte DELETED = 16;
+    private static final byte CHARGED_TEXT = 32;
+
+    private static final int KEYS_MAGIC = 0x544B4559; // "TKEY"
+
+    /**
+     * The records of the key table holding the number of ticket records it covers and the number of
+     * those that are deleted. The slots follow; a slot holds the first record of its chain plus one.
+     */
+    private static final int COVERED = 0;
+    private static final int DELETED_COUNT = 1;
+    private static final int FIRST_SLOT = 2;
+    private static final int MIN_SLOTS = 1024;
+
+    /**
+     * The charset the ticket CSV file is written and read in by {@link CSVManager}.
+     */
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final int LINE_SEPARATOR_LENGTH = System.lineSeparator().getBytes(CHARSET).length;
+
+    private final File source;
+    private final MappedRecordFile records;
+    private final MappedRecordFile keys;
+    private int slotMask;
+    private final MappedDictionary dictionary;
+    private final MappedDictionary.Section types;
+    private final MappedDictionary.Section models;
+    private final MappedDictionary.Section colors;
+    private final MappedDictionary.Section usernames;
+    private final MappedDictionary.Section texts;
+
+    private MappedTicketLedger(File source, MappedRecordFile records, MappedRecordFile keys, MappedDictionary dictionary) {
+        this.source = source;
+        this.records = records;
+        this.keys = keys;
+        this.dictionary = dictionary;
+        this.types = dictionary.section(0);
+        this.models = dictionary.section(1);
+        this.colors = dictionary.section(2);
+        this.usernames = dictionary.section(3);
+        this.texts = dictionary.section(4);
+    }
+
+    /**
+     * Opens the mapped ledger of a ticket CSV file, kept in the files {@code <csv>.rows},
+     * {@code <csv>.keys} and {@code <csv>.dict}. The ledger is rebuilt from the CSV file if the file
+     * changed since it was last written through the ledger.
+     *
+     * @param csvFilePath The path of the ticket CSV file.
+     * @return The opened ledger.
+     * @throws java.io.UncheckedIOException If the ledger files cannot be opened.
+     */
+    public static MappedTicketLedger open(String csvFilePath) {
+        File source = new File(csvFilePath);
+        MappedTicketLedger ledger = new MappedTicketLedger(source,
+                MappedRecordFile.open(new File(csvFilePath + ".rows"), MAGIC, RECORD_SIZE),
+                MappedRecordFile.open(new File(csvFilePath + ".keys"), KEYS_MAGIC, Integer.BYTES),
+                MappedDictionary.open(new File(csvFilePath + ".dict"), SymbolTable.TYPES, SymbolTable.MODELS,
+                        SymbolTable.COLORS, null, null));
+        ledger.records.mapCommitted();
+        ledger.keys.mapCommitted();
+        if (!ledger.records.matches(source, ledger.dictionary.size())) {
+            ledger.rebuild();
+        } else if (!ledger.keysMatch()) {
+            ledger.reindex(); // The key table was not written up to the last ticket
+        }
+        return ledger;
+    }
+
+    /**
+     * Reads every ticket of the CSV file into empty records, one line at a time, noting where each
+     * line starts. Blank lines, such as those of deleted tickets, are skipped.
+     */
+    private synchronized void rebuild() {
+        records.clear();
+        dictionary.clear();
+        resetKeys((int) Math.min(source.length() / 64, Integer.MAX_VALUE / 4));
+        try (InputStream in = new FileInputStream(source)) {
+            byte[] buffer = new byte[64 * 1024];
+            byte[] line = new byte[256];
+            int length = 0;
+            long lineStart = 0;
+            long position = 0;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++, position++) {
+                    if (buffer[i] == '\n') {
+                        appendLine(line, length, lineStart);
+                        length = 0;
+                        lineStart = position + 1;
+                    } else {
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = buffer[i];
+                    }
+                }
+            }
+            if (length > 0) {
+                appendLine(line, length, lineStart);
+            }
+        } catch (FileNotFoundException e) {
+            System.out.println("The file was not found: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the file: " + e.getMessage());
+        }
+        saved();
+    }
+
+    private void appendLine(byte[] line, int length, long offset) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        String text = new String(line, 0, length, CHARSET);
+        if (!text.isBlank()) {
+            append(text.split(","), offset, length);
+        }
+    }
+
+    /**
+     * Adds a ticket row. The row must already be appended to the ticket CSV file, so the ledger
+     * keeps matching the file.
+     *
+     * @param ticket The ticket row in the ticket CSV layout.
+     */
+    @Override
+    public synchronized void add(String[] ticket) {
+        addAll(Collections.singletonList(ticket));
+    }
+
+    /**
+     * Adds several ticket rows that were just appended to the ticket CSV file by
+     * {@link CSVManager#writeToCSV}, so they are the last lines of the file.
+     *
+     * @param tickets The ticket rows in the ticket CSV layout.
+     */
+    @Override
+    public synchronized void addAll(List<String[]> tickets) {
+        int[] lengths = new int[tickets.size()];
+        long offset = source.length();
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = String.join(",", tickets.get(i)).getBytes(CHARSET).length;
+            offset -= lengths[i] + LINE_SEPARATOR_LENGTH;
+        }
+        for (int i = 0; i < lengths.length; i++) {
+            append(tickets.get(i), offset, lengths[i]);
+            offset += lengths[i] + LINE_SEPARATOR_LENGTH;
+        }
+        saved();
+    }
+
+    /**
+     * Deletes the first ticket of a car and a username: its line in the CSV file is overwritten with
+     * spaces and its record is marked as deleted. Only when the line is not where the ledger expects
+     * it is the whole file rewritten and read again.
+     *
+     * @param filePath The path of the ticket CSV file, the one this ledger was opened for.
+     * @param carId The ID of the car.
+     * @param username The username of the ticket holder, compared ignoring case.
+     * @return The row of the deleted ticket, or null if no ticket was deleted.
+     * @throws IOException If the ticket file could not be written.
+     */
+    @Override
+    public synchronized String[] deleteTicket(String filePath, int carId, String username) throws IOException {
+        ShopEvents.TicketDelete event = new ShopEvents.TicketDelete();
+        event.begin();
+        int[] found = find(carId, username);
+        if (found != null && !blankLine(found[0])) {
+            return super.deleteTicket(filePath, carId, username);
+        }
+        String[] deleted = null;
+        if (found == null) {
+            System.out.println("No ticket found with ID: " + carId + " and username: " + username + ".");
+        } else {
+            deleted = get(found[0], records.getByte(found[0], COLUMNS));
+            delete(found[0], found[1]);
+            saved();
+            System.out.println("Ticket with ID: " + carId + " and username: " + username + " deleted successfully.");
+        }
+        if (event.shouldCommit()) {
+            event.file = filePath;
+            event.username = username;
+            event.carId = carId;
+            event.deleted = found != null;
+            event.rowsRead = found == null ? 0 : 1;
+            event.bytes = found == null ? 0 : records.getInt(found[0], LINE_LENGTH);
+            event.commit();
+        }
+        return deleted;
+    }
+
+    /**
+     * Removes the first ticket of a car and a username that was already deleted from the ticket CSV
+     * file by rewriting it. The lines after it have moved, so the ledger is read from the file again.
+     *
+     * @param carId The ID of the car.
+     * @param username The username of the ticket holder, compared ignoring case.
+     * @return true if a ticket was removed.
+     */
+    @Override
+    public synchronized boolean remove(int carId, String username) {
+        boolean found = find(carId, username) != null;
+        rebuild();
+        return found;
+    }
+
+    /**
+     * Finds the first live ticket of a car and a username.
+     *
+     * @return The record of the ticket and the record before it in its chain (-1 if it is the first),
+     *         or null if there is no such ticket.
+     */
+    private int[] find(int carId, String username) {
+        String idString = String.valueOf(carId);
+        int key = key(idString, username);
+        int found = -1;
+        int foundPrevious = -1;
+        int previous = -1;
+        // Chains hold the newest ticket first, so the last match is the first ticket of the file
+        for (int i = keys.getInt(slot(key), 0) - 1; i >= 0; previous = i, i = records.getInt(i, NEXT) - 1) {
+            if (records.getInt(i, KEY) == key && matches(i, carId, idString, username)) {
+                found = i;
+                foundPrevious = previous;
+            }
+        }
+        return found < 0 ? null : new int[]{found, foundPrevious};
+    }
+
+    private boolean matches(int index, int carId, String idString, String username) {
+        if (records.getByte(index, COLUMNS) <= 1) {
+            return false;
+        }
+        boolean idMatches = (records.getByte(index, FLAGS) & CAR_ID_TEXT) != 0
+                ? texts.get(records.getInt(index, CAR_ID)).trim().equals(idString)
+                : records.getInt(index, CAR_ID) == carId;
+        return idMatches && usernames.get(records.getInt(index, USERNAME)).trim().equalsIgnoreCase(username);
+    }
+
+    /**
+     * Overwrites the line of a ticket in the CSV file with spaces, after checking that the line is
+     * still where the record says and still holds the ticket.
+     *
+     * @return false if the file does not hold the line there; the file is then left as it is.
+     */
+    private boolean blankLine(int index) throws IOException {
+        long offset = records.getLong(index, LINE_OFFSET);
+        int length = records.getInt(index, LINE_LENGTH);
+        String[] ticket = get(index, records.getByte(index, COLUMNS));
+        try (RandomAccessFile raf = new RandomAccessFile(source, "rw")) {
+            long end = offset + length;
+            if (offset < 0 || length <= 0 || end > raf.length()) {
+                return false;
+            }
+            if (offset > 0) {
+                raf.seek(offset - 1);
+                if (raf.read() != '\n') {
+                    return false;
+                }
+            }
+            byte[] line = new byte[length];
+            raf.seek(offset);
+            raf.readFully(line);
+            int next = raf.read();
+            if (next != -1 && next != '\n' && next != '\r') {
+                return false;
+            }
+            String[] cells = new String(line, CHARSET).split(",");
+            if (cells.length < 2 || !cells[0].trim().equals(ticket[0].trim()) || !cells[1].trim().equals(ticket[1].trim())) {
+                return false;
+            }
+            Arrays.fill(line, (byte) ' ');
+            raf.seek(offset);
+            raf.write(line);
+        }
+        return true;
+    }
+
+    /**
+     * Marks a ticket as deleted and takes it out of its chain.
+     */
+    private void delete(int index, int previous) {
+        records.putByte(index, FLAGS, (byte) (records.getByte(index, FLAGS) | DELETED));
+        int next = records.getInt(index, NEXT);
+        if (previous < 0) {
+            keys.putInt(slot(records.getInt(index, KEY)), 0, next);
+        } else {
+            records.putInt(previous, NEXT, next);
+        }
+        keys.putInt(DELETED_COUNT, 0, keys.getInt(DELETED_COUNT, 0) + 1);
+    }
+
+    private static boolean isDeleted(byte flags) {
+        return (flags & DELETED) != 0;
+    }
+
+    /**
+     * Records that the records and the key table match the CSV file again.
+     */
+    private void saved() {
+        keys.putInt(COVERED, 0, records.count());
+        records.stamp(source, dictionary.size());
+    }
+
+    private boolean keysMatch() {
+        int slots = keys.count() - FIRST_SLOT;
+        if (slots < MIN_SLOTS || Integer.bitCount(slots) != 1 || keys.getInt(COVERED, 0) != records.count()) {
+            return false;
+        }
+        slotMask = slots - 1;
+        return true;
+    }
+
+    /**
+     * Empties the key table, sizing it for the given number of tickets.
+     */
+    private void resetKeys(int expectedTickets) {
+        int slots = MIN_SLOTS;
+        while (slots < expectedTickets && slots < (1 << 30)) {
+            slots <<= 1;
+        }
+        keys.clear();
+        for (int i = 0; i < FIRST_SLOT + slots; i++) {
+            keys.allocate();
+            keys.putInt(i, 0, 0);
+            keys.commit(i + 1);
+        }
+        slotMask = slots - 1;
+    }
+
+    /**
+     * Builds the key table again from the keys kept in the records, with room for twice as many tickets.
+     */
+    private void reindex() {
+        int count = records.count();
+        resetKeys(count * 2);
+        int deleted = 0;
+        for (int i = 0; i < count; i++) {
+            if (isDeleted(records.getByte(i, FLAGS))) {
+                deleted++;
+            } else if (records.getByte(i, COLUMNS) > 1) {
+                link(i, records.getInt(i, KEY));
+            }
+        }
+        keys.putInt(DELETED_COUNT, 0, deleted);
+        keys.putInt(COVERED, 0, count);
+    }
+
+    private void link(int index, int key) {
+        int slot = slot(key);
+        records.putInt(index, NEXT, keys.getInt(slot, 0));
+        keys.putInt(slot, 0, index + 1);
+    }
+
+    private int slot(int key) {
+        return FIRST_SLOT + (key & slotMask);
+    }
+
+    /**
+     * Hashes a car ID and a username the way tickets are matched: the ID as text, the username
+     * ignoring case.
+     */
+    private static int key(String carId, String username) {
+        int hash = carId.trim().hashCode();
+        String name = username.trim();
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private void append(String[] ticket, long lineOffset, int lineLength) {
+        int index = records.allocate();
+        byte flags = 0;
+        for (int column = 0; column < Math.min(ticket.length, RECORD_COLUMNS); column++) {
+            String value = ticket[column];
+            switch (column) {
+                case 0:
+                    if (isPlainInt(value)) {
+                        records.putInt(index, CAR_ID, Integer.parseInt(value));
+                    } else {
+                        records.putInt(index, CAR_ID, texts.code(value));
+                        flags |= CAR_ID_TEXT;
+                    }
+                    break;
+                case 1:
+                    records.putInt(index, USERNAME, usernames.code(value));
+                    break;
+                case 2:
+                    records.putInt(index, TYPE, types.code(value));
+                    break;
+                case 3:
+                    records.putInt(index, MODEL, models.code(value));
+                    break;
+                case 4:
+                    if (isPlainInt(value)) {
+                        records.putInt(index, YEAR, Integer.parseInt(value));
+                    } else {
+                        records.putInt(index, YEAR, texts.code(value));
+                        flags |= YEAR_TEXT;
+                    }
+                    break;
+                case 5:
+                    records.putInt(index, COLOR, colors.code(value));
+                    break;
+                case 6:
+                    double price = parsePrice(value);
+                    records.putDouble(index, PRICE, price);
+                    if (!String.valueOf((float) price).equals(value)) {
+                        records.putInt(index, PRICE_TEXT, texts.code(value));
+                        flags |= PRICE_AS_TEXT;
+                    }
+                    break;
+                case 8:
+                    if (isPlainFloat(value)) {
+                        records.putInt(index, CHARGED, Float.floatToRawIntBits(Float.parseFloat(value)));
+                    } else {
+                        records.putInt(index, CHARGED, texts.code(value));
+                        flags |= CHARGED_TEXT;
+                    }
+                    break;
+                default:
+                    UUID uniqueID = parseUUID(value);
+                    if (uniqueID != null) {
+                        records.putLong(index, UNIQUE_HIGH, uniqueID.getMostSignificantBits());
+                        records.putLong(index, UNIQUE_LOW, uniqueID.getLeastSignificantBits());
+                    } else {
+                        records.putLong(index, UNIQUE_HIGH, texts.code(value));
+                        flags |= UNIQUE_TEXT;
+                    }
+                    break;
+            }
+        }
+        if (ticket.length <= 6) {
+            records.putDouble(index, PRICE, 0.0);
+        }
+        if (ticket.length > RECORD_COLUMNS) {
+            records.putInt(index, EXTRA, texts.code(String.join(",", Arrays.copyOfRange(ticket, RECORD_COLUMNS, ticket.length))));
+        }
+        records.putByte(index, FLAGS, flags);
+        records.putByte(index, COLUMNS, (byte) Math.min(ticket.length, 127));
+        records.putLong(index, LINE_OFFSET, lineOffset);
+        records.putInt(index, LINE_LENGTH, lineLength);
+        records.putInt(index, NEXT, 0);
+        if (ticket.length > 1) {
+            int key = key(ticket[0], ticket[1]);
+            records.putInt(index, KEY, key);
+            link(index, key);
+        }
+        records.commit(index + 1);
+        if (index + 1 > 2L * (slotMask + 1)) {
+            reindex();
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return records.count() - keys.getInt(DELETED_COUNT, 0);
+    }
+
+    @Override
+    public synchronized String[] get(int index) {
+        int live = size();
+        if (index < 0 || index >= live) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + live);
+        }
+        int record = index;
+        if (live < records.count()) { // Skip the deleted tickets before it
+            record = -1;
+            for (int seen = -1; seen < index; ) {
+                if (!isDeleted(records.getByte(++record, FLAGS))) {
+                    seen++;
+                }
+            }
+        }
+        return get(record, records.getByte(record, COLUMNS));
+    }
+
+    private String[] get(int index, int columns) {
+        byte flags = records.getByte(index, FLAGS);
+        String[] ticket = new String[columns];
+        for (int column = 0; column < Math.min(columns, RECORD_COLUMNS); column++) {
+            switch (column) {
+                case 0:
+                    ticket[0] = text(index, CAR_ID, flags, CAR_ID_TEXT);
+                    break;
+                case 1:
+                    ticket[1] = usernames.get(records.getInt(index, USERNAME));
+                    break;
+                case 2:
+                    ticket[2] = types.get(records.getInt(index, TYPE));
+                    break;
+                case 3:
+                    ticket[3] = models.get(records.getInt(index, MODEL));
+                    break;
+                case 4:
+                    ticket[4] = text(index, YEAR, flags, YEAR_TEXT);
+                    break;
+                case 5:
+                    ticket[5] = colors.get(records.getInt(index, COLOR));
+                    break;
+                case 6:
+                    ticket[6] = (flags & PRICE_AS_TEXT) != 0 ? texts.get(records.getInt(index, PRICE_TEXT))
+                            : String.valueOf((float) records.getDouble(index, PRICE));
+                    break;
+                case 8:
+                    ticket[8] = (flags & CHARGED_TEXT) != 0 ? texts.get(records.getInt(index, CHARGED))
+                            : String.valueOf(Float.intBitsToFloat(records.getInt(index, CHARGED)));
+                    break;
+                default:
+                    ticket[7] = (flags & UNIQUE_TEXT) != 0 ? texts.get((int) records.getLong(index, UNIQUE_HIGH))
+                            : new UUID(records.getLong(index, UNIQUE_HIGH), records.getLong(index, UNIQUE_LOW)).toString();
+                    break;
+            }
+        }
+        if (columns > RECORD_COLUMNS) {
+            String[] extra = texts.get(records.getInt(index, EXTRA)).split(",", -1);
+            System.arraycopy(extra, 0, ticket, RECORD_COLUMNS, Math.min(extra.length, columns - RECORD_COLUMNS));
+        }
+        return ticket;
+    }
+
+    @Override
+    public synchronized double revenueByType(String type) {
+        int code = SymbolTable.TYPES.lookupFolded(type);
+        if (code == SymbolTable.NO_CODE) {
+            return 0.0;
+        }
+        double totalRevenue = 0.0;
+        int count = records.count();
+        for (int i = 0; i < count; i++) {
+            if (records.getByte(i, COLUMNS) > 2 && !isDeleted(records.getByte(i, FLAGS))
+                    && SymbolTable.TYPES.foldedCode(types.toSymbol(records.getInt(i, TYPE))) == code) {
+                totalRevenue += records.getDouble(i, PRICE);
+            }
+        }
+        return totalRevenue;
+    }
+
+    @Override
+    public synchronized double revenueById(String id) {
+        boolean plain = isPlainInt(id);
+        int carId = plain ? Integer.parseInt(id) : 0;
+        double totalRevenue = 0.0;
+        int count = records.count();
+        for (int i = 0; i < count; i++) {
+            if (records.getByte(i, COLUMNS) <= 6 || isDeleted(records.getByte(i, FLAGS))) {
+                continue;
+            }
+            boolean matches = (records.getByte(i, FLAGS) & CAR_ID_TEXT) != 0
+                    ? texts.get(records.getInt(i, CAR_ID)).equals(id)
+                    : plain && records.getInt(i, CAR_ID) == carId;
+            if (matches) {
+                totalRevenue += records.getDouble(i, PRICE);
+            }
+        }
+        return totalRevenue;
+    }
+
+    private String text(int index, int field, byte flags, byte textFlag) {
+        int value = records.getInt(index, field);
+        return (flags & textFlag) != 0 ? texts.get(value) : Integer.toString(value);
+    }
+
+    /**
+     * Checks whether a value is an int written exactly as {@link Integer#toString(int)} writes it.
+     */
+    private static boolean isPlainInt(String value) {
+        try {
+            return Integer.toString(Integer.parseInt(value)).equals(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether a value is a float written exactly as {@link String#valueOf(float)} writes it.
+     */
+    private static boolean isPlainFloat(String value) {
+        try {
+            return String.valueOf(Float.parseFloat(value)).equals(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a UUID written exactly as {@link UUID#toString()} writes it, or returns null.
+     */
+    private static UUID parseUUID(String value) {
+        try {
+            UUID uuid = UUID.fromString(value);
+            return uuid.toString().equals(value) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the price column of a ticket row. Tickets without a valid price count as 0.
+     */
+    private static double parsePrice(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.out.println("Error parsing ticket price: " + e.getMessage());
+            return 0.0;
+        }
+    }
+}
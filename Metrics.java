@@ -0,0 +1,315 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the latency histograms and counters of the shop and publishes them as JMX MBeans under
+ * {@code carshop:type=Latency} and {@code carshop:type=Counter}, for jconsole or any other JMX client,
+ * and optionally as a text file rewritten at a fixed interval.
+ * <p>
+ * Every interval (10 seconds, or {@code -Dcarshop.metricsInterval} seconds) the registry compares the
+ * histograms with the previous interval, so the operations per second and the percentiles the MBeans
+ * and the file show describe the last interval rather than everything since startup. The count, mean
+ * and maximum cover everything since startup.
+ */
+public final class Metrics {
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+
+    private static final long INTERVAL_SECONDS = configuredInterval();
+
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile File snapshotFile;
+
+    static {
+        TICKER.scheduleAtFixedRate(Metrics::tick, INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * The view of a latency histogram through JMX. Durations are in microseconds.
+     */
+    public interface LatencyMXBean {
+        long getCount();
+
+        double getOpsPerSecond();
+
+        double getMeanMicros();
+
+        double getP50Micros();
+
+        double getP99Micros();
+
+        double getP999Micros();
+
+        double getIntervalMaxMicros();
+
+        double getMaxMicros();
+    }
+
+    /**
+     * The view of a counter through JMX.
+     */
+    public interface CounterMXBean {
+        long getCount();
+
+        double getPerSecond();
+    }
+
+    /**
+     * A histogram and the figures of its last interval.
+     */
+    private static final class Timer implements LatencyMXBean {
+        private final LatencyHistogram histogram;
+        private long[] previous = new long[LatencyHistogram.BUCKETS];
+        private long previousNanos = System.nanoTime();
+        private volatile double opsPerSecond;
+        private volatile long p50;
+        private volatile long p99;
+        private volatile long p999;
+        private volatile long intervalMax;
+
+        private Timer(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        private synchronized void tick(long now) {
+            long[] current = histogram.snapshot();
+            long[] interval = new long[current.length];
+            long operations = 0;
+            int highest = -1;
+            for (int i = 0; i < current.length; i++) {
+                interval[i] = current[i] - previous[i];
+                operations += interval[i];
+                if (interval[i] > 0) {
+                    highest = i;
+                }
+            }
+            opsPerSecond = operations * 1e9 / Math.max(1, now - previousNanos);
+            p50 = LatencyHistogram.percentile(interval, 50);
+            p99 = LatencyHistogram.percentile(interval, 99);
+            p999 = LatencyHistogram.percentile(interval, 99.9);
+            intervalMax = highest < 0 ? 0 : LatencyHistogram.highestValueOf(highest);
+            SlowOperationLog.adjust(histogram, current);
+            previous = current;
+            previousNanos = now;
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public double getOpsPerSecond() {
+            return opsPerSecond;
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return histogram.getMeanNanos() / 1e3;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return p50 / 1e3;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return p99 / 1e3;
+        }
+
+        @Override
+        public double getP999Micros() {
+            return p999 / 1e3;
+        }
+
+        @Override
+        public double getIntervalMaxMicros() {
+            return intervalMax / 1e3;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return histogram.getMaxNanos() / 1e3;
+        }
+    }
+
+    /**
+     * A counter and its rate over the last interval.
+     */
+    private static final class Counter implements CounterMXBean {
+        private final LongAdder adder = new LongAdder();
+        private long previous;
+        private long previousNanos = System.nanoTime();
+        private volatile double perSecond;
+
+        private synchronized void tick(long now) {
+            long current = adder.sum();
+            perSecond = (current - previous) * 1e9 / Math.max(1, now - previousNanos);
+            previous = current;
+            previousNanos = now;
+        }
+
+        @Override
+        public long getCount() {
+            return adder.sum();
+        }
+
+        @Override
+        public double getPerSecond() {
+            return perSecond;
+        }
+    }
+
+    /**
+     * Returns the histogram of an operation, creating and registering it the first time.
+     *
+     * @param name The name of the operation, such as {@code purchaseCar}.
+     * @return The histogram to record the operation's durations in.
+     */
+    public static LatencyHistogram timer(String name) {
+        Timer timer = TIMERS.get(name);
+        if (timer == null) {
+            synchronized (Metrics.class) {
+                timer = TIMERS.get(name);
+                if (timer == null) {
+                    Timer created = new Timer(new LatencyHistogram(name));
+                    timer = created;
+                    TICKER.execute(() -> register("Latency", name, created)); // Off the caller, JMX starts slowly
+                    TIMERS.put(name, timer);
+                }
+            }
+        }
+        return timer.histogram;
+    }
+
+    /**
+     * Returns a counter, creating and registering it the first time.
+     *
+     * @param name The name of the counter, such as {@code csv.rowsRead}.
+     * @return The counter to add to.
+     */
+    public static LongAdder counter(String name) {
+        Counter counter = COUNTERS.get(name);
+        if (counter == null) {
+            synchronized (Metrics.class) {
+                counter = COUNTERS.get(name);
+                if (counter == null) {
+                    Counter created = new Counter();
+                    counter = created;
+                    TICKER.execute(() -> register("Counter", name, created));
+                    COUNTERS.put(name, counter);
+                }
+            }
+        }
+        return counter.adder;
+    }
+
+    private static void register(String type, String name, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("carshop:type=" + type + ",name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(bean, objectName);
+            }
+        } catch (JMException | SecurityException e) {
+            System.out.println("Could not register the metric " + name + " with JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites a text file with the figures of every metric after each interval. The file is
+     * replaced in one step, so a reader never sees half of it.
+     *
+     * @param filePath The path of the snapshot file, or null or empty to stop writing it.
+     */
+    public static void writeSnapshots(String filePath) {
+        snapshotFile = filePath == null || filePath.isEmpty() ? null : new File(filePath);
+    }
+
+    /**
+     * Computes the figures of the last interval and writes the snapshot file, if there is one.
+     */
+    private static void tick() {
+        try {
+            long now = System.nanoTime();
+            for (Timer timer : TIMERS.values()) {
+                timer.tick(now);
+            }
+            for (Counter counter : COUNTERS.values()) {
+                counter.tick(now);
+            }
+            SlowOperationLog.newInterval();
+            File file = snapshotFile;
+            if (file != null) {
+                writeSnapshot(file);
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Error updating the metrics: " + e.getMessage()); // Keep the ticker running
+        }
+    }
+
+    private static void writeSnapshot(File file) {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (PrintWriter out = new PrintWriter(temporary)) {
+            out.printf("# %s, last %d s, durations in microseconds%n",
+                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss MM/dd/yy")), INTERVAL_SECONDS);
+            out.printf("%-22s %12s %10s %10s %10s %10s %10s %12s%n",
+                    "latency", "count", "ops/s", "p50", "p99", "p999", "max", "max ever");
+            for (Map.Entry<String, Timer> entry : TIMERS.entrySet()) {
+                Timer timer = entry.getValue();
+                out.printf("%-22s %12d %10.1f %10.1f %10.1f %10.1f %10.1f %12.1f%n", entry.getKey(), timer.getCount(),
+                        timer.getOpsPerSecond(), timer.getP50Micros(), timer.getP99Micros(), timer.getP999Micros(),
+                        timer.getIntervalMaxMicros(), timer.getMaxMicros());
+            }
+            out.printf("%-22s %12s %10s%n", "counter", "count", "per s");
+            for (Map.Entry<String, Counter> entry : COUNTERS.entrySet()) {
+                out.printf("%-22s %12d %10.1f%n", entry.getKey(), entry.getValue().getCount(), entry.getValue().getPerSecond());
+            }
+        } catch (IOException e) {
+            System.out.println("Could not write the metrics snapshot: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Could not write the metrics snapshot: " + e.getMessage());
+        }
+    }
+
+    private static long configuredInterval() {
+        String configured = System.getProperty("carshop.metricsInterval");
+        if (configured != null) {
+            try {
+                return Math.max(1, Long.parseLong(configured.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("Unknown metrics interval " + configured + ", using 10 seconds.");
+            }
+        }
+        return 10;
+    }
+}
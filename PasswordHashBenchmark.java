@@ -0,0 +1,73 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many logins per second the password checks allow at a chosen cost factor: full
+ * checks through the {@link PasswordVerifier} pool, and repeated logins answered by the
+ * {@link SessionCache}.
+ * <p>
+ * Usage: {@code java PasswordHashBenchmark [iterations] [verifier threads] [callers] [seconds]}, by
+ * default the configured iteration count, the configured pool size, 4 callers and 5 seconds.
+ */
+public class PasswordHashBenchmark {
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The iteration count, verifier threads, calling threads and seconds per measurement.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0) {
+            // Hashes with the chosen cost must not count as too cheap and be hashed again
+            System.setProperty("carshop.passwordIterations", args[0]);
+        }
+        int iterations = PasswordHasher.getIterations();
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : PasswordVerifier.configured().getThreads();
+        int callers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 5;
+
+        String password = "correct horse battery staple";
+        String stored = PasswordHasher.hash(password, iterations);
+        PasswordVerifier verifier = new PasswordVerifier(threads, callers, 60_000);
+        SessionCache sessions = new SessionCache(1024, 60_000);
+        sessions.open("benchmark", password, stored);
+
+        System.out.printf("PBKDF2-HMAC-SHA256, %,d iterations, %d verifier threads, %d callers, %d processors%n",
+                iterations, threads, callers, Runtime.getRuntime().availableProcessors());
+        measure("warm-up", callers, seconds / 2, () -> verifier.verify(password, stored) != null);
+        measure("full check", callers, seconds, () -> verifier.verify(password, stored) != null);
+        measure("session cache", callers, seconds, () -> sessions.verify("benchmark", password, stored));
+    }
+
+    /**
+     * Calls a login from several threads for a fixed time and prints the logins per second.
+     */
+    private static void measure(String name, int callers, double seconds, LoginCheck login) throws InterruptedException {
+        AtomicLong logins = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        CountDownLatch done = new CountDownLatch(callers);
+        long start = System.nanoTime();
+        for (int i = 0; i < callers; i++) {
+            Thread caller = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    if (login.check()) {
+                        logins.incrementAndGet();
+                    } else {
+                        failures.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+            caller.start();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-14s %,12.1f logins/s  (%,d logins, %,d failed, %,.1f us each)%n", name,
+                logins.get() / elapsed, logins.get(), failures.get(), elapsed * 1e6 * callers / Math.max(1, logins.get()));
+    }
+
+    private interface LoginCheck {
+        boolean check();
+    }
+}
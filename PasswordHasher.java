@@ -0,0 +1,144 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes passwords with salted PBKDF2 (HMAC-SHA256) for the user CSV file. A hash is stored as
+ * {@code pbkdf2$<iterations>$<salt>$<hash>} with Base64 salt and hash, so it contains no commas and
+ * carries its own cost factor: rows hashed with an older iteration count still verify, and
+ * {@link #needsRehash} tells when to hash them again.
+ * <p>
+ * Rows written before passwords were hashed hold the plain password. {@link #matches} accepts those
+ * too, so they can be replaced by a hash the next time their user logs in.
+ */
+public final class PasswordHasher {
+
+    /**
+     * The iteration count used when {@code -Dcarshop.passwordIterations} is not set.
+     */
+    public static final int DEFAULT_ITERATIONS = 600_000;
+
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int ITERATIONS = configuredIterations();
+
+    private PasswordHasher() {
+    }
+
+    private static int configuredIterations() {
+        String iterations = System.getProperty("carshop.passwordIterations");
+        if (iterations == null) {
+            return DEFAULT_ITERATIONS;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(iterations.trim()));
+        } catch (NumberFormatException e) {
+            System.out.println("Unknown password iteration count " + iterations + ", using " + DEFAULT_ITERATIONS + ".");
+            return DEFAULT_ITERATIONS;
+        }
+    }
+
+    /**
+     * @return The iteration count new hashes are made with.
+     */
+    public static int getIterations() {
+        return ITERATIONS;
+    }
+
+    /**
+     * Hashes a password with a new random salt and the configured iteration count.
+     *
+     * @param password The plain password.
+     * @return The stored form of the hash.
+     */
+    public static String hash(String password) {
+        return hash(password, ITERATIONS);
+    }
+
+    /**
+     * Hashes a password with a new random salt and the given iteration count.
+     *
+     * @param password The plain password.
+     * @param iterations The PBKDF2 iteration count.
+     * @return The stored form of the hash.
+     */
+    public static String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * @param stored A password as stored in the user CSV file.
+     * @return true if it is a hash made by this class, false if it is a plain password.
+     */
+    public static boolean isHash(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Checks a password against its stored form, which may be a hash or, for rows that were not
+     * migrated yet, the plain password. The comparison takes the same time wherever the values differ.
+     *
+     * @param password The password that was entered.
+     * @param stored The password as stored in the user CSV file.
+     * @return true if the password is correct.
+     */
+    public static boolean matches(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!isHash(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return iterations > 0 && MessageDigest.isEqual(pbkdf2(password, salt, iterations), expected);
+        } catch (IllegalArgumentException e) {
+            return false; // Not a number or not Base64
+        }
+    }
+
+    /**
+     * @param stored The password as stored in the user CSV file.
+     * @return true if it is a plain password or a hash with fewer iterations than configured.
+     */
+    public static boolean needsRehash(String stored) {
+        if (!isHash(stored)) {
+            return true;
+        }
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 || Integer.parseInt(stored.substring(PREFIX.length(), end)) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks passwords on a small pool of worker threads with a bounded queue. Hashing a password is
+ * deliberately slow, so running every login on its own thread would let a burst of logins take every
+ * processor away from purchases; the pool caps how many hashes run at once, and a login that cannot
+ * be queued or takes too long fails instead of waiting without end.
+ */
+public final class PasswordVerifier {
+
+    private final ThreadPoolExecutor pool;
+    private final long timeoutMillis;
+
+    /**
+     * Creates a verifier.
+     *
+     * @param threads The most passwords hashed at the same time.
+     * @param queueCapacity The most logins waiting for a thread.
+     * @param timeoutMillis How long a login waits for its result.
+     */
+    public PasswordVerifier(int threads, int queueCapacity, long timeoutMillis) {
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), task -> {
+                    Thread thread = new Thread(task, "password-verifier-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Creates a verifier sized from the {@code carshop.verifierThreads} system property, by default
+     * half of the processors.
+     *
+     * @return The new verifier.
+     */
+    public static PasswordVerifier configured() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        String configured = System.getProperty("carshop.verifierThreads");
+        if (configured != null) {
+            try {
+                threads = Math.max(1, Integer.parseInt(configured.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("Unknown verifier thread count " + configured + ", using " + threads + ".");
+            }
+        }
+        return new PasswordVerifier(threads, threads * 16, 30_000);
+    }
+
+    /**
+     * Checks a password against its stored form and, if it is correct but stored as a plain password
+     * or a hash that is too cheap, hashes it again with the configured cost.
+     *
+     * @param password The password that was entered.
+     * @param stored The password as stored in the user CSV file.
+     * @return The stored form to keep, which is a new hash if the old one needed replacing, or null
+     *         if the password is wrong or could not be checked.
+     */
+    public String verify(String password, String stored) {
+        Future<String> result;
+        try {
+            result = pool.submit(() -> {
+                if (!PasswordHasher.matches(password, stored)) {
+                    return null;
+                }
+                return PasswordHasher.needsRehash(stored) ? PasswordHasher.hash(password) : stored;
+            });
+        } catch (RejectedExecutionException e) {
+            System.out.println("Too many logins at once, please try again.");
+            return null;
+        }
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            System.out.println("Checking the password took too long, please try again.");
+            return null;
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.out.println("Error checking the password: " + e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return The most passwords hashed at the same time.
+     */
+    public int getThreads() {
+        return pool.getMaximumPoolSize();
+    }
+}
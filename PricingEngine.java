@@ -0,0 +1,392 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Computes what a customer pays for a car and what they get back when they return it, from rules
+ * kept in a text file (pricing_rules.txt in the data directory), so taxes, member discounts and
+ * promotions change without changing the code.
+ * <p>
+ * Each line of the file is a rule: a kind, optional conditions and an amount. Blank lines and lines
+ * starting with {@code #} are skipped:
+ * <pre>
+ * tax 6.25%                          the sales tax
+ * tax region=CO 2.9%                 the sales tax of a region
+ * discount tier=member 10%           a percentage off the price
+ * discount condition=Used 5%
+ * discount type=SUV 1000             a fixed amount off the price
+ * discount model="Honda Fit" 3%
+ * </pre>
+ * The conditions are {@code tier} ({@code member} or {@code standard}), {@code condition},
+ * {@code type}, {@code model} and {@code region}; values are compared ignoring case, and values with
+ * spaces are quoted. The region of the shop is {@code -Dcarshop.region}, so rules for other regions
+ * are left out. Every matching percentage is taken off in turn, then every matching fixed amount, and
+ * the tax of the last matching tax rule is added to what is left. Without a rule file the shop charges
+ * 6.25% tax and gives members 10% off, as it always has.
+ * <p>
+ * The rules that apply to a car and a tier are compiled into an evaluator of two multiplications and
+ * a subtraction, cached per car and tier. An evaluator remembers the type, model and condition it was
+ * compiled for and is compiled again if the car changes; it takes the price as input, so a new price
+ * needs no invalidation. The file is checked for changes at most once a second and a changed file
+ * replaces all rules and evaluators at once.
+ */
+public final class PricingEngine {
+
+    /**
+     * The name of the rule file inside a data directory.
+     */
+    public static final String RULES_FILE = "pricing_rules.txt";
+
+    /**
+     * The rules used when there is no rule file.
+     */
+    private static final String DEFAULT_RULES = "tax 6.25%\ndiscount tier=member 10%\n";
+
+    private static final int STANDARD = 0;
+    private static final int MEMBER = 1;
+    private static final int ANY = -1;
+
+    private static final long CHECK_INTERVAL_NANOS = 1_000_000_000L;
+
+    private static final LongAdder COMPILED = Metrics.counter("pricing.compiled");
+
+    /**
+     * One line of the rule file, with its text conditions resolved to the folded codes of
+     * {@link SymbolTable}.
+     */
+    private static final class Rule {
+        private final boolean tax;
+        private final boolean percent;
+        private final double amount;
+        private int tier = ANY;
+        private int type = ANY;
+        private int model = ANY;
+        private int condition = ANY;
+
+        private Rule(boolean tax, boolean percent, double amount) {
+            this.tax = tax;
+            this.percent = percent;
+            this.amount = amount;
+        }
+
+        private boolean matches(Car car, int customerTier) {
+            return (tier == ANY || tier == customerTier)
+                    && (type == ANY || type == SymbolTable.TYPES.foldedCode(car.getTypeCode()))
+                    && (model == ANY || model == SymbolTable.MODELS.foldedCode(car.getModelCode()))
+                    && (condition == ANY || condition == SymbolTable.CONDITIONS.foldedCode(car.getConditionCode()));
+        }
+    }
+
+    /**
+     * The rules of one version of the file and the evaluators compiled from them.
+     */
+    private static final class RuleSet {
+        private final List<Rule> rules;
+        private final Map<Long, Evaluator> evaluators = new ConcurrentHashMap<>();
+
+        private RuleSet(List<Rule> rules) {
+            this.rules = rules;
+        }
+    }
+
+    /**
+     * The price of one car for one tier under one version of the rules.
+     */
+    private static final class Evaluator {
+        private final int type;
+        private final int model;
+        private final int condition;
+        private final double multiplier;
+        private final double off;
+        private final double taxFactor;
+
+        private Evaluator(Car car, double multiplier, double off, double taxFactor) {
+            this.type = car.getTypeCode();
+            this.model = car.getModelCode();
+            this.condition = car.getConditionCode();
+            this.multiplier = multiplier;
+            this.off = off;
+            this.taxFactor = taxFactor;
+        }
+
+        private boolean isFor(Car car) {
+            return type == car.getTypeCode() && model == car.getModelCode() && condition == car.getConditionCode();
+        }
+
+        private float price(float basePrice) {
+            return (float) (Math.max(0, basePrice * multiplier - off) * taxFactor);
+        }
+    }
+
+    private final String filePath;
+    private final String region;
+    private volatile RuleSet ruleSet;
+    private volatile long lastModified;
+    private volatile long nextCheckNanos;
+
+    /**
+     * Creates an engine reading its rules from a file, for the region of {@code -Dcarshop.region}.
+     *
+     * @param filePath The path of the rule file. If it does not exist the default rules apply until it
+     *                 is created.
+     */
+    public PricingEngine(String filePath) {
+        this(filePath, System.getProperty("carshop.region"));
+    }
+
+    /**
+     * Creates an engine reading its rules from a file.
+     *
+     * @param filePath The path of the rule file. If it does not exist the default rules apply until it
+     *                 is created.
+     * @param region The region of the shop, or null to use only the rules without a region.
+     */
+    public PricingEngine(String filePath, String region) {
+        this.filePath = filePath;
+        this.region = region == null ? null : region.trim();
+        reload();
+    }
+
+    /**
+     * @return The path of the rule file.
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * Computes what a customer pays for a car, taxes included.
+     *
+     * @param car The car.
+     * @param user The customer.
+     * @return The price to charge.
+     */
+    public float purchasePrice(Car car, User user) {
+        return evaluator(car, tierOf(user)).price(car.getPrice());
+    }
+
+    /**
+     * Computes what a customer gets back for a returned car whose ticket does not record the amount
+     * charged, as tickets issued before it was recorded do: the amount the current rules charge for
+     * the car, so discounts given at purchase are taken back along with the tax. Tickets that record
+     * the amount charged are refunded exactly that, see {@link IssueTicket#chargedOf}.
+     *
+     * @param car The car.
+     * @param user The customer.
+     * @return The amount to refund.
+     */
+    public float refundAmount(Car car, User user) {
+        return evaluator(car, tierOf(user)).price(car.getPrice());
+    }
+
+    /**
+     * Reads the rule file again and drops every compiled evaluator. Lines that cannot be read are
+     * reported and left out.
+     */
+    public synchronized void reload() {
+        File file = new File(filePath);
+        long modified = file.lastModified();
+        List<Rule> rules;
+        if (modified == 0) {
+            rules = defaultRules();
+        } else {
+            try (Reader reader = new FileReader(file)) {
+                rules = parse(reader, filePath);
+            } catch (IOException e) {
+                System.out.println("An error occurred while reading the pricing rules: " + e.getMessage());
+                if (ruleSet != null) {
+                    return; // Keep the rules that were working
+                }
+                rules = defaultRules();
+            }
+        }
+        ruleSet = new RuleSet(rules);
+        lastModified = modified;
+        nextCheckNanos = System.nanoTime() + CHECK_INTERVAL_NANOS;
+    }
+
+    private Evaluator evaluator(Car car, int tier) {
+        if (System.nanoTime() - nextCheckNanos >= 0) {
+            checkForChanges();
+        }
+        RuleSet current = ruleSet;
+        Long key = ((long) car.getId() << 1) | tier;
+        Evaluator evaluator = current.evaluators.get(key);
+        if (evaluator == null || !evaluator.isFor(car)) {
+            evaluator = compile(current.rules, car, tier);
+            current.evaluators.put(key, evaluator);
+        }
+        return evaluator;
+    }
+
+    private synchronized void checkForChanges() {
+        if (System.nanoTime() - nextCheckNanos < 0) {
+            return; // Another thread checked meanwhile
+        }
+        if (new File(filePath).lastModified() != lastModified) {
+            reload();
+        } else {
+            nextCheckNanos = System.nanoTime() + CHECK_INTERVAL_NANOS;
+        }
+    }
+
+    private static Evaluator compile(List<Rule> rules, Car car, int tier) {
+        double multiplier = 1;
+        double off = 0;
+        double tax = 0;
+        for (Rule rule : rules) {
+            if (!rule.matches(car, tier)) {
+                continue;
+            }
+            if (rule.tax) {
+                tax = rule.amount;
+            } else if (rule.percent) {
+                multiplier *= 1 - rule.amount;
+            } else {
+                off += rule.amount;
+            }
+        }
+        COMPILED.increment();
+        return new Evaluator(car, multiplier, off, 1 + tax);
+    }
+
+    private static int tierOf(User user) {
+        return user != null && user.isMinerCarsMembership() ? MEMBER : STANDARD;
+    }
+
+    private List<Rule> defaultRules() {
+        try {
+            return parse(new StringReader(DEFAULT_RULES), "the default rules");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringReader does not fail
+        }
+    }
+
+    private List<Rule> parse(Reader source, String name) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                Rule rule = parseRule(tokens(line));
+                if (rule != null) {
+                    rules.add(rule);
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("Pricing rule on line " + lineNumber + " of " + name + " ignored: " + e.getMessage());
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Turns a rule into a Rule, or null if it is for another region.
+     */
+    private Rule parseRule(List<String> tokens) {
+        if (tokens.size() < 2) {
+            throw new IllegalArgumentException("expected a kind and an amount");
+        }
+        String kind = tokens.get(0).toLowerCase(Locale.ROOT);
+        if (!kind.equals("tax") && !kind.equals("discount")) {
+            throw new IllegalArgumentException("unknown kind " + tokens.get(0) + ", expected tax or discount");
+        }
+        String amountText = tokens.get(tokens.size() - 1);
+        boolean percent = amountText.endsWith("%");
+        double amount;
+        try {
+            amount = Double.parseDouble(percent ? amountText.substring(0, amountText.length() - 1) : amountText);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not an amount: " + amountText);
+        }
+        if (percent) {
+            amount /= 100;
+        } else if (kind.equals("tax")) {
+            percent = true; // A tax is always a rate, given as 6.25% or 0.0625
+        }
+        if (amount < 0 || (percent && amount > 1 && !kind.equals("tax"))) {
+            throw new IllegalArgumentException("amount out of range: " + amountText);
+        }
+        Rule rule = new Rule(kind.equals("tax"), percent, amount);
+        for (String condition : tokens.subList(1, tokens.size() - 1)) {
+            int equals = condition.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("expected field=value, got " + condition);
+            }
+            String field = condition.substring(0, equals).toLowerCase(Locale.ROOT);
+            String value = condition.substring(equals + 1);
+            switch (field) {
+                case "tier":
+                    if (value.equalsIgnoreCase("member")) {
+                        rule.tier = MEMBER;
+                    } else if (value.equalsIgnoreCase("standard")) {
+                        rule.tier = STANDARD;
+                    } else {
+                        throw new IllegalArgumentException("unknown tier " + value + ", expected member or standard");
+                    }
+                    break;
+                case "type":
+                    rule.type = SymbolTable.TYPES.foldedCode(SymbolTable.TYPES.code(value));
+                    break;
+                case "model":
+                    rule.model = SymbolTable.MODELS.foldedCode(SymbolTable.MODELS.code(value));
+                    break;
+                case "condition":
+                    rule.condition = SymbolTable.CONDITIONS.foldedCode(SymbolTable.CONDITIONS.code(value));
+                    break;
+                case "region":
+                    if (region == null || !region.equalsIgnoreCase(value)) {
+                        return null;
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown field " + field);
+            }
+        }
+        return rule;
+    }
+
+    /**
+     * Splits a rule at spaces, keeping quoted values together and dropping the quotes.
+     */
+    private static List<String> tokens(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (token.length() > 0) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+            } else {
+                token.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unclosed quote");
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,315 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes sales and inventory reports as CSV files, for admins who need more than one revenue figure
+ * at a time:
+ * <ul>
+ *   <li>revenue_by_type.csv, revenue_by_model.csv, revenue_by_year.csv and revenue_by_month.csv: the
+ *       tickets and revenue of each car type, model, sale year and sale month;</li>
+ *   <li>sales_by_membership.csv: the tickets and revenue of MinerCars members and other customers;</li>
+ *   <li>inventory_aging.csv: the cars in stock grouped by the time since their last sale, with the
+ *       units and the value of the stock.</li>
+ * </ul>
+ * The ticket file is read once, line by line, and only the totals are kept, so the memory used
+ * depends on the number of types, models and months, not on the number of tickets; the tickets held
+ * by the CarManager are not used. The month of a sale comes from its time-ordered ticket ID; tickets
+ * with older random IDs are counted under "unknown". The inventory is scanned once after the tickets.
+ * Each report is written through a {@link CSVRowWriter}, and the progress is printed about once a
+ * second.
+ */
+public class ReportGenerator {
+
+    private static final LatencyHistogram REPORT_TIMER = Metrics.timer("reports.generate");
+
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+    /**
+     * The number of usernames whose membership is remembered during a report. Tickets of the same
+     * customer tend to be close together, so a small cache saves most lookups.
+     */
+    private static final int MEMBERSHIP_CACHE_SIZE = 10_000;
+
+    private static final String UNKNOWN = "unknown";
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    /**
+     * The upper bounds in days of the aging buckets, and their names.
+     */
+    private static final int[] AGING_DAYS = {30, 90, 180, 365};
+    private static final String[] AGING_BUCKETS = {"0-30 days", "31-90 days", "91-180 days", "181-365 days",
+            "over 365 days", "sold at an unknown date", "never sold"};
+
+    private final CarManager carManager;
+    private final UserManager userManager;
+
+    /**
+     * Creates a report generator for the sales and inventory of a shop.
+     *
+     * @param carManager The CarManager whose ticket file and inventory are reported.
+     * @param userManager The UserManager telling which customers are members.
+     */
+    public ReportGenerator(CarManager carManager, UserManager userManager) {
+        this.carManager = carManager;
+        this.userManager = userManager;
+    }
+
+    /**
+     * Tickets and revenue of one group.
+     */
+    private static final class Total {
+        private long tickets;
+        private double revenue;
+
+        private void add(double price) {
+            tickets++;
+            revenue += price;
+        }
+    }
+
+    /**
+     * Writes every report into a directory, replacing reports written before.
+     *
+     * @param directory The directory of the reports. It is created if needed.
+     * @return The number of tickets read, or -1 if the reports could not be written.
+     */
+    public long generate(String directory) {
+        long start = System.nanoTime();
+        long tickets = -1;
+        long[] bytes = {0};
+        try {
+            tickets = generateUntimed(directory, bytes);
+            return tickets;
+        } finally {
+            SlowOperationLog.finish(REPORT_TIMER, start, tickets, bytes[0], directory, null);
+        }
+    }
+
+    private long generateUntimed(String directory, long[] bytes) {
+        File dir = new File(directory);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.out.println("Could not create the report directory " + directory);
+            return -1;
+        }
+        InventorySnapshot cars = carManager.getInventory();
+        int[] maxId = {0};
+        cars.scan(car -> maxId[0] = Math.max(maxId[0], car.getId()));
+        long[] lastSale = new long[maxId[0] + 1]; // 0 never sold, -1 sold at an unknown time
+
+        Map<String, Total> byType = new TreeMap<>();
+        Map<String, Total> byModel = new TreeMap<>();
+        Map<String, Total> byYear = new TreeMap<>();
+        Map<String, Total> byMonth = new TreeMap<>();
+        Map<String, Total> byMembership = new TreeMap<>();
+        Map<String, Boolean> memberships = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MEMBERSHIP_CACHE_SIZE;
+            }
+        };
+        ZoneId zone = ZoneId.systemDefault();
+
+        String ticketFilePath = carManager.getTicketFilePath();
+        long fileSize = Math.max(1, new File(ticketFilePath).length());
+        long tickets = 0;
+        long skipped = 0;
+        long bytesRead = 0;
+        long nextProgress = System.nanoTime() + PROGRESS_INTERVAL_NANOS;
+        String month = null;
+        long monthStart = 0;
+        long monthEnd = 0; // Tickets are mostly in time order, so the month of the last one is kept
+        try (BufferedReader reader = new BufferedReader(new FileReader(ticketFilePath), 64 * 1024)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                bytesRead += line.length() + 1;
+                if (line.isBlank()) {
+                    continue; // The line of a deleted ticket
+                }
+                String[] ticket = line.split(",", -1);
+                double price;
+                int carId;
+                try {
+                    carId = Integer.parseInt(ticket[0].trim());
+                    price = Double.parseDouble(ticket[6]);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    skipped++;
+                    continue;
+                }
+                tickets++;
+                total(byType, ticket[2]).add(price);
+                total(byModel, ticket[3]).add(price);
+                total(byYear, ticket[4]).add(price);
+                long millis = ticket.length > 7 ? TicketIdGenerator.timestampOf(ticket[7]) : -1;
+                if (millis >= 0 && (millis < monthStart || millis >= monthEnd)) {
+                    ZonedDateTime first = Instant.ofEpochMilli(millis).atZone(zone).withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+                    month = MONTH.format(first);
+                    monthStart = first.toInstant().toEpochMilli();
+                    monthEnd = first.plusMonths(1).toInstant().toEpochMilli();
+                }
+                total(byMonth, millis < 0 ? UNKNOWN : month).add(price);
+                total(byMembership, isMember(ticket[1], memberships) ? "member" : "non-member").add(price);
+                if (carId > 0 && carId < lastSale.length) {
+                    if (millis >= 0) {
+                        lastSale[carId] = Math.max(lastSale[carId], millis);
+                    } else if (lastSale[carId] == 0) {
+                        lastSale[carId] = -1;
+                    }
+                }
+                if (System.nanoTime() - nextProgress >= 0) {
+                    System.out.printf("Reports: %,d tickets read (%d%%)%n", tickets, Math.min(100, bytesRead * 100 / fileSize));
+                    nextProgress = System.nanoTime() + PROGRESS_INTERVAL_NANOS;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the tickets: " + e.getMessage());
+            return -1;
+        }
+
+        long[] agingCars = new long[AGING_BUCKETS.length];
+        long[] agingUnits = new long[AGING_BUCKETS.length];
+        double[] agingValue = new double[AGING_BUCKETS.length];
+        long today = LocalDate.now(zone).atStartOfDay(zone).toInstant().toEpochMilli();
+        cars.scan(car -> {
+            if (car.getCarsAvailable() <= 0) {
+                return;
+            }
+            int bucket = agingBucket(car.getId() < lastSale.length ? lastSale[car.getId()] : 0, today);
+            agingCars[bucket]++;
+            agingUnits[bucket] += car.getCarsAvailable();
+            agingValue[bucket] += (double) car.getPrice() * car.getCarsAvailable();
+        });
+
+        String[] header = {"Tickets", "Revenue"};
+        boolean written = writeTotals(new File(dir, "revenue_by_type.csv"), "Car Type", header, byType, bytes)
+                & writeTotals(new File(dir, "revenue_by_model.csv"), "Model", header, byModel, bytes)
+                & writeTotals(new File(dir, "revenue_by_year.csv"), "Year", header, byYear, bytes)
+                & writeTotals(new File(dir, "revenue_by_month.csv"), "Month", header, byMonth, bytes)
+                & writeTotals(new File(dir, "sales_by_membership.csv"), "Customers", header, byMembership, bytes)
+                & writeAging(new File(dir, "inventory_aging.csv"), agingCars, agingUnits, agingValue, bytes);
+        System.out.printf("Reports: %,d tickets read%s, written to %s%n", tickets,
+                skipped > 0 ? String.format(" (%,d unreadable lines skipped)", skipped) : "", dir.getPath());
+        return written ? tickets : -1;
+    }
+
+    private static Total total(Map<String, Total> totals, String key) {
+        Total total = totals.get(key);
+        if (total == null) {
+            total = new Total();
+            totals.put(key, total);
+        }
+        return total;
+    }
+
+    private boolean isMember(String username, Map<String, Boolean> memberships) {
+        Boolean member = memberships.get(username);
+        if (member == null) {
+            User user = userManager.findUserByUsername(username);
+            member = user != null && user.isMinerCarsMembership();
+            memberships.put(username, member);
+        }
+        return member;
+    }
+
+    private static int agingBucket(long lastSale, long today) {
+        if (lastSale == 0) {
+            return AGING_BUCKETS.length - 1;
+        }
+        if (lastSale < 0) {
+            return AGING_BUCKETS.length - 2;
+        }
+        long days = Math.max(0, (today - lastSale) / 86_400_000L);
+        for (int i = 0; i < AGING_DAYS.length; i++) {
+            if (days <= AGING_DAYS[i]) {
+                return i;
+            }
+        }
+        return AGING_DAYS.length;
+    }
+
+    private static boolean writeTotals(File file, String key, String[] header, Map<String, Total> totals, long[] bytes) {
+        try (CSVRowWriter writer = new CSVRowWriter(file.getPath(), false)) {
+            writer.text(key);
+            for (String column : header) {
+                writer.text(column);
+            }
+            writer.endRow();
+            for (Map.Entry<String, Total> entry : totals.entrySet()) {
+                writer.text(entry.getKey());
+                writer.text(Long.toString(entry.getValue().tickets));
+                writer.text(String.format("%.2f", entry.getValue().revenue));
+                writer.endRow();
+            }
+            return finish(writer, file, bytes);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing " + file.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean writeAging(File file, long[] cars, long[] units, double[] value, long[] bytes) {
+        try (CSVRowWriter writer = new CSVRowWriter(file.getPath(), false)) {
+            writer.row(new String[]{"Since Last Sale", "Cars", "Units", "Stock Value"});
+            for (int i = 0; i < AGING_BUCKETS.length; i++) {
+                writer.text(AGING_BUCKETS[i]);
+                writer.text(Long.toString(cars[i]));
+                writer.text(Long.toString(units[i]));
+                writer.text(String.format("%.2f", value[i]));
+                writer.endRow();
+            }
+            return finish(writer, file, bytes);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing " + file.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean finish(CSVRowWriter writer, File file, long[] bytes) {
+        writer.flush();
+        bytes[0] += writer.getBytesWritten();
+        if (writer.checkError()) {
+            System.out.println("An error occurred while writing " + file.getName() + ": " + writer.getError().getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the reports of the shop in the working directory, or of the data directory given as
+     * {@code data=<dir>}, into {@code out=<dir>} (reports by default). The CarManager still loads
+     * the tickets it keeps for purchases, so for ticket files larger than the heap run with
+     * {@code -Dcarshop.storage=mapped}, which keeps them off the heap.
+     *
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        String data = null;
+        String out = "reports";
+        for (String arg : args) {
+            if (arg.startsWith("data=")) {
+                data = arg.substring("data=".length());
+            } else if (arg.startsWith("out=")) {
+                out = arg.substring("out=".length());
+            } else {
+                System.out.println("Unknown option " + arg + ". Options: " + Arrays.asList("data=<dir>", "out=<dir>"));
+                return;
+            }
+        }
+        CarManager carManager = new CarManager(data);
+        UserManager userManager = new UserManager(carManager, data);
+        long tickets = new ReportGenerator(carManager, userManager).generate(out);
+        System.exit(tickets < 0 ? 1 : 0);
+    }
+}
@@ -1,5 +1,7 @@
 
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 
@@ -12,48 +14,74 @@ import java.util.Scanner;
 public class RunShop {
     
 	
+	/**
+	 * Loads cars, users and tickets in parallel at startup, so the first prompt does not wait for
+	 * the whole inventory.
+	 */
+	private static final StartupPipeline startup = StartupPipeline.start(null);
+
 	/**
 	 * Manages all car-related operations including loading cars, processing car purchases, and managing inventory.
 	 * This instance of {@link CarManager} is used throughout the application to interface with car data.
+	 * It is taken from {@link #startup} once it is needed, so it may still be loading while users log in.
 	 */
-    private static CarManager carManager = new CarManager();
+    private static CarManager carManager;
     
     /**
      * Manages user-related operations, user authentication and user data management.
      * This instance of {@link UserManager} is initialized with a reference to {@code carManager} to allow
      * user operations that may affect car data, such as car purchases.
      */
-    private static UserManager userManager = new UserManager(carManager);
+    private static UserManager userManager;
     
   
     
     /**
      * Represents the administrator panel that displays the main menu for the admins. 
      */
-    private static AdminPanel adminPanel = new AdminPanel(carManager, userManager); // Ensure AdminPanel is initialized
+    private static AdminPanel adminPanel;
+
+    /**
+     * The only reader of the console. Every menu reads from it, so input typed ahead of a prompt is
+     * not lost in the buffer of a reader that is thrown away.
+     */
+    private static final Scanner input = new Scanner(System.in);
 
  
 
     /**
      * The main method to run the car shop application. It handles user login and redirects
      * to the main menu upon successful authentication.
+     * <p>
+     * With {@code script=<file>} the shop runs the commands of the file without prompting instead,
+     * as described in {@link ShopScript}, and exits with status 1 if any command failed.
      * 
      * @param args The command line arguments.
      */
     public static void main(String[] args){
+        Metrics.writeSnapshots(System.getProperty("carshop.metrics", "metrics.txt")); // Empty to turn it off
+        for (String arg : args) {
+            if (arg.startsWith("script=")) {
+                ShopScript script = new ShopScript(startup.cars(), startup.users());
+                int failed = script.run(arg.substring("script=".length()));
+                System.exit(failed == 0 ? 0 : 1);
+            }
+        }
+
         int tries = 0;
-        Scanner scanner = new Scanner(System.in);
+        Scanner scanner = input;
         final int MAX_TRIES = 3;
         
-        
+        userManager = startup.users(); // Prompt as soon as users can log in
+        startup.firstPrompt();
         System.out.print("Use Admin Panel? (yes/no): ");
-        String useAdminPanel = scanner.nextLine().trim().toLowerCase();
+        String useAdminPanel = scanner.hasNextLine() ? scanner.nextLine().trim().toLowerCase() : "no";
 
   
         if (useAdminPanel.equals("yes")) {
             try {
-   
-                adminPanel.showMenu("admin");
+                adminPanel = startup.adminPanel();
+                adminPanel.showMenu("admin", scanner);
                 Log.log("Admin", "Accessed admin panel");
             } catch (Exception e) {
                 System.out.println("Error accessing Admin Panel: " + e.getMessage());
@@ -65,16 +93,20 @@ public class RunShop {
         
         while(tries < MAX_TRIES) {
             System.out.print("Username: ");
+            if (!scanner.hasNextLine()) {
+                break;
+            }
             String username = scanner.nextLine();
             System.out.print("Password: ");
-            String password = scanner.nextLine();
+            String password = scanner.hasNextLine() ? scanner.nextLine() : "";
     
             if (userManager.authenticateUser(username, password)) {
                 System.out.println("Welcome " + username);
                 Log.log(username, "logged in");
-               
+                carManager = startup.cars();
+                adminPanel = startup.adminPanel();
                 
-                mainmenu(username);
+                mainmenu(userManager.getSessionToken());
                 break;
             } else {
                 System.out.println("User information not found in system.");
@@ -96,77 +128,103 @@ public class RunShop {
  
     
     /**
-     * Displays the main menu of the application and handles user navigation.
+     * Displays the main menu of the application and handles user navigation until the user signs
+     * out. If the console input ends, the user is signed out as if they had chosen to, so nothing
+     * they did is lost.
+     * <p>
+     * Each round finds the user again through the session the login opened, so a session that
+     * ended or expired while the menu waited signs the user out instead of acting for them.
      * 
-     * @param username The username of the currently logged-in user.
+     * @param session The session token of the currently logged-in user.
      */
-    public static void mainmenu(String username) {
-        Scanner scanner = new Scanner(System.in);
-
-        System.out.println("Miner Cars main menu");
-        System.out.println("Please input the corresponding number for the menu you wish to go to:");
-        System.out.println("1. Display all cars.\n"
-                + "2. Filter Cars (used / new)\n"
-                + "    1) New\n"
-                + "        (Print info)\n"
-                + "    2) Used\n"
-                + "        (Print info)\n"
-                + "    3) Go back\n"
-                + "3. Purchase a car\n"
-                + "4. View Tickets\n"
-                + "5. Sign out and Exit\n"
-                + "6. Return Car\n"
-                + (username.equals("admin") ? "7. Access Admin Panel\n" : ""));
+    public static void mainmenu(String session) {
+        boolean signedOut = false;
+        while (!signedOut) {
+            User user = userManager.findUserBySession(session);
+            if (user == null) {
+                System.out.println("Your session has ended. Please log in again.");
+                carManager.saveCarsToCSV();
+                userManager.saveUsersToCSV();
+                userManager.clearTempToken();
+                return;
+            }
+            String username = user.getUsername();
+            System.out.println("Miner Cars main menu");
+            System.out.println("Please input the corresponding number for the menu you wish to go to:");
+            System.out.println("1. Display all cars.\n"
+                    + "2. Filter Cars (used / new)\n"
+                    + "    1) New\n"
+                    + "        (Print info)\n"
+                    + "    2) Used\n"
+                    + "        (Print info)\n"
+                    + "    3) Go back\n"
+                    + "3. Purchase a car\n"
+                    + "4. View Tickets\n"
+                    + "5. Sign out and Exit\n"
+                    + "6. Return Car\n"
+                    + (username.equals("admin") ? "7. Access Admin Panel\n" : "")
+                    + "8. Purchase multiple cars\n");
 
-        String input = scanner.nextLine();
+            try {
+                String option = input.hasNextLine() ? input.nextLine().trim() : "5";
+                signedOut = handleOption(username, option);
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter valid numeric values.");
+            } catch (NoSuchElementException e) {
+                System.out.println("The input ended before the option was complete."); // The next round signs out
+            } catch (Exception e) {
+                System.out.println("An unexpected error occurred: " + e.getMessage());
+            }
+        }
+    }
 
-        try {
-        switch (input) {
-        
-        
-        
+    /**
+     * Carries out one option of the main menu, reading whatever else it needs from the console.
+     *
+     * @param username The username of the currently logged-in user.
+     * @param option The number the user chose.
+     * @return true if the user signed out.
+     * @throws Exception If the option failed; the menu reports it and is shown again.
+     */
+    private static boolean handleOption(String username, String option) throws Exception {
+        switch (option) {
             case "1":
                 System.out.println("Displaying all cars...");
                 carManager.printAllCars();
                 Log.log(username, "printed all cars");
-                mainmenu(username);
-                break;
+                return false;
                 
             case "2":
                 System.out.println("Filter options:");
                 System.out.println("1) New\n2) Used\n3) Go back");
-                String filterInput = scanner.nextLine();
+                String filterInput = input.nextLine().trim();
                 
                 switch (filterInput) {
                     case "1":
                         System.out.println("New Cars:");
                         carManager.printConditionCars("New");
                         Log.log(username, "printed new cars");
-                        mainmenu(username);
                         break;
                         
                     case "2":
                         System.out.println("Used Cars:");
                         carManager.printConditionCars("Used");
                         Log.log(username, "printed used cars");
-                        mainmenu(username);
                         break;
                         
                     case "3":
                         System.out.println("Going back to the main menu...");
-                        mainmenu(username); 
                         break;
                         
                     default:
                         System.out.println("Invalid option");
-                        mainmenu(username);
                         break;
                 }
-                break;
+                return false;
                 
             case "3":
                 System.out.println("Enter ID of car: ");
-                String IDInput = scanner.nextLine();
+                String IDInput = input.nextLine().trim();
                 if(carManager.purchaseCar(username, IDInput, userManager)) {
                     System.out.println("Car Purchased. Thank you for your business!");
                     Log.log(username, "purchased a car");
@@ -175,19 +233,15 @@ public class RunShop {
                     System.out.println("Unable to purchase the car");
                     Log.log(username,"failed to purchase a car");
                 }
-                mainmenu(username);
-                break;
+                return false;
                 
             case "4":
                 System.out.println("Viewing tickets...");
-                IssueTicket.viewTicketsForUser(username, "issued_tickets.csv");
+                IssueTicket.viewTicketsForUser(username, carManager.getTicketFilePath());
                 Log.log(username, "viewed tickets");
-                mainmenu(username);
-                break;
+                return false;
                 
             case "5":
-
-            	
                 carManager.saveCarsToCSV();           
                 userManager.saveUsersToCSV();                 
                 userManager.logout();
@@ -195,50 +249,45 @@ public class RunShop {
                 Log.log(username, "signed out");
                 
                 userManager.clearTempToken();
-                
-                break;
+                return true;
+
             case "6":
-            	
             	System.out.println("Enter Car ID to return: ");
-            	int carID = scanner.nextInt();
-            	
+            	int carID = Integer.parseInt(input.nextLine().trim());
             	
             	userManager.returnCar(username, carID);
             	Log.log(username, "Returned Car");
-            	mainmenu(username);
-            	break;
+            	return false;
             	
             case "7":
                 if (username.equals("admin")) {
-                    adminPanel.showMenu("admin");
+                    adminPanel.showMenu("admin", input);
                     Log.log(username, "accessed admin panel");
-                    mainmenu(username);
                 } else {
                     System.out.println("Unauthorized access attempt to admin panel.");
-                    mainmenu(username);
                 }
-                break;
+                return false;
                 
+            case "8":
+                System.out.println("Enter the IDs of the cars separated by commas (repeat an ID to buy several): ");
+                String IDsInput = input.nextLine();
+                List<String> IDs = Arrays.asList(IDsInput.split(","));
+                if (carManager.purchaseCars(username, IDs, userManager)) {
+                    System.out.println(IDs.size() + " cars purchased. Thank you for your business!");
+                    Log.log(username, "purchased " + IDs.size() + " cars");
+                }
+                else {
+                    System.out.println("Unable to purchase the cars");
+                    Log.log(username, "failed to purchase " + IDs.size() + " cars");
+                }
+                return false;
+
             default:
                 System.out.println("Invalid option. Please try again.");
-                mainmenu(username);
-                
-                break;
+                return false;
         }
-        } catch (NumberFormatException e) {
-            System.out.println("Please enter valid numeric values.");
-            mainmenu(username);
-        }  catch (IOException e) {
-                System.err.println("Failed to read input: " + e.getMessage());
-        } catch (Exception e) {
-            System.out.println("An unexpected error occurred: " + e.getMessage());
-            mainmenu(username);
-        }
-        
-
-        scanner.close(); 
     }
     
  
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,166 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Remembers authenticated sessions so a user is not verified with the slow password hash on every
+ * request. A successful login opens a session identified by a random token, which stands in for the
+ * password afterwards; logging in again with the same password while the session is fresh is checked
+ * against a keyed digest of the credentials instead of the password hash.
+ * <p>
+ * The digest is keyed with a random secret of this process, so it is useless outside it, and it
+ * covers the stored password hash, so changing the password ends the shortcut. Both maps keep the
+ * most recently used entries up to a fixed size, and entries expire after a fixed time.
+ */
+public final class SessionCache {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int TOKEN_BYTES = 24;
+
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final Map<String, Session> sessions;
+    private final Map<String, Session> credentials;
+
+    /**
+     * An open session and the credentials it was opened with.
+     */
+    private static final class Session {
+        private final String token;
+        private final String username;
+        private final byte[] credentialDigest;
+        private long expiresAt;
+
+        private Session(String token, String username, byte[] credentialDigest, long expiresAt) {
+            this.token = token;
+            this.username = username;
+            this.credentialDigest = credentialDigest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Creates a session cache.
+     *
+     * @param capacity The most sessions kept.
+     * @param ttlMillis How long a session stays valid after it was last used.
+     */
+    public SessionCache(int capacity, long ttlMillis) {
+        byte[] secret = new byte[32];
+        random.nextBytes(secret);
+        this.key = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.ttlMillis = ttlMillis;
+        this.sessions = boundedMap(capacity);
+        this.credentials = boundedMap(capacity);
+    }
+
+    private static Map<String, Session> boundedMap(int capacity) {
+        return new LinkedHashMap<String, Session>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Opens a session for a user whose password was just verified.
+     *
+     * @param username The username.
+     * @param password The password that was verified.
+     * @param stored The password as stored in the user CSV file.
+     * @return The token of the new session.
+     */
+    public synchronized String open(String username, String password, String stored) {
+        byte[] token = new byte[TOKEN_BYTES];
+        random.nextBytes(token);
+        Session session = new Session(Base64.getUrlEncoder().withoutPadding().encodeToString(token), username,
+                digest(username, password, stored), System.currentTimeMillis() + ttlMillis);
+        sessions.put(session.token, session);
+        credentials.put(username, session);
+        return session.token;
+    }
+
+    /**
+     * Checks credentials against the last session of the user, without hashing the password.
+     *
+     * @param username The username.
+     * @param password The password that was entered.
+     * @param stored The password as stored in the user CSV file.
+     * @return true if the user has a fresh session opened with the same credentials.
+     */
+    public synchronized boolean verify(String username, String password, String stored) {
+        Session session = credentials.get(username);
+        if (session == null || password == null) {
+            return false;
+        }
+        if (session.expiresAt < System.currentTimeMillis()) {
+            credentials.remove(username);
+            return false;
+        }
+        return MessageDigest.isEqual(session.credentialDigest, digest(username, password, stored));
+    }
+
+    /**
+     * Returns the user of a session and keeps the session fresh.
+     *
+     * @param token The token of the session.
+     * @return The username, or null if the session does not exist or expired.
+     */
+    public synchronized String usernameOf(String token) {
+        Session session = token == null ? null : sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (session.expiresAt < now) {
+            sessions.remove(token);
+            return null;
+        }
+        session.expiresAt = now + ttlMillis;
+        return session.username;
+    }
+
+    /**
+     * Ends a session. Logging in again with the same password within the lifetime of the session
+     * still skips the password hash.
+     *
+     * @param token The token of the session.
+     */
+    public synchronized void close(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * Forgets every session of a user, for example after the password changed.
+     *
+     * @param username The username.
+     */
+    public synchronized void forget(String username) {
+        credentials.remove(username);
+        sessions.values().removeIf(session -> session.username.equals(username));
+    }
+
+    private byte[] digest(String username, String password, String stored) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(password.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(String.valueOf(stored).getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+/**
+ * Manages the inventories of several lots. Every location is a shard with its own {@link CarManager},
+ * data directory (holding its own car_data_part2.csv and issued_tickets.csv) and snapshots.
+ * <p>
+ * Queries across all lots are sent to every shard in parallel and the per-shard results are merged.
+ * Purchases and returns are routed to the shard that owns the car, and each shard can be loaded and
+ * saved on its own.
+ */
+public class ShardedCarManager {
+
+    /**
+     * The shards by location name.
+     */
+    private final Map<String, CarManager> shards = new ConcurrentHashMap<>();
+
+    /**
+     * The data directory of each location, in the order the locations were added.
+     */
+    private final Map<String, String> directories = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Runs the per-shard part of loads, saves and queries.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Creates a sharded manager and loads every location in parallel.
+     *
+     * @param locationDirectories The data directory of each location, by location name.
+     */
+    public ShardedCarManager(Map<String, String> locationDirectories) {
+        int threads = Math.max(1, Math.min(locationDirectories.size(), Runtime.getRuntime().availableProcessors()));
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "shard-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        directories.putAll(locationDirectories);
+        List<CompletableFuture<Void>> loads = new ArrayList<>();
+        for (String location : locationDirectories.keySet()) {
+            loads.add(CompletableFuture.runAsync(() -> loadShard(location), executor));
+        }
+        CompletableFuture.allOf(loads.toArray(CompletableFuture<?>[]::new)).join();
+    }
+
+    /**
+     * Creates a sharded manager with one location for every sub directory of the given directory
+     * that contains a car CSV file. The sub directory name is the location name.
+     *
+     * @param rootDirectory The directory holding one sub directory per location.
+     * @return The sharded manager.
+     */
+    public static ShardedCarManager fromDirectory(String rootDirectory) {
+        Map<String, String> locations = new LinkedHashMap<>();
+        File[] children = new File(rootDirectory).listFiles(File::isDirectory);
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children) {
+                if (new File(child, CarManager.CAR_FILE).isFile()) {
+                    locations.put(child.getName(), child.getPath());
+                }
+            }
+        }
+        return new ShardedCarManager(locations);
+    }
+
+    /**
+     * (Re)loads one location from its data directory. Other shards are not affected.
+     *
+     * @param location The location to load.
+     */
+    public void loadShard(String location) {
+        String directory = directories.get(location);
+        if (directory == null) {
+            throw new IllegalArgumentException("Unknown location: " + location);
+        }
+        shards.put(location, new CarManager(directory));
+    }
+
+    /**
+     * Adds a new location and loads it.
+     *
+     * @param location The name of the location.
+     * @param dataDirectory The data directory of the location.
+     */
+    public void addShard(String location, String dataDirectory) {
+        directories.put(location, dataDirectory);
+        loadShard(location);
+    }
+
+    /**
+     * Saves the inventory of one location to its own car CSV file.
+     *
+     * @param location The location to save.
+     */
+    public void saveShard(String location) {
+        getShard(location).saveCarsToCSV();
+    }
+
+    /**
+     * Saves every location in parallel.
+     */
+    public void saveAll() {
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
+        for (String location : getLocations()) {
+            saves.add(CompletableFuture.runAsync(() -> saveShard(location), executor));
+        }
+        CompletableFuture.allOf(saves.toArray(CompletableFuture<?>[]::new)).join();
+    }
+
+    /**
+     * @return The location names, in the order they were added.
+     */
+    public Set<String> getLocations() {
+        synchronized (directories) {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(directories.keySet()));
+        }
+    }
+
+    /**
+     * Returns the CarManager that owns the inventory of a location.
+     *
+     * @param location The location name.
+     * @return The shard of that location.
+     * @throws IllegalArgumentException If the location is unknown.
+     */
+    public CarManager getShard(String location) {
+        CarManager shard = shards.get(location);
+        if (shard == null) {
+            throw new IllegalArgumentException("Unknown location: " + location);
+        }
+        return shard;
+    }
+
+    /**
+     * Finds the best matching cars across all locations. Every shard filters its own snapshot and keeps
+     * its best {@code limit} cars in parallel; the partial results are then merged.
+     *
+     * @param filter The condition a car must meet, for example a red used SUV in stock.
+     * @param order The order of the results, the best car first.
+     * @param limit The maximum number of cars to return.
+     * @return Up to {@code limit} matching cars with their location, in the given order.
+     */
+    public List<LocatedCar> findCars(Predicate<Car> filter, Comparator<Car> order, int limit) {
+        Comparator<LocatedCar> locatedOrder = Comparator.comparing(LocatedCar::getCar, order);
+        List<CompletableFuture<List<LocatedCar>>> partials = new ArrayList<>();
+        for (String location : getLocations()) {
+            partials.add(CompletableFuture.supplyAsync(() -> topCars(location, filter, locatedOrder, limit), executor));
+        }
+
+        List<LocatedCar> merged = new ArrayList<>();
+        for (CompletableFuture<List<LocatedCar>> partial : partials) {
+            merged.addAll(partial.join());
+        }
+        merged.sort(locatedOrder);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    /**
+     * Keeps the best {@code limit} matching cars of one shard using a bounded heap.
+     */
+    private List<LocatedCar> topCars(String location, Predicate<Car> filter, Comparator<LocatedCar> order, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<LocatedCar> best = new PriorityQueue<>(limit + 1, order.reversed()); // Worst kept car on top
+        for (Car car : getShard(location).getInventory()) {
+            if (!filter.test(car)) {
+                continue;
+            }
+            LocatedCar candidate = new LocatedCar(location, car);
+            if (best.size() < limit) {
+                best.add(candidate);
+            } else if (order.compare(candidate, best.peek()) < 0) {
+                best.poll();
+                best.add(candidate);
+            }
+        }
+        return new ArrayList<>(best);
+    }
+
+    /**
+     * Purchases a car from the location that owns it.
+     *
+     * @param location The location of the car.
+     * @param username The username of the buyer.
+     * @param carId The ID of the car within that location.
+     * @param userManager an instance of the UserManager object.
+     * @return true if the purchase is successful; false otherwise.
+     */
+    public boolean purchaseCar(String location, String username, String carId, UserManager userManager) throws Exception {
+        return getShard(location).purchaseCar(username, carId, userManager);
+    }
+
+    /**
+     * Returns a car to the location it was bought from.
+     *
+     * @param location The location of the car.
+     * @param username The username of the user returning the car.
+     * @param carId The ID of the car within that location.
+     * @param userManager an instance of the UserManager object.
+     * @return true if the car is successfully returned, false otherwise.
+     */
+    public boolean returnCar(String location, String username, int carId, UserManager userManager) throws Exception {
+        return userManager.returnCar(username, carId, getShard(location));
+    }
+
+    /**
+     * Stops the worker threads. The shards stay usable for direct calls.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * A car found by a cross-location query, together with the location that owns it.
+     */
+    public static final class LocatedCar {
+        private final String location;
+        private final Car car;
+
+        LocatedCar(String location, Car car) {
+            this.location = location;
+            this.car = car;
+        }
+
+        /**
+         * @return The location that owns the car.
+         */
+        public String getLocation() {
+            return location;
+        }
+
+        /**
+         * @return The car.
+         */
+        public Car getCar() {
+            return car;
+        }
+    }
+}
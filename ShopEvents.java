@@ -0,0 +1,177 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the shop, so a recording shows which purchase, return, login or
+ * file write was running when the shop stalled, next to the garbage collections and I/O of the JVM.
+ * <p>
+ * The events cost next to nothing while no recording is running. Start one with
+ * {@code java -XX:StartFlightRecording=filename=shop.jfr RunShop} or {@code jcmd <pid> JFR.start}, and
+ * find the events under "Car Shop" in JDK Mission Control or with {@code jfr print --categories "Car Shop"}.
+ */
+public final class ShopEvents {
+
+    private static final String CATEGORY = "Car Shop";
+
+    private ShopEvents() {
+    }
+
+    @Name("carshop.Purchase")
+    @Label("Purchase")
+    @Category(CATEGORY)
+    @Description("A purchase of one or more cars")
+    @StackTrace(false)
+    public static final class Purchase extends Event {
+        @Label("Username")
+        public String username;
+
+        @Label("Car IDs")
+        @Description("The IDs of the cars bought, separated by commas")
+        public String carIds;
+
+        @Label("Cars")
+        public int cars;
+
+        @Label("Purchased")
+        public boolean purchased;
+    }
+
+    @Name("carshop.Return")
+    @Label("Return")
+    @Category(CATEGORY)
+    @Description("A car given back for a refund")
+    @StackTrace(false)
+    public static final class Return extends Event {
+        @Label("Username")
+        public String username;
+
+        @Label("Car ID")
+        public int carId;
+
+        @Label("Returned")
+        public boolean returned;
+    }
+
+    @Name("carshop.Authentication")
+    @Label("Authentication")
+    @Category(CATEGORY)
+    @Description("A login attempt, including the password check")
+    @StackTrace(false)
+    public static final class Authentication extends Event {
+        @Label("Username")
+        public String username;
+
+        @Label("Source")
+        public String source;
+
+        @Label("Authenticated")
+        public boolean authenticated;
+    }
+
+    @Name("carshop.TicketWrite")
+    @Label("Ticket Write")
+    @Category(CATEGORY)
+    @Description("Tickets appended to the ticket file")
+    @StackTrace(false)
+    public static final class TicketWrite extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Car IDs")
+        public String carIds;
+
+        @Label("Rows")
+        public int rows;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("carshop.TicketDelete")
+    @Label("Ticket Delete")
+    @Category(CATEGORY)
+    @Description("A ticket removed by copying the rest of the ticket file")
+    @StackTrace(false)
+    public static final class TicketDelete extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Username")
+        public String username;
+
+        @Label("Car ID")
+        public int carId;
+
+        @Label("Deleted")
+        public boolean deleted;
+
+        @Label("Rows Read")
+        public long rowsRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("carshop.InventorySave")
+    @Label("Inventory Save")
+    @Category(CATEGORY)
+    @Description("The whole inventory written to the car file")
+    @StackTrace(false)
+    public static final class InventorySave extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Rows")
+        public long rows;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytes;
+
+        @Label("Saved")
+        public boolean saved;
+    }
+
+    @Name("carshop.CSVWrite")
+    @Label("CSV Write")
+    @Category(CATEGORY)
+    @Description("Rows written by CSVManager, appended or replacing the file")
+    public static final class CSVWrite extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Append")
+        public boolean append;
+
+        @Label("Rows")
+        public int rows;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("carshop.LogWrite")
+    @Label("Log Write")
+    @Category(CATEGORY)
+    @Description("An entry appended to the log file")
+    @StackTrace(false)
+    public static final class LogWrite extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Username")
+        public String username;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytes;
+    }
+}
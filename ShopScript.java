@@ -0,0 +1,305 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the shop from a file of commands instead of the console menus, so batch jobs and nightly
+ * operations can run unattended and at full speed. Start it with {@code java RunShop script=<file>}.
+ * <p>
+ * The file holds one command per line; blank lines and lines starting with {@code #} are skipped:
+ * <pre>
+ * login &lt;username&gt; &lt;password&gt;     log in; the customer commands act for this user
+ * list [all|new|used]              print the cars
+ * purchase &lt;id&gt;[,&lt;id&gt;...]          buy one car, or several together
+ * return &lt;id&gt;                      give a car back for a refund
+ * tickets                          print the tickets of the user
+ * logout                           log out
+ * add-car &lt;type&gt;,&lt;model&gt;,&lt;condition&gt;,&lt;color&gt;,&lt;capacity&gt;,&lt;year&gt;,&lt;fuel type&gt;,&lt;transmission&gt;,&lt;vin&gt;,&lt;price&gt;,&lt;cars available&gt;,&lt;turbo yes/no&gt;
+ * add-user &lt;id&gt;,&lt;first name&gt;,&lt;last name&gt;,&lt;money&gt;,&lt;cars purchased&gt;,&lt;membership true/false&gt;,&lt;username&gt;,&lt;password&gt;
+ * import &lt;file&gt;                    import cars from a supplier CSV, quarantining rejected rows
+ * remove &lt;vin&gt;                     remove a car
+ * revenue &lt;car type or id&gt;         print the revenue
+ * reports &lt;directory&gt;              write the sales and inventory reports
+ * save                             write the cars and users to their files
+ * </pre>
+ * The customer commands find their user through the session the last {@code login} opened, so they
+ * fail as without a login once the session ended or expired.
+ * The admin commands need no login, as at the admin panel prompt of the console. A script is run by
+ * an operator, so its logins count against the {@link LoginThrottle} limit of their username but each
+ * username is its own source; a script logging in many users is not held up. Every command is
+ * written to the log like its menu option. The cars and users are saved after the last command and at
+ * {@code save}, not at every logout, so a script of many sessions does not rewrite the files each time.
+ * <p>
+ * A command that fails, is unknown or lacks arguments is reported with its line number and the
+ * script goes on with the next line.
+ */
+public class ShopScript {
+
+    /**
+     * The prefix of the source of script logins, followed by the username.
+     */
+    private static final String SOURCE = "script:";
+
+    private final CarManager carManager;
+    private final UserManager userManager;
+    private final Admin admin;
+
+    /**
+     * The token of the session opened by the last {@code login}, or null.
+     */
+    private String session;
+
+    /**
+     * Creates a script runner working on the given managers.
+     *
+     * @param carManager The CarManager to buy and manage cars with.
+     * @param userManager The UserManager to log in and manage users with.
+     */
+    public ShopScript(CarManager carManager, UserManager userManager) {
+        this.carManager = carManager;
+        this.userManager = userManager;
+        this.admin = new Admin("admin", "admin", carManager, userManager);
+    }
+
+    /**
+     * Runs every command of a script file and saves the cars and users at the end.
+     *
+     * @param filePath The path of the script.
+     * @return The number of commands that failed, or -1 if the script could not be read.
+     */
+    public int run(String filePath) {
+        long start = System.nanoTime();
+        int commands = 0;
+        int failed = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                commands++;
+                String failure;
+                try {
+                    failure = execute(line);
+                } catch (NumberFormatException e) {
+                    failure = "not a valid number: " + e.getMessage();
+                } catch (Exception e) {
+                    failure = e.getMessage();
+                }
+                if (failure != null) {
+                    failed++;
+                    System.out.println("Line " + lineNumber + ": " + line.split("\\s+")[0] + " failed, " + failure);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the script: " + e.getMessage());
+            return -1;
+        } finally {
+            save();
+        }
+        System.out.printf("Ran %d commands from %s in %.1f ms, %d failed%n",
+                commands, filePath, (System.nanoTime() - start) / 1e6, failed);
+        return failed;
+    }
+
+    /**
+     * Executes one command.
+     *
+     * @param line The command and its arguments.
+     * @return Why the command failed, or null if it succeeded.
+     * @throws Exception If the shop failed to carry out the command.
+     */
+    private String execute(String line) throws Exception {
+        String[] words = line.split("\\s+", 2);
+        String command = words[0].toLowerCase();
+        String arguments = words.length > 1 ? words[1].trim() : "";
+        switch (command) {
+            case "login": {
+                String[] credentials = arguments.split("\\s+", 2);
+                if (credentials.length < 2) {
+                    return "expected a username and a password";
+                }
+                if (session != null) {
+                    logout();
+                }
+                if (!userManager.authenticateUser(credentials[0], credentials[1], SOURCE + credentials[0])) {
+                    Log.log(credentials[0], "failed to log in");
+                    return "user information not found";
+                }
+                session = userManager.getSessionToken();
+                Log.log(credentials[0], "logged in");
+                return null;
+            }
+            case "logout":
+                if (session == null) {
+                    return "no user is logged in";
+                }
+                logout();
+                return null;
+            case "list":
+                return list(arguments.isEmpty() ? "all" : arguments.toLowerCase());
+            case "purchase":
+                return purchase(arguments);
+            case "return": {
+                String username = loggedIn();
+                if (username == null) {
+                    return "no user is logged in";
+                }
+                int carId = Integer.parseInt(arguments);
+                boolean returned = userManager.returnCar(username, carId);
+                Log.log(username, "Returned Car");
+                return returned ? null : "car " + carId + " was not returned";
+            }
+            case "tickets": {
+                String username = loggedIn();
+                if (username == null) {
+                    return "no user is logged in";
+                }
+                IssueTicket.viewTicketsForUser(username, carManager.getTicketFilePath());
+                Log.log(username, "viewed tickets");
+                return null;
+            }
+            case "add-car":
+                return addCar(arguments);
+            case "add-user":
+                return addUser(arguments);
+            case "import": {
+                if (arguments.isEmpty()) {
+                    return "expected the path of a CSV file";
+                }
+                admin.importCars(arguments, AdminPanel.quarantineFilePathOf(arguments));
+                Log.log("Admin", "imported cars from " + arguments);
+                return null;
+            }
+            case "remove":
+                if (arguments.isEmpty()) {
+                    return "expected a VIN";
+                }
+                admin.removeCar(arguments);
+                Log.log("Admin", "removed car " + arguments);
+                return null;
+            case "revenue":
+                if (arguments.isEmpty()) {
+                    return "expected a car type or ID";
+                }
+                admin.getRevenueByIDOrType(arguments);
+                return null;
+            case "reports":
+                if (arguments.isEmpty()) {
+                    return "expected a directory";
+                }
+                return admin.exportReports(arguments) < 0 ? "the reports could not be written" : null;
+            case "save":
+                save();
+                return null;
+            default:
+                return "unknown command";
+        }
+    }
+
+    private String list(String condition) {
+        String username = loggedIn();
+        String actor = username != null ? username : "Admin";
+        switch (condition) {
+            case "all":
+                carManager.printAllCars();
+                Log.log(actor, "printed all cars");
+                return null;
+            case "new":
+                carManager.printConditionCars("New");
+                Log.log(actor, "printed new cars");
+                return null;
+            case "used":
+                carManager.printConditionCars("Used");
+                Log.log(actor, "printed used cars");
+                return null;
+            default:
+                return "expected all, new or used";
+        }
+    }
+
+    private String purchase(String arguments) throws Exception {
+        String username = loggedIn();
+        if (username == null) {
+            return "no user is logged in";
+        }
+        if (arguments.isEmpty()) {
+            return "expected one or more car IDs";
+        }
+        List<String> IDs = Arrays.asList(arguments.split("\\s*,\\s*"));
+        if (IDs.size() == 1) {
+            if (carManager.purchaseCar(username, IDs.get(0), userManager)) {
+                Log.log(username, "purchased a car");
+                return null;
+            }
+            Log.log(username, "failed to purchase a car");
+            return "unable to purchase car " + IDs.get(0);
+        }
+        if (carManager.purchaseCars(username, IDs, userManager)) {
+            Log.log(username, "purchased " + IDs.size() + " cars");
+            return null;
+        }
+        Log.log(username, "failed to purchase " + IDs.size() + " cars");
+        return "unable to purchase cars " + arguments;
+    }
+
+    private String addCar(String arguments) {
+        String[] fields = arguments.split("\\s*,\\s*");
+        if (fields.length != 12) {
+            return "expected 12 comma-separated fields, got " + fields.length;
+        }
+        boolean hasTurbo;
+        if (fields[11].equalsIgnoreCase("yes")) {
+            hasTurbo = true;
+        } else if (fields[11].equalsIgnoreCase("no")) {
+            hasTurbo = false;
+        } else {
+            return "expected yes or no for the turbo, got " + fields[11];
+        }
+        admin.addCar(fields[0], fields[1], fields[2], fields[3], Integer.parseInt(fields[4]), Integer.parseInt(fields[5]),
+                fields[6], fields[7], fields[8], Integer.parseInt(fields[9]), Integer.parseInt(fields[10]), hasTurbo);
+        Log.log("Admin", "added car " + fields[8]);
+        return null;
+    }
+
+    private String addUser(String arguments) {
+        String[] fields = arguments.split("\\s*,\\s*");
+        if (fields.length != 8) {
+            return "expected 8 comma-separated fields, got " + fields.length;
+        }
+        admin.addUser(Integer.parseInt(fields[0]), fields[1], fields[2], Float.parseFloat(fields[3]),
+                Integer.parseInt(fields[4]), Boolean.parseBoolean(fields[5]), fields[6], fields[7]);
+        Log.log("Admin", "added user " + fields[6]);
+        return null;
+    }
+
+    /**
+     * Finds the user of the current session.
+     *
+     * @return The username, or null if nobody is logged in or the session ended.
+     */
+    private String loggedIn() {
+        User user = session == null ? null : userManager.findUserBySession(session);
+        return user == null ? null : user.getUsername();
+    }
+
+    private void logout() {
+        String username = loggedIn();
+        userManager.logout();
+        if (username != null) {
+            Log.log(username, "signed out");
+        }
+        userManager.clearTempToken();
+        session = null;
+    }
+
+    private void save() {
+        carManager.saveCarsToCSV();
+        userManager.saveUsersToCSV();
+    }
+}
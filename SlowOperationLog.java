@@ -0,0 +1,245 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes operations that took unusually long to a separate log, with their arguments, the rows and
+ * bytes they touched, and the state of the thread and the JVM at that moment, so a single slow
+ * purchase can be explained afterwards.
+ * <p>
+ * Every timed operation compares its duration with the threshold kept in its
+ * {@link LatencyHistogram}, so an operation that is not slow costs a {@code nanoTime} pair and a
+ * comparison. By default the threshold follows the operation: after 1000 operations it is their
+ * 99.9th percentile, updated every metrics interval, but never below 20 ms. {@code -Dcarshop.slowOps}
+ * sets it instead, as milliseconds ({@code 250}) or as another percentile ({@code p99});
+ * {@code -Dcarshop.slowOpsFloor} sets the lowest threshold in milliseconds. At most 100 operations
+ * are written per metrics interval, so a stall of the whole shop does not flood the disk.
+ * <p>
+ * The log is slow_operations.log in the working directory, or {@code -Dcarshop.slowLog}; an empty
+ * path turns it off. The thread and JVM figures are running totals, so the difference between two
+ * entries shows what happened in between.
+ */
+public final class SlowOperationLog {
+
+    private static final int MIN_SAMPLES = 1000;
+    private static final int MAX_ENTRIES_PER_INTERVAL = 100;
+
+    private static final long FLOOR_NANOS = configuredMillis("carshop.slowOpsFloor", 20) * 1_000_000L;
+
+    /**
+     * The fixed threshold, or -1 if it follows a percentile.
+     */
+    private static final long FIXED_NANOS;
+
+    private static final double PERCENTILE;
+
+    static {
+        String configured = System.getProperty("carshop.slowOps", "p99.9").trim();
+        long fixed = -1;
+        double percentile = 99.9;
+        try {
+            if (configured.startsWith("p")) {
+                percentile = Math.min(100, Math.max(50, Double.parseDouble(configured.substring(1))));
+            } else {
+                fixed = (long) (Double.parseDouble(configured) * 1_000_000L);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Unknown slow operation threshold " + configured + ", using p99.9.");
+        }
+        FIXED_NANOS = fixed;
+        PERCENTILE = percentile;
+    }
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss MM/dd/yy");
+
+    private static final AtomicInteger ENTRIES_THIS_INTERVAL = new AtomicInteger();
+    private static final AtomicInteger DROPPED_THIS_INTERVAL = new AtomicInteger();
+
+    private static volatile String logFilePath = System.getProperty("carshop.slowLog", "slow_operations.log");
+
+    private SlowOperationLog() {
+    }
+
+    /**
+     * @return The threshold a new operation starts with.
+     */
+    static long initialThresholdNanos() {
+        return FIXED_NANOS >= 0 ? FIXED_NANOS : FLOOR_NANOS;
+    }
+
+    /**
+     * Changes the file slow operations are appended to.
+     *
+     * @param filePath The path of the slow operation log, or null or empty to stop writing it.
+     */
+    public static void setLogFilePath(String filePath) {
+        logFilePath = filePath;
+    }
+
+    /**
+     * @return The path of the slow operation log, or null or empty if it is turned off.
+     */
+    public static String getLogFilePath() {
+        return logFilePath;
+    }
+
+    /**
+     * Records the duration of an operation and logs the operation if it was slow.
+     *
+     * @param timer The histogram of the operation.
+     * @param startNanos The {@link System#nanoTime()} when the operation started.
+     * @param rows The rows the operation read or wrote, or -1 if not known.
+     * @param bytes The bytes the operation wrote, or -1 if not known.
+     * @param first The first argument worth logging, or null.
+     * @param second The second argument worth logging, or null.
+     * @return The duration in nanoseconds.
+     */
+    public static long finish(LatencyHistogram timer, long startNanos, long rows, long bytes, Object first, Object second) {
+        long nanos = timer.recordSince(startNanos);
+        if (nanos >= timer.getSlowThresholdNanos()) {
+            write(timer, nanos, rows, bytes, first, second);
+        }
+        return nanos;
+    }
+
+    /**
+     * Tells whether a duration counts as slow for an operation, for callers that gather the details
+     * to log only when it does.
+     *
+     * @param timer The histogram of the operation.
+     * @param nanos The duration in nanoseconds.
+     * @return true if the operation should be written with {@link #write}.
+     */
+    public static boolean isSlow(LatencyHistogram timer, long nanos) {
+        return nanos >= timer.getSlowThresholdNanos();
+    }
+
+    /**
+     * Writes a slow operation to the log.
+     *
+     * @param timer The histogram of the operation.
+     * @param nanos The duration in nanoseconds.
+     * @param rows The rows the operation read or wrote, or -1 if not known.
+     * @param bytes The bytes the operation wrote, or -1 if not known.
+     * @param first The first argument worth logging, or null.
+     * @param second The second argument worth logging, or null.
+     */
+    public static void write(LatencyHistogram timer, long nanos, long rows, long bytes, Object first, Object second) {
+        String filePath = logFilePath;
+        if (filePath == null || filePath.isEmpty()) {
+            return;
+        }
+        if (ENTRIES_THIS_INTERVAL.incrementAndGet() > MAX_ENTRIES_PER_INTERVAL) {
+            DROPPED_THIS_INTERVAL.incrementAndGet();
+            return;
+        }
+        StringBuilder entry = new StringBuilder(256);
+        entry.append(LocalDateTime.now().format(TIME)).append(" - ").append(timer.getName())
+                .append(String.format(" took %.1f ms (threshold %.1f ms)", nanos / 1e6, timer.getSlowThresholdNanos() / 1e6));
+        if (first != null || second != null) {
+            entry.append(" args=[").append(first);
+            if (second != null) {
+                entry.append(", ").append(second);
+            }
+            entry.append(']');
+        }
+        if (rows >= 0) {
+            entry.append(" rows=").append(rows);
+        }
+        if (bytes >= 0) {
+            entry.append(" bytes=").append(bytes);
+        }
+        appendThreadState(entry);
+        synchronized (SlowOperationLog.class) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(filePath, true))) {
+                out.println(entry);
+            } catch (IOException e) {
+                System.err.println("An error occurred while writing to the slow operation log: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void appendThreadState(StringBuilder entry) {
+        Thread thread = Thread.currentThread();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        entry.append(" thread=").append(thread.getName());
+        @SuppressWarnings("deprecation") // Thread.threadId() is not available before Java 19
+        ThreadInfo info = threads.getThreadInfo(thread.getId());
+        if (info != null) {
+            entry.append(" blocked=").append(info.getBlockedCount());
+            if (info.getBlockedTime() >= 0) {
+                entry.append('/').append(info.getBlockedTime()).append("ms");
+            }
+            entry.append(" waited=").append(info.getWaitedCount());
+            if (info.getWaitedTime() >= 0) {
+                entry.append('/').append(info.getWaitedTime()).append("ms");
+            }
+        }
+        if (threads.isCurrentThreadCpuTimeSupported()) {
+            entry.append(" cpu=").append(threads.getCurrentThreadCpuTime() / 1_000_000).append("ms");
+        }
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+        Runtime runtime = Runtime.getRuntime();
+        entry.append(" gc=").append(gcCount).append('/').append(gcMillis).append("ms")
+                .append(" heapUsed=").append((runtime.totalMemory() - runtime.freeMemory()) >> 20).append("MB")
+                .append(" threads=").append(threads.getThreadCount());
+    }
+
+    /**
+     * Updates the threshold of an operation from its durations so far. Called by {@link Metrics}
+     * after every interval.
+     *
+     * @param timer The histogram of the operation.
+     * @param buckets The current counts of its buckets.
+     */
+    static void adjust(LatencyHistogram timer, long[] buckets) {
+        if (FIXED_NANOS >= 0) {
+            return;
+        }
+        if (timer.getCount() >= MIN_SAMPLES) {
+            timer.setSlowThresholdNanos(Math.max(FLOOR_NANOS, LatencyHistogram.percentile(buckets, PERCENTILE)));
+        }
+    }
+
+    /**
+     * Starts a new interval of the entry limit, noting how many slow operations were left out.
+     */
+    static void newInterval() {
+        int dropped = DROPPED_THIS_INTERVAL.getAndSet(0);
+        ENTRIES_THIS_INTERVAL.set(0);
+        String filePath = logFilePath;
+        if (dropped > 0 && filePath != null && !filePath.isEmpty()) {
+            synchronized (SlowOperationLog.class) {
+                try (PrintWriter out = new PrintWriter(new FileWriter(filePath, true))) {
+                    out.println(LocalDateTime.now().format(TIME) + " - " + dropped + " more slow operations were not logged");
+                } catch (IOException e) {
+                    System.err.println("An error occurred while writing to the slow operation log: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static long configuredMillis(String property, long defaultMillis) {
+        String configured = System.getProperty(property);
+        if (configured != null) {
+            try {
+                return Math.max(0, Long.parseLong(configured.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("Unknown value " + configured + " for " + property + ", using " + defaultMillis + ".");
+            }
+        }
+        return defaultMillis;
+    }
+}
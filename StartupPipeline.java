@@ -0,0 +1,149 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Loads the shop in parallel at startup, so the first prompt appears as soon as users can log in
+ * instead of after everything was read. The users (and their index), the cars and the tickets are
+ * loaded on separate threads (the tickets on the thread of the cars when there is only one processor);
+ * the admin panel is built once cars and users are ready.
+ * <p>
+ * Every phase is timed from the start of the pipeline. The timings can be read with
+ * {@link #getTimings()}, and the duration of every phase is recorded in the {@link Metrics} timer
+ * {@code startup.<phase>}, with the time until everything was loaded in {@code startup.total}. They are
+ * not written to the log, which holds the actions of users.
+ */
+public final class StartupPipeline {
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, long[]> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final ExecutorService executor;
+
+    private final CompletableFuture<CarManager> cars;
+    private final CompletableFuture<UserManager> users;
+    private final CompletableFuture<AdminPanel> adminPanel;
+
+    private StartupPipeline(String dataDirectory) {
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(3, task -> {
+            Thread thread = new Thread(task, "startup-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // With a single processor a separate ticket thread only competes with the cars for it
+        Executor ticketLoader = Runtime.getRuntime().availableProcessors() > 1
+                ? task -> executor.execute(() -> timed("tickets", task))
+                : task -> timed("tickets", task);
+        this.cars = phase("cars", () -> new CarManager(dataDirectory, CarStore.configuredMode(), ticketLoader));
+        this.users = phase("users", () -> new UserManager(cars, dataDirectory));
+        this.adminPanel = cars.thenCombineAsync(users, (carManager, userManager) ->
+                timed("admin panel", () -> new AdminPanel(carManager, userManager)), executor);
+        adminPanel.whenComplete((panel, failure) -> {
+            executor.shutdown();
+            Metrics.timer("startup.total").recordSince(startNanos);
+        });
+    }
+
+    /**
+     * Starts loading the shop in the background.
+     *
+     * @param dataDirectory The directory holding the CSV files, or null for the working directory.
+     * @return The running pipeline.
+     */
+    public static StartupPipeline start(String dataDirectory) {
+        return new StartupPipeline(dataDirectory);
+    }
+
+    private <T> CompletableFuture<T> phase(String name, Supplier<T> loader) {
+        return CompletableFuture.supplyAsync(() -> timed(name, loader), executor);
+    }
+
+    private <T> T timed(String name, Supplier<T> loader) {
+        long begin = System.nanoTime();
+        try {
+            return loader.get();
+        } finally {
+            long end = System.nanoTime();
+            timings.put(name, new long[]{begin - startNanos, end - startNanos});
+            Metrics.timer("startup." + name.replace(' ', '-')).record(end - begin);
+        }
+    }
+
+    private void timed(String name, Runnable task) {
+        timed(name, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Records that the first prompt was shown, for the startup timings.
+     */
+    public void firstPrompt() {
+        long now = System.nanoTime() - startNanos;
+        if (timings.putIfAbsent("first prompt", new long[]{now, now}) == null) {
+            Metrics.timer("startup.first-prompt").record(now);
+        }
+    }
+
+    /**
+     * Waits until users can log in.
+     *
+     * @return The UserManager.
+     */
+    public UserManager users() {
+        return await(users);
+    }
+
+    /**
+     * Waits until the inventory and tickets are loaded.
+     *
+     * @return The CarManager.
+     */
+    public CarManager cars() {
+        return await(cars);
+    }
+
+    /**
+     * Waits until the admin panel is ready.
+     *
+     * @return The AdminPanel.
+     */
+    public AdminPanel adminPanel() {
+        return await(adminPanel);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the phases that finished so far with their start and end times in milliseconds since
+     * the pipeline started, in the order they finished.
+     *
+     * @return The phase names mapped to {start, end} in milliseconds.
+     */
+    public Map<String, double[]> getTimings() {
+        Map<String, double[]> result = new LinkedHashMap<>();
+        synchronized (timings) {
+            for (Map.Entry<String, long[]> timing : timings.entrySet()) {
+                result.put(timing.getKey(), new double[]{timing.getValue()[0] / 1e6, timing.getValue()[1] / 1e6});
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps repeated text values, such as car types or colors, to compact int codes and back.
+ * Every distinct value is stored once, so equal values share one canonical String instance and can
+ * be compared by code. Codes are assigned in the order values are first seen, starting at 0.
+ * Each value also has a folded code shared by all values that differ only in case, for
+ * case-insensitive comparisons.
+ * <p>
+ * The shared tables below are used for the low-cardinality fields of cars and tickets, so a field
+ * read from the car CSV and the same field read from the ticket CSV have the same code.
+ * Lookups are safe from any thread; new codes are assigned under the table's lock.
+ */
+public final class SymbolTable {
+
+    /**
+     * The code returned by {@link #lookup} for a value that is not in the table.
+     */
+    public static final int NO_CODE = -1;
+
+    /** The shared table of car types. */
+    public static final SymbolTable TYPES = new SymbolTable();
+    /** The shared table of car models. */
+    public static final SymbolTable MODELS = new SymbolTable();
+    /** The shared table of car conditions. */
+    public static final SymbolTable CONDITIONS = new SymbolTable();
+    /** The shared table of car colors. */
+    public static final SymbolTable COLORS = new SymbolTable();
+    /** The shared table of transmissions. */
+    public static final SymbolTable TRANSMISSIONS = new SymbolTable();
+    /** The shared table of fuel types. */
+    public static final SymbolTable FUEL_TYPES = new SymbolTable();
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private final Map<String, Integer> foldedCodes = new ConcurrentHashMap<>();
+    private volatile String[] symbols = new String[16];
+    private volatile int[] folded = new int[16];
+    private int size = 0;
+
+    /**
+     * Returns the code of a value, adding the value to the table if needed.
+     *
+     * @param value The value to encode. Null is stored as the empty string.
+     * @return The code of the value.
+     */
+    public int code(String value) {
+        if (value == null) {
+            value = "";
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    private synchronized int add(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int code = size;
+        String[] current = symbols;
+        int[] currentFolded = folded;
+        if (code == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            currentFolded = Arrays.copyOf(currentFolded, currentFolded.length * 2);
+        }
+        current[code] = value;
+        currentFolded[code] = foldedCodes.computeIfAbsent(value.toLowerCase(Locale.ROOT), key -> foldedCodes.size());
+        folded = currentFolded;
+        symbols = current; // Publish the symbol before the code can be seen
+        size = code + 1;
+        codes.put(value, code);
+        return code;
+    }
+
+    /**
+     * Returns the code of a value without adding it.
+     *
+     * @param value The value to look up.
+     * @return The code of the value, or {@link #NO_CODE} if it is not in the table.
+     */
+    public int lookup(String value) {
+        Integer code = value == null ? null : codes.get(value);
+        return code != null ? code : NO_CODE;
+    }
+
+    /**
+     * Returns the case-insensitive code of a value without adding it.
+     *
+     * @param value The value to look up, in any case.
+     * @return The folded code shared by all values equal to it ignoring case, or {@link #NO_CODE}
+     *         if no such value is in the table.
+     */
+    public int lookupFolded(String value) {
+        Integer code = value == null ? null : foldedCodes.get(value.toLowerCase(Locale.ROOT));
+        return code != null ? code : NO_CODE;
+    }
+
+    /**
+     * Returns the case-insensitive code of a code.
+     *
+     * @param code A code returned by this table.
+     * @return The folded code shared by all values equal to this one ignoring case.
+     */
+    public int foldedCode(int code) {
+        return folded[code];
+    }
+
+    /**
+     * Returns the value of a code.
+     *
+     * @param code A code returned by this table.
+     * @return The canonical value for the code.
+     */
+    public String symbol(int code) {
+        return symbols[code];
+    }
+
+    /**
+     * Returns the single shared instance of a value.
+     *
+     * @param value The value to canonicalize.
+     * @return The canonical String equal to the value.
+     */
+    public String canonical(String value) {
+        return symbol(code(value));
+    }
+
+    /**
+     * @return The number of distinct values in the table.
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates time-ordered ticket IDs in the UUID version 7 layout: the first 48 bits are the Unix time
+ * in milliseconds, so IDs written as text sort in issue order and a time range can be found from the
+ * IDs alone (see {@link #lowerBound} and {@link #upperBound}).
+ * <p>
+ * Every thread keeps its own state, so generating an ID takes no lock and does not touch
+ * {@code SecureRandom}. The 26 bits after the timestamp count the IDs a thread made in the same
+ * millisecond, which keeps the IDs of one thread strictly increasing even if the clock goes back. The
+ * last 48 bits are a random number chosen once per thread, which keeps the IDs of different threads
+ * apart. IDs of different threads within the same millisecond are unique but not ordered.
+ */
+public final class TicketIdGenerator {
+
+    /**
+     * The number of bits of the per-millisecond counter.
+     */
+    private static final int COUNTER_BITS = 26;
+    private static final int MAX_COUNTER = (1 << COUNTER_BITS) - 1;
+
+    /**
+     * The number of counter bits stored after the version, in the "rand_a" field.
+     */
+    private static final int HIGH_COUNTER_BITS = 12;
+    private static final int LOW_COUNTER_BITS = COUNTER_BITS - HIGH_COUNTER_BITS;
+
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+    private static final long NODE_MASK = (1L << 48) - 1;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private TicketIdGenerator() {
+    }
+
+    /**
+     * The generator state of one thread.
+     */
+    private static final class State {
+        private final long node = ThreadLocalRandom.current().nextLong() & NODE_MASK;
+        private long lastMillis = Long.MIN_VALUE;
+        private int counter = 0;
+    }
+
+    /**
+     * Generates the next ticket ID.
+     *
+     * @return A new ID in the usual UUID text form, e.g. {@code 0190f3a2-7c4d-7000-8a1b-2c3d4e5f6a7b}.
+     */
+    public static String next() {
+        State state = STATE.get();
+        long millis = System.currentTimeMillis();
+        if (millis > state.lastMillis) {
+            state.lastMillis = millis;
+            state.counter = 0;
+        } else if (state.counter < MAX_COUNTER) {
+            state.counter++; // Same millisecond, or the clock went back
+        } else {
+            state.lastMillis++; // Counter exhausted, borrow the next millisecond
+            state.counter = 0;
+        }
+        return toUUID(state.lastMillis, state.counter, state.node).toString();
+    }
+
+    /**
+     * Builds the ID of a given time, counter and node, for example to generate reproducible test data.
+     *
+     * @param millis The Unix time in milliseconds.
+     * @param counter The number of earlier IDs of the same node in that millisecond.
+     * @param node A number identifying the generator; only its lowest 48 bits are used.
+     * @return The ID in the usual UUID text form.
+     */
+    public static String idOf(long millis, int counter, long node) {
+        return toUUID(millis, counter & MAX_COUNTER, node & NODE_MASK).toString();
+    }
+
+    private static UUID toUUID(long millis, int counter, long node) {
+        long mostSigBits = (millis << 16) | VERSION | (counter >>> LOW_COUNTER_BITS);
+        long leastSigBits = VARIANT | ((long) (counter & ((1 << LOW_COUNTER_BITS) - 1)) << 48) | node;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Reads the time a ticket ID was generated.
+     *
+     * @param id A ticket ID.
+     * @return The Unix time in milliseconds, or -1 if the ID is not a time-ordered ID (for example
+     *         a random ID of an older ticket).
+     */
+    public static long timestampOf(String id) {
+        if (id == null || id.length() != 36 || id.charAt(14) != '7') {
+            return -1;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.version() == 7 ? uuid.getMostSignificantBits() >>> 16 : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the smallest ID that can be generated at a given time. Every ID generated at or after
+     * that time is greater or equal when compared as text.
+     *
+     * @param millis A Unix time in milliseconds.
+     * @return The smallest ID of that millisecond.
+     */
+    public static String lowerBound(long millis) {
+        return new UUID((millis << 16) | VERSION, VARIANT).toString();
+    }
+
+    /**
+     * Returns the greatest ID that can be generated at a given time. Every ID generated at or before
+     * that time is smaller or equal when compared as text.
+     *
+     * @param millis A Unix time in milliseconds.
+     * @return The greatest ID of that millisecond.
+     */
+    public static String upperBound(long millis) {
+        return new UUID((millis << 16) | VERSION | 0xFFFL, 0xBFFFFFFFFFFFFFFFL).toString();
+    }
+}
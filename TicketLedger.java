@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds the issued tickets of a {@link CarManager} for revenue queries. Each ticket row keeps the
+ * layout of issued_tickets.csv (car ID, username, car type, model, year, color, price, unique ID and,
+ * for newer tickets, the amount charged), but
+ * car type, model and color are replaced by the canonical instances of the shared {@link SymbolTable}s.
+ * The case-insensitive type code and the price of every ticket are decoded once when the ticket is
+ * added, so revenue queries compare ints and add doubles instead of comparing and parsing Strings.
+ */
+public class TicketLedger {
+
+    private final List<String[]> rows = new ArrayList<>();
+    private int[] typeCodes = new int[16];
+    private double[] prices = new double[16];
+
+    /**
+     * Creates a ledger holding the given ticket rows.
+     *
+     * @param tickets The ticket rows, as read from the ticket CSV file.
+     */
+    public TicketLedger(List<String[]> tickets) {
+        addAll(tickets);
+    }
+
+    /**
+     * Creates an empty ledger for subclasses that keep tickets elsewhere.
+     */
+    protected TicketLedger() {
+    }
+
+    /**
+     * Adds a ticket row. Blank rows, such as the lines of tickets a {@link MappedTicketLedger}
+     * deleted, are skipped.
+     *
+     * @param ticket The ticket row in the ticket CSV layout.
+     */
+    public synchronized void add(String[] ticket) {
+        if (ticket.length == 1 && ticket[0].isBlank()) {
+            return;
+        }
+        int index = rows.size();
+        if (index == typeCodes.length) {
+            typeCodes = Arrays.copyOf(typeCodes, index * 2);
+            prices = Arrays.copyOf(prices, index * 2);
+        }
+        if (ticket.length > 2) {
+            int typeCode = SymbolTable.TYPES.code(ticket[2]);
+            ticket[2] = SymbolTable.TYPES.symbol(typeCode);
+            typeCodes[index] = SymbolTable.TYPES.foldedCode(typeCode);
+        } else {
+            typeCodes[index] = SymbolTable.NO_CODE;
+        }
+        if (ticket.length > 3) {
+            ticket[3] = SymbolTable.MODELS.canonical(ticket[3]);
+        }
+        if (ticket.length > 5) {
+            ticket[5] = SymbolTable.COLORS.canonical(ticket[5]);
+        }
+        prices[index] = parsePrice(ticket);
+        rows.add(ticket);
+    }
+
+    /**
+     * Adds several ticket rows.
+     *
+     * @param tickets The ticket rows in the ticket CSV layout.
+     */
+    public synchronized void addAll(List<String[]> tickets) {
+        for (String[] ticket : tickets) {
+            add(ticket);
+        }
+    }
+
+    /**
+     * Deletes the first ticket of a car and a username from the ticket file, by rewriting the file
+     * without it, and from this ledger.
+     *
+     * @param filePath The path of the ticket CSV file.
+     * @param carId The ID of the car.
+     * @param username The username of the ticket holder, compared ignoring case.
+     * @return The row of the deleted ticket as it was in the file, or null if no ticket was deleted.
+     * @throws IOException If the ticket file could not be read or written.
+     */
+    public synchronized String[] deleteTicket(String filePath, int carId, String username) throws IOException {
+        String[] deleted = IssueTicket.deleteTicketRow(filePath, carId, username);
+        if (deleted != null) {
+            remove(carId, username);
+        }
+        return deleted;
+    }
+
+    /**
+     * Removes the first ticket of a car and a username, the one {@link IssueTicket#deleteTicket}
+     * removes from the ticket file. The username is compared ignoring case.
+     *
+     * @param carId The ID of the car.
+     * @param username The username of the ticket holder.
+     * @return true if a ticket was removed.
+     */
+    public synchronized boolean remove(int carId, String username) {
+        String idString = String.valueOf(carId);
+        for (int i = 0; i < rows.size(); i++) {
+            String[] ticket = rows.get(i);
+            if (ticket.length > 1 && ticket[0].trim().equals(idString) && ticket[1].trim().equalsIgnoreCase(username)) {
+                rows.remove(i);
+                System.arraycopy(typeCodes, i + 1, typeCodes, i, rows.size() - i);
+                System.arraycopy(prices, i + 1, prices, i, rows.size() - i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of tickets in the ledger.
+     */
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    /**
+     * @param index The position of the ticket.
+     * @return The ticket row at that position.
+     */
+    public synchronized String[] get(int index) {
+        return rows.get(index);
+    }
+
+    /**
+     * Calculates the total revenue of the tickets for a car type, ignoring case.
+     *
+     * @param type The car type.
+     * @return Total revenue for the given car type.
+     */
+    public synchronized double revenueByType(String type) {
+        int code = SymbolTable.TYPES.lookupFolded(type);
+        if (code == SymbolTable.NO_CODE) {
+            return 0.0;
+        }
+        double totalRevenue = 0.0;
+        for (int i = 0; i < rows.size(); i++) {
+            if (typeCodes[i] == code) {
+                totalRevenue += prices[i];
+            }
+        }
+        return totalRevenue;
+    }
+
+    /**
+     * Calculates the total revenue of the tickets for a car ID.
+     *
+     * @param id The car ID.
+     * @return Total revenue for the given car ID.
+     */
+    public synchronized double revenueById(String id) {
+        double totalRevenue = 0.0;
+        for (int i = 0; i < rows.size(); i++) {
+            String[] ticket = rows.get(i);
+            if (ticket.length > 6 && ticket[0].equals(id)) {
+                totalRevenue += prices[i];
+            }
+        }
+        return totalRevenue;
+    }
+
+    /**
+     * Reads the price column of a ticket row. Rows without a valid price count as 0.
+     */
+    private static double parsePrice(String[] ticket) {
+        if (ticket.length <= 6) {
+            return 0.0;
+        }
+        try {
+            return Double.parseDouble(ticket[6]);
+        } catch (NumberFormatException e) {
+            System.out.println("Error parsing ticket price: " + e.getMessage());
+            return 0.0;
+        }
+    }
+}
@@ -1,6 +1,3 @@
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Represents a user in the car shop application.
  */
@@ -78,24 +75,7 @@ public class User extends Person implements ICSVSerializable {
      * @return A String array representing the user's information.
      */
     public String[] ArrayListToCSV() {
-        // Map the values to their respective headers
-        Map<String, String> userValues = new HashMap<>();
-        userValues.put("ID", String.valueOf(ID));
-        userValues.put("First Name", firstName);
-        userValues.put("Last Name", lastName);
-        userValues.put("Money Available", String.format("%.2f", moneyAvailable));
-        userValues.put("Cars Purchased", String.valueOf(carsPurchased));
-        userValues.put("MinerCars Membership", String.valueOf(minerCarsMembership));
-        userValues.put("Username", username);
-        userValues.put("Password", password);
-
-        // Create an array matching the order of the header
-        String[] csvValues = new String[loadAllUsers.header.length];
-        for (int i = 0; i < loadAllUsers.header.length; i++) {
-            csvValues[i] = userValues.getOrDefault(loadAllUsers.header[i], "");
-        }
-
-        return csvValues;
+        return UserCSVSerializer.forHeader(loadAllUsers.header).toArray(this);
     }
 
     /**
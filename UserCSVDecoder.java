@@ -0,0 +1,122 @@
+import java.util.Arrays;
+
+/**
+ * Reads users from rows of the user CSV file. The header is resolved once into the column of each user
+ * field, so decoding a row reads its cells by position and passes them straight to the user constructor,
+ * without building a map of the row.
+ * <p>
+ * As before, an empty cell is read as "false", and fields whose column is missing from the header get
+ * their defaults: 0 for numbers, "Unknown" for text and false for the membership.
+ */
+public final class UserCSVDecoder {
+
+    private static final int ID = 0;
+    private static final int FIRST_NAME = 1;
+    private static final int LAST_NAME = 2;
+    private static final int MONEY_AVAILABLE = 3;
+    private static final int CARS_PURCHASED = 4;
+    private static final int MEMBERSHIP = 5;
+    private static final int USERNAME = 6;
+    private static final int PASSWORD = 7;
+    private static final int FIELD_COUNT = 8;
+
+    /**
+     * Marks a field whose column is not in the header.
+     */
+    private static final int ABSENT = -1;
+
+    /**
+     * The column of each field, or {@link #ABSENT}.
+     */
+    private final int[] columns = new int[FIELD_COUNT];
+
+    /**
+     * Resolves the columns of a header. When a column name repeats, the last one is used.
+     *
+     * @param header The column names of the user CSV file.
+     */
+    public UserCSVDecoder(String[] header) {
+        Arrays.fill(columns, ABSENT);
+        for (int i = 0; i < header.length; i++) {
+            int field = fieldOf(header[i]);
+            if (field != ABSENT) {
+                columns[field] = i;
+            }
+        }
+    }
+
+    private static int fieldOf(String column) {
+        switch (column) {
+            case "ID": return ID;
+            case "First Name": return FIRST_NAME;
+            case "Last Name": return LAST_NAME;
+            case "Money Available": return MONEY_AVAILABLE;
+            case "Cars Purchased": return CARS_PURCHASED;
+            case "MinerCars Membership": return MEMBERSHIP;
+            case "Username": return USERNAME;
+            case "Password": return PASSWORD;
+            default: return ABSENT;
+        }
+    }
+
+    /**
+     * Creates the user described by a row.
+     *
+     * @param row The cells of the row.
+     * @return The new user.
+     */
+    public User decode(String[] row) {
+        int id = parseInt(cell(row, ID, "0"));
+        float moneyAvailable = parseFloat(cell(row, MONEY_AVAILABLE, "0.0"));
+        int carsPurchased = parseInt(cell(row, CARS_PURCHASED, "0"));
+        boolean minerCarsMembership = Boolean.parseBoolean(cell(row, MEMBERSHIP, "false"));
+
+        return new User(id, cell(row, FIRST_NAME, "Unknown"), cell(row, LAST_NAME, "Unknown"), moneyAvailable,
+                carsPurchased, minerCarsMembership, cell(row, USERNAME, "Unknown"), cell(row, PASSWORD, "Unknown"));
+    }
+
+    /**
+     * Reads only the username of a row, as {@link #decode} would set it.
+     *
+     * @param row The cells of the row.
+     * @return The username of the row.
+     */
+    public String username(String[] row) {
+        return cell(row, USERNAME, "Unknown");
+    }
+
+    /**
+     * Reads the trimmed cell of a field, "false" when it is empty, or the default when the header
+     * has no column for it.
+     */
+    private String cell(String[] row, int field, String defaultValue) {
+        int column = columns[field];
+        if (column == ABSENT) {
+            return defaultValue;
+        }
+        String value = column < row.length ? row[column].trim() : "";
+        return value.isEmpty() ? "false" : value;
+    }
+
+    /**
+     * Parses an integer, returning 0 if the value is not a number.
+     */
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parses a float, returning 0.0f if the value is not a number.
+     */
+    private static float parseFloat(String value) {
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return 0.0f;
+        }
+    }
+}
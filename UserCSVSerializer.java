@@ -0,0 +1,108 @@
+/**
+ * Writes users as rows of the user CSV file. The header is compiled once into the field of each
+ * column, so writing a row is a loop over ints with no map lookups and no temporary Strings.
+ */
+public final class UserCSVSerializer {
+
+    private static final int UNKNOWN = -1;
+    private static final int ID = 0;
+    private static final int FIRST_NAME = 1;
+    private static final int LAST_NAME = 2;
+    private static final int MONEY_AVAILABLE = 3;
+    private static final int CARS_PURCHASED = 4;
+    private static final int MEMBERSHIP = 5;
+    private static final int USERNAME = 6;
+    private static final int PASSWORD = 7;
+
+    /**
+     * The serializer compiled for the last header used, reused while the header does not change.
+     */
+    private static volatile UserCSVSerializer cached;
+
+    private final String[] header;
+    private final int[] fields;
+
+    private UserCSVSerializer(String[] header) {
+        this.header = header;
+        this.fields = new int[header.length];
+        for (int i = 0; i < header.length; i++) {
+            fields[i] = fieldOf(header[i]);
+        }
+    }
+
+    /**
+     * Returns the serializer for a header, compiling it only when the header differs from the last one.
+     *
+     * @param header The column names of the user CSV file, such as {@link loadAllUsers#header}.
+     * @return The serializer for that header.
+     */
+    public static UserCSVSerializer forHeader(String[] header) {
+        UserCSVSerializer serializer = cached;
+        if (serializer == null || serializer.header != header) {
+            serializer = new UserCSVSerializer(header);
+            cached = serializer;
+        }
+        return serializer;
+    }
+
+    private static int fieldOf(String column) {
+        switch (column) {
+            case "ID": return ID;
+            case "First Name": return FIRST_NAME;
+            case "Last Name": return LAST_NAME;
+            case "Money Available": return MONEY_AVAILABLE;
+            case "Cars Purchased": return CARS_PURCHASED;
+            case "MinerCars Membership": return MEMBERSHIP;
+            case "Username": return USERNAME;
+            case "Password": return PASSWORD;
+            default: return UNKNOWN;
+        }
+    }
+
+    /**
+     * Writes a user as one row. Columns the serializer does not know are left empty.
+     *
+     * @param user The user to write.
+     * @param out The writer receiving the row.
+     */
+    public void write(User user, CSVRowWriter out) {
+        for (int field : fields) {
+            switch (field) {
+                case ID: out.integer(user.getID()); break;
+                case FIRST_NAME: out.text(user.getFirstName()); break;
+                case LAST_NAME: out.text(user.getLastName()); break;
+                case MONEY_AVAILABLE: out.decimal2(user.getMoneyAvailable()); break;
+                case CARS_PURCHASED: out.integer(user.getCarsPurchased()); break;
+                case MEMBERSHIP: out.bool(user.isMinerCarsMembership(), "true", "false"); break;
+                case USERNAME: out.text(user.getUsername()); break;
+                case PASSWORD: out.text(user.getPassword()); break;
+                default: out.text(""); break;
+            }
+        }
+        out.endRow();
+    }
+
+    /**
+     * Converts a user into the String values of one row, in header order.
+     *
+     * @param user The user to convert.
+     * @return The values of the row.
+     */
+    public String[] toArray(User user) {
+        String[] values = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            switch (fields[i]) {
+                case ID: values[i] = String.valueOf(user.getID()); break;
+                case FIRST_NAME: values[i] = user.getFirstName(); break;
+                case LAST_NAME: values[i] = user.getLastName(); break;
+                case MONEY_AVAILABLE: values[i] = String.format("%.2f", user.getMoneyAvailable()); break;
+                case CARS_PURCHASED: values[i] = String.valueOf(user.getCarsPurchased()); break;
+                case MEMBERSHIP: values[i] = String.valueOf(user.isMinerCarsMembership()); break;
+                case USERNAME: values[i] = user.getUsername(); break;
+                case PASSWORD: values[i] = user.getPassword(); break;
+                default: values[i] = ""; break;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.File;
+import java.util.function.LongPredicate;
+
+/**
+ * A hash table from usernames to the byte offsets of their rows in the user CSV file, kept in a
+ * memory-mapped {@link MappedRecordFile} next to the CSV file. The table uses open addressing with
+ * linear probing; a slot holds the hash of the username and the offset of the row, and the username
+ * itself is only read from the CSV file, so the index stays small and takes no heap.
+ * <p>
+ * The first record holds the number of entries and the slots follow. Rows of the same username are
+ * found in the order they were added, which is the order of the file. The index is not thread-safe;
+ * {@link UserStore} calls it while holding its own lock.
+ */
+public final class UserIndex {
+
+    private static final int MAGIC = 0x55494458; // "UIDX"
+
+    private static final int HASH = 0;
+    private static final int OFFSET = 8;
+    private static final int RECORD_SIZE = 16;
+
+    /**
+     * The record holding the number of entries, stored in its hash field.
+     */
+    private static final int META = 0;
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private final MappedRecordFile records;
+    private int mask;
+
+    private UserIndex(MappedRecordFile records) {
+        this.records = records;
+        this.mask = Math.max(records.count() - 1, 0) - 1;
+    }
+
+    /**
+     * Opens an index file, creating an empty one if needed.
+     *
+     * @param file The index file.
+     * @return The opened index, which may still hold the entries of an earlier run.
+     * @throws java.io.UncheckedIOException If the file cannot be opened.
+     */
+    public static UserIndex open(File file) {
+        MappedRecordFile records = MappedRecordFile.open(file, MAGIC, RECORD_SIZE);
+        records.mapCommitted();
+        int slots = records.count() - 1;
+        if (slots > 0 && Integer.bitCount(slots) != 1) {
+            records.clear(); // Not a table this class wrote
+        }
+        return new UserIndex(records);
+    }
+
+    /**
+     * Checks whether the index can be used for a CSV file without reading the file.
+     *
+     * @param source The user CSV file.
+     * @return true if the file has not changed since the index was last stamped.
+     */
+    public boolean matches(File source) {
+        return mask > 0 && records.matches(source, 0);
+    }
+
+    /**
+     * Records that the index now matches the CSV file.
+     *
+     * @param source The user CSV file.
+     */
+    public void stamp(File source) {
+        records.stamp(source, 0);
+    }
+
+    /**
+     * Empties the index, sizing it for the given number of entries.
+     *
+     * @param expectedEntries The number of entries about to be added.
+     */
+    public void reset(int expectedEntries) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedEntries * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        records.clear();
+        for (int i = 0; i <= capacity; i++) {
+            int index = records.allocate();
+            records.putLong(index, HASH, 0L);
+            records.putLong(index, OFFSET, 0L);
+            records.commit(index + 1);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    public int size() {
+        return mask > 0 ? records.getInt(META, HASH) : 0;
+    }
+
+    /**
+     * @return true once the table is half full; it should then be rebuilt with {@link #reset} sized
+     *         for more entries.
+     */
+    public boolean isCrowded() {
+        return size() * 2L > mask;
+    }
+
+    /**
+     * Adds the row of a username. A username may be added several times; all its rows are kept.
+     *
+     * @param username The username of the row.
+     * @param offset The byte offset of the row in the CSV file.
+     */
+    public void put(String username, long offset) {
+        int hash = hash(username);
+        int slot = hash & mask;
+        while (records.getLong(slot + 1, OFFSET) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        records.putInt(slot + 1, HASH, hash);
+        records.putLong(slot + 1, OFFSET, offset + 1); // 0 marks an empty slot
+        records.putInt(META, HASH, records.getInt(META, HASH) + 1);
+    }
+
+    /**
+     * Visits the offsets of the rows that may belong to a username, in file order, until the visitor
+     * returns true. Rows of other usernames with the same hash are visited too, so the visitor must
+     * check the row.
+     *
+     * @param username The username to look for.
+     * @param visitor Receives the offsets and returns true to stop.
+     * @return true if the visitor stopped the search.
+     */
+    public boolean candidates(String username, LongPredicate visitor) {
+        if (mask <= 0) {
+            return false;
+        }
+        int hash = hash(username);
+        int slot = hash & mask;
+        long stored;
+        while ((stored = records.getLong(slot + 1, OFFSET)) != 0) {
+            if (records.getInt(slot + 1, HASH) == hash && visitor.test(stored - 1)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Writes changed slots to the storage device.
+     */
+    public void force() {
+        records.force();
+    }
+
+    /**
+     * Spreads the bits of the String hash, so usernames with a common prefix do not crowd together.
+     */
+    private static int hash(String username) {
+        int h = username.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
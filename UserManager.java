@@ -1,5 +1,6 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 
 /**
@@ -8,80 +9,246 @@ import java.util.List;
  */
 public class UserManager {
 	/**
-	 * A list of users managed by this class. T
+	 * The name of the user CSV file inside a data directory.
 	 */
-	private List<User> users;
+	public static final String USER_FILE = "user_data_part2.csv";
+
+	/**
+	 * The users managed by this class. Users are read from the user CSV file when they are first
+	 * asked for and kept in a bounded cache.
+	 */
+	private final UserStore users;
 
 	/**
 	 * A temporary session token that stores current user session details. This token is used to maintain session
-	 * state across different operations within the system
+	 * state across different operations within the system. Its last element is the token of the session
+	 * in {@link #sessions}, not the password. Every thread has its own, so users logging in on
+	 * different threads at the same time do not overwrite each other's session.
+	 */
+	private final ThreadLocal<String[]> tempToken = new ThreadLocal<>();
+
+	/**
+	 * Checks passwords on a bounded pool of threads, so slow password hashing cannot starve purchases.
+	 * Shared by all UserManagers.
 	 */
-	private String[] tempToken = null;
+	private static final PasswordVerifier VERIFIER = PasswordVerifier.configured();
 
 	/**
-	 * An instance of CarManager used to handle car-related operations.
+	 * The sessions of users that logged in, so they are not verified again on every request.
 	 */
-	private CarManager carManager;
+	private final SessionCache sessions = new SessionCache(1024, 30 * 60 * 1000L);
+
+	/**
+	 * The source of logins that do not name one, such as the console of this kiosk, from
+	 * {@code -Dcarshop.terminal}. Every login at the kiosk shares its limit in the {@link LoginThrottle}.
+	 */
+	private static final String DEFAULT_SOURCE = System.getProperty("carshop.terminal", "console");
+
+	private static final LatencyHistogram LOGIN_TIMER = Metrics.timer("authenticateUser");
+	private static final LatencyHistogram RETURN_TIMER = Metrics.timer("returnCar");
+	private static final LatencyHistogram SAVE_TIMER = Metrics.timer("csv.saveUsers");
+	private static final LatencyHistogram FIND_TIMER = Metrics.timer("findUser");
+	private static final LatencyHistogram LOGOUT_TIMER = Metrics.timer("logout");
+	private static final LatencyHistogram ADD_TIMER = Metrics.timer("addUser");
+	private static final LatencyHistogram UPDATE_TIMER = Metrics.timer("updateUser");
+	private static final LongAdder FAILED_LOGINS = Metrics.counter("login.failed");
+
+	/**
+	 * Limits login attempts per username and per source, kept in a file so restarts do not reset it.
+	 */
+	private final LoginThrottle throttle;
+
+	/**
+	 * The CarManager used to handle car-related operations. It may still be loading while users
+	 * log in; operations that need it wait for it.
+	 */
+	private final CompletableFuture<CarManager> carManager;
 
 
     /**
      * Constructs a UserManager with reference to a CarManager.
-     * Loads all user data from a CSV file upon instantiation.
+     * Opens the user CSV file in the working directory; users are read from it as they are needed.
      *
      * @param carManager The CarManager to be used for car-related operations linked with users.
      */
     public UserManager(CarManager carManager) {
-        this.users = loadAllUsers.loadUsersFromCSV();
+        this(carManager, null);
+    }
+
+    /**
+     * Constructs a UserManager whose user CSV file lives in the given directory.
+     *
+     * @param carManager The CarManager to be used for car-related operations linked with users.
+     * @param dataDirectory The directory holding user_data_part2.csv, or null for the working directory.
+     */
+    public UserManager(CarManager carManager, String dataDirectory) {
+        this(CompletableFuture.completedFuture(carManager), dataDirectory);
+    }
+
+    /**
+     * Constructs a UserManager for a CarManager that is still being loaded, so users can log in
+     * before the inventory is ready.
+     *
+     * @param carManager The CarManager being loaded.
+     * @param dataDirectory The directory holding user_data_part2.csv, or null for the working directory.
+     */
+    public UserManager(CompletableFuture<CarManager> carManager, String dataDirectory) {
+        this.users = UserStore.open(CarManager.dataFile(dataDirectory, USER_FILE), UserStore.configuredCacheSize());
+        this.throttle = LoginThrottle.open(CarManager.dataFile(dataDirectory, LoginThrottle.THROTTLE_FILE));
         this.carManager = carManager;
     }
 
 
     /**
-     * Authenticates a user and initializes their session token.
+     * Authenticates a user logging in at this kiosk and initializes their session token.
+     *
      * @param username The username of the user.
      * @param password The password of the user.
      * @return true if authentication is successful, false otherwise.
      */
     public boolean authenticateUser(String username, String password) {
-        for (User user : users) {
-            if (user.getUsername().equals(username) && user.getPassword().equals(password)) {
-                // Initialize the tempToken with user details
-                tempToken = new String[]{
-                        String.valueOf(user.getID()), 
-                        user.getFirstName(), 
-                        user.getLastName(), 
-                        String.valueOf(user.getMoneyAvailable()), 
-                        String.valueOf(user.getCarsPurchased()), 
-                        String.valueOf(user.isMinerCarsMembership()), 
-                        user.getUsername(), 
-                        user.getPassword()
-                };
-                return true;
+        return authenticateUser(username, password, DEFAULT_SOURCE);
+    }
+
+    /**
+     * Authenticates a user logging in from the given source and initializes their session token.
+     * Attempts beyond the limits of the {@link LoginThrottle} for the username or the source are
+     * rejected before any user data is read. The password is checked against its salted hash on the
+     * verifier pool, unless the user has a fresh session opened with the same password. A user whose
+     * row still holds a plain password gets it replaced by a hash, which is written with the next
+     * save of the users.
+     *
+     * @param username The username of the user.
+     * @param password The password of the user.
+     * @param source The terminal or address the login comes from.
+     * @return true if authentication is successful, false otherwise.
+     */
+    public boolean authenticateUser(String username, String password, String source) {
+        long start = System.nanoTime();
+        ShopEvents.Authentication event = new ShopEvents.Authentication();
+        event.begin();
+        boolean authenticated = false;
+        try {
+            authenticated = authenticateUserUntimed(username, password, source);
+            return authenticated;
+        } finally {
+            SlowOperationLog.finish(LOGIN_TIMER, start, -1, -1, username, source); // Never the password
+            if (!authenticated) {
+                FAILED_LOGINS.increment();
+            }
+            if (event.shouldCommit()) {
+                event.username = username;
+                event.source = source;
+                event.authenticated = authenticated;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean authenticateUserUntimed(String username, String password, String source) {
+        long wait = throttle.acquire(username, source);
+        if (wait > 0) {
+            System.out.println("Too many login attempts. Please try again in " + ((wait + 999) / 1000) + " seconds.");
+            return false;
+        }
+        User user = users.find(username);
+        if (user == null) {
+            return false;
+        }
+        String stored = user.getPassword();
+        if (!sessions.verify(username, password, stored)) {
+            String kept = VERIFIER.verify(password, stored);
+            if (kept == null) {
+                return false;
             }
+            if (!kept.equals(stored)) {
+                users.update(username, migrated -> { // Migrated to a hash
+                    migrated.setPassword(kept);
+                    return true;
+                });
+                stored = kept;
+            }
+        }
+        // Initialize the tempToken with user details
+        tempToken.set(new String[]{
+                String.valueOf(user.getID()), 
+                user.getFirstName(), 
+                user.getLastName(), 
+                String.valueOf(user.getMoneyAvailable()), 
+                String.valueOf(user.getCarsPurchased()), 
+                String.valueOf(user.isMinerCarsMembership()), 
+                user.getUsername(), 
+                sessions.open(username, password, stored)
+        });
+        throttle.release(username);
+        return true;
+    }
+
+    /**
+     * Finds the user of a session opened by {@link #authenticateUser}, without checking the password again.
+     *
+     * @param sessionToken The session token, from {@link #getSessionToken()}.
+     * @return The user, or null if the session does not exist or expired.
+     */
+    public User findUserBySession(String sessionToken) {
+        long start = System.nanoTime();
+        User result = null;
+        try {
+            result = findUserBySessionUntimed(sessionToken);
+            return result;
+        } finally {
+            SlowOperationLog.finish(FIND_TIMER, start, -1, -1, result == null ? null : result.getUsername(), null);
         }
-        return false;
+    }
+
+    private User findUserBySessionUntimed(String sessionToken) {
+        String username = sessions.usernameOf(sessionToken);
+        return username == null ? null : users.find(username);
     }
 
     /**
-     * Gets the current session token.
+     * Gets the session token of the user logged in on the calling thread.
      * @return The current session token if available; null otherwise.
      */
     public String[] getTempToken() {
-        return tempToken;
+        return tempToken.get();
     }
 
     /**
-     * Clears the session token when the user logs out or the session ends.
+     * Gets the token of the session opened by the last login on the calling thread, to find the
+     * user again with {@link #findUserBySession}.
+     * @return The session token, or null if nobody is logged in on this thread.
+     */
+    public String getSessionToken() {
+        String[] token = tempToken.get();
+        return token == null ? null : token[7];
+    }
+
+    /**
+     * Clears the session token of the calling thread when the user logs out or the session ends.
      */
     public void clearTempToken() {
-        tempToken = null;
+        tempToken.remove();
     }
     
     /**
-     * Logs out the current user by clearing their session token.
+     * Logs out the user of the calling thread by clearing their session token.
      */
     public void logout() {
-        System.out.println("User " + (tempToken != null ? tempToken[6] : "Unknown") + " signed out.");
+        long start = System.nanoTime();
+        try {
+            logoutUntimed();
+        } finally {
+            SlowOperationLog.finish(LOGOUT_TIMER, start, -1, -1, null, null);
+        }
+    }
+
+    private void logoutUntimed() {
+        String[] token = tempToken.get();
+        System.out.println("User " + (token != null ? token[6] : "Unknown") + " signed out.");
+        if (token != null) {
+            sessions.close(token[7]);
+        }
         clearTempToken();
         // Any additional cleanup can be done here
     }
@@ -90,61 +257,133 @@ public class UserManager {
     /**
      * Finds a user by their username.
      * <p>
-     * This method searches through the list of users and returns the user
-     * object if a matching username is found. It is case-sensitive and expects
-     * an exact match of the username. If no user is found with the specified
-     * username, this method returns {@code null}.
+     * This method looks the username up in the user index and returns the user
+     * object if a matching username is found, reading it from the CSV file if it
+     * is not cached. It is case-sensitive and expects an exact match of the
+     * username. If no user is found with the specified username, this method
+     * returns {@code null}.
      * 
      * @param username The username of the user to find.
-     * @return User object if found, {@code null} otherwise.
+     * @return User object if found, {@code null} otherwise. It is meant for reading; change users
+     *         with {@link #updateUser}.
      */
     public User findUserByUsername(String username) {
-        for (User user : users) {
-            if (user.getUsername().equals(username)) {
-                return user;
-            }
+        long start = System.nanoTime();
+        User result = null;
+        try {
+            result = findUserByUsernameUntimed(username);
+            return result;
+        } finally {
+            SlowOperationLog.finish(FIND_TIMER, start, -1, -1, username, null);
+        }
+    }
+
+    private User findUserByUsernameUntimed(String username) {
+        return users.find(username);
+    }
+
+    /**
+     * Changes a user so the change cannot be lost: the user stays cached while it is changed, and is
+     * saved with the next {@link #saveUsersToCSV()} or when it leaves the cache. A user that was
+     * found earlier may have left the cache since, so changing it directly could be lost.
+     *
+     * @param username The username of the user to change.
+     * @param change Changes the user, returning false if it decided not to. It runs while the users
+     *               are locked, so it should be short and must not wait for other threads using them.
+     * @return The changed user, or null if there is no such user or the change returned false.
+     */
+    public User updateUser(String username, Predicate<User> change) {
+        long start = System.nanoTime();
+        User result = null;
+        try {
+            result = users.update(username, change);
+            return result;
+        } finally {
+            SlowOperationLog.finish(UPDATE_TIMER, start, result == null ? 0 : 1, -1, username, null);
         }
-        return null; 
     }
 
     
     /**
-     * Saves the current state of all users to a CSV file, including any changes to user data.
+     * Saves every change to user data to the CSV file. Only the users that were read and changed
+     * are written; users that were never asked for are left as they are.
      */
     public void saveUsersToCSV() {
-        List<String[]> userDataWrite = new ArrayList<>();
-        userDataWrite.add(loadAllUsers.header);  
-
-        for (User user : users) {
-            String[] userData = user.ArrayListToCSV();  
-            userDataWrite.add(userData);  
+        long start = System.nanoTime();
+        try {
+            users.flush();
+        } finally {
+            SlowOperationLog.finish(SAVE_TIMER, start, users.cachedSize(), -1, users.getFilePath(), null);
         }
-
-        CSVManager.updateCSV("user_data_part2.csv", userDataWrite);  
     }
     
     /**
-     * Adds a new user to the system and saves the updated list of users to a CSV file.
+     * Adds a new user to the system by appending it to the user CSV file. A plain password is
+     * replaced by its hash first.
      *
      * @param user The new User object to add to the system.
      */
     public void addUser(User user) {
-        users.add(user);  // Add user to the list
-        saveUsersToCSV(); // Update the CSV file
+        long start = System.nanoTime();
+        try {
+            addUserUntimed(user);
+        } finally {
+            SlowOperationLog.finish(ADD_TIMER, start, 1, -1, user.getUsername(), null);
+        }
+    }
+
+    private void addUserUntimed(User user) {
+        if (!PasswordHasher.isHash(user.getPassword())) {
+            user.setPassword(PasswordHasher.hash(user.getPassword()));
+        }
+        users.add(user);  // Append the user and index it
         System.out.println("User added: " + user.getUsername());
     }
     
     
 
     /**
-     * Handles the process of returning a car. It finds the user and car, processes the refund,
-     * and updates the car availability.
+     * Handles the process of returning a car. It finds the user and car, refunds the amount the
+     * ticket was charged, and updates the car availability.
      *
      * @param username The username of the user returning the car.
      * @param carId The ID of the car being returned.
      * @return true if the car is successfully returned, false otherwise.
      */
     public boolean returnCar(String username, int carId) throws Exception {
+        return returnCar(username, carId, carManager.join());
+    }
+
+    /**
+     * Handles the process of returning a car to the given CarManager, for example the lot it was bought from.
+     * The ticket, the refund and the stock are changed under the lock of the CarManager, the same
+     * lock its purchases hold.
+     *
+     * @param username The username of the user returning the car.
+     * @param carId The ID of the car being returned.
+     * @param carManager The CarManager that owns the car.
+     * @return true if the car is successfully returned, false otherwise.
+     */
+    public boolean returnCar(String username, int carId, CarManager carManager) throws Exception {
+        long start = System.nanoTime();
+        ShopEvents.Return event = new ShopEvents.Return();
+        event.begin();
+        boolean returned = false;
+        try {
+            returned = returnCarUntimed(username, carId, carManager);
+            return returned;
+        } finally {
+            SlowOperationLog.finish(RETURN_TIMER, start, returned ? 1 : 0, -1, username, carId);
+            if (event.shouldCommit()) {
+                event.username = username;
+                event.carId = carId;
+                event.returned = returned;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean returnCarUntimed(String username, int carId, CarManager carManager) throws Exception {
         User user = findUserByUsername(username);
         if (user == null) {
             System.out.println("User not found.");
@@ -160,16 +399,30 @@ public class UserManager {
             return true;
         }
 
-		if (IssueTicket.deleteTicket(carId, username)) {
-			float tax = (float) .0625;
-			float refundAmount = car.getPrice() * (1+tax);
-			user.setMoneyAvailable(user.getMoneyAvailable() + refundAmount);
+		synchronized (carManager) {
+			String[] ticket = carManager.deleteTicket(carId, username);
+			if (ticket != null) {
+				// Refund what the ticket was charged; only old tickets without the amount are priced again
+				float charged = IssueTicket.chargedOf(ticket);
+				float refundAmount = Float.isNaN(charged) ? carManager.getPricing().refundAmount(car, user) : charged;
+				User refunded = updateUser(username, returning -> {
+					returning.setMoneyAvailable(returning.getMoneyAvailable() + refundAmount);
+					returning.setCarsPurchased(returning.getCarsPurchased() > 0 ? returning.getCarsPurchased() - 1 : 0);
+					return true;
+				});
 
 	        
-			user.setCarsPurchased(user.getCarsPurchased() > 0 ? user.getCarsPurchased() - 1 : 0);
+				car.setCarsAvailable(car.getCarsAvailable() + 1);
 
-        
-			car.setCarsAvailable(car.getCarsAvailable() + 1);
+				InventoryEventPublisher events = carManager.getEvents();
+				if (events.hasSubscribers()) {
+					events.publish(InventoryEvent.ticketDeleted(carId, username));
+					events.publish(InventoryEvent.stockChanged(car));
+					if (refunded != null) {
+						events.publish(InventoryEvent.balanceChanged(refunded));
+					}
+				}
+			}
 		}
         
 
@@ -0,0 +1,546 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Reads users from the user CSV file only when they are asked for, instead of loading every user at
+ * startup. A {@link UserIndex} next to the CSV file finds the row of a username; it is built once by
+ * reading the file and then kept up to date as users are added and saved, so opening the store takes
+ * the same time for ten users as for ten million.
+ * <p>
+ * Users that were read are kept in a cache of bounded size. When the cache is full, a "clock" sweeps
+ * over the cached users and evicts the first one that was not asked for since the hand last passed it;
+ * every lookup of a cached user earns it another pass, up to {@value #MAX_FREQUENCY}, so users that are
+ * asked for often stay cached while users looked up once leave first. A user that changed since it was
+ * read is written back when it is evicted or when the store is saved: in place, padded with spaces, if
+ * its row still fits, otherwise by rewriting the file one row at a time.
+ * <p>
+ * Users are changed through {@link #update}, which holds the lock of the store while the change is
+ * made. A user can only be evicted while the store is locked, so a change always lands on the cached
+ * user and is written back with it. A user returned by {@link #find} may be evicted while the caller
+ * still holds it; changing it directly would be lost, and a later lookup would read the old row.
+ */
+public final class UserStore {
+
+    /**
+     * The number of users cached when {@code -Dcarshop.userCache} is not set.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * The most passes of the clock hand a cached user can survive without being asked for again.
+     */
+    private static final int MAX_FREQUENCY = 3;
+
+    /**
+     * The header of a user CSV file created by the store.
+     */
+    private static final String[] DEFAULT_HEADER = {"Money Available", "Password", "Last Name", "ID",
+            "Cars Purchased", "First Name", "Username", "MinerCars Membership"};
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final File file;
+    private final UserIndex index;
+    private final String[] header;
+    private final UserCSVDecoder decoder;
+    private final UserCSVSerializer serializer;
+
+    /**
+     * The cached users by username, and the slots the clock hand sweeps over.
+     */
+    private final Map<String, Entry> cached = new HashMap<>();
+    private final Entry[] slots;
+    private int used = 0;
+    private int hand = 0;
+
+    private final ByteArrayOutputStream rowBytes = new ByteArrayOutputStream(256);
+    private final CSVRowWriter rowWriter = new CSVRowWriter(rowBytes, 256);
+    private byte[] readBuffer = new byte[256];
+    private int readLength;
+
+    /**
+     * A cached user together with the place and the contents of its row in the CSV file.
+     */
+    private static final class Entry {
+        private final User user;
+        private final String username;
+        private long offset;
+        /** The bytes the row takes in the file, without the line separator. */
+        private int length;
+        /** The row as it was last read or written, to tell whether the user changed. */
+        private byte[] saved;
+        private int frequency = 0;
+
+        private Entry(User user, String username, long offset, int length, byte[] saved) {
+            this.user = user;
+            this.username = username;
+            this.offset = offset;
+            this.length = length;
+            this.saved = saved;
+        }
+    }
+
+    /**
+     * Receives the lines of the CSV file.
+     */
+    private interface LineVisitor {
+        void line(long offset, byte[] bytes, int length, boolean header) throws IOException;
+    }
+
+    private UserStore(File file, UserIndex index, String[] header, int cacheSize) {
+        this.file = file;
+        this.index = index;
+        this.header = header;
+        this.decoder = new UserCSVDecoder(header);
+        this.serializer = UserCSVSerializer.forHeader(header);
+        this.slots = new Entry[Math.max(1, cacheSize)];
+    }
+
+    /**
+     * Reads the cache size from the {@code carshop.userCache} system property.
+     *
+     * @return The configured cache size, or {@link #DEFAULT_CACHE_SIZE}.
+     */
+    public static int configuredCacheSize() {
+        String size = System.getProperty("carshop.userCache");
+        if (size == null) {
+            return DEFAULT_CACHE_SIZE;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(size.trim()));
+        } catch (NumberFormatException e) {
+            System.out.println("Unknown user cache size " + size + ", using " + DEFAULT_CACHE_SIZE + ".");
+            return DEFAULT_CACHE_SIZE;
+        }
+    }
+
+    /**
+     * Opens the users of a CSV file, with their index kept in the file {@code <csv>.idx}. The index is
+     * rebuilt if the CSV file changed since the store last wrote it. A missing CSV file is created
+     * when the first user is added.
+     *
+     * @param csvFilePath The path of the user CSV file.
+     * @param cacheSize The most users kept in memory.
+     * @return The opened store.
+     * @throws UncheckedIOException If the index file cannot be opened.
+     */
+    public static UserStore open(String csvFilePath, int cacheSize) {
+        File file = new File(csvFilePath);
+        String[] header = file.isFile() ? CSVManager.readHeader(csvFilePath) : null;
+        if (header == null) {
+            header = DEFAULT_HEADER;
+        }
+        loadAllUsers.header = header;
+        UserStore store = new UserStore(file, UserIndex.open(new File(csvFilePath + ".idx")), header, cacheSize);
+        if (!store.index.matches(file)) {
+            store.rebuildIndex();
+        }
+        return store;
+    }
+
+    /**
+     * @return The path of the user CSV file.
+     */
+    public String getFilePath() {
+        return file.getPath();
+    }
+
+    /**
+     * @return The number of users in the CSV file.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return The number of users currently cached.
+     */
+    public synchronized int cachedSize() {
+        return cached.size();
+    }
+
+    /**
+     * Finds a user by username, reading it from the CSV file if it is not cached. When the file holds
+     * several users with the username, the first one is returned.
+     *
+     * @param username The username to look for.
+     * @return The user, or null if there is none. It is meant for reading; changes go through
+     *         {@link #update}.
+     */
+    public synchronized User find(String username) {
+        if (username == null) {
+            return null;
+        }
+        Entry entry = cached.get(username);
+        if (entry != null) {
+            if (entry.frequency < MAX_FREQUENCY) {
+                entry.frequency++;
+            }
+            return entry.user;
+        }
+        Entry[] found = new Entry[1];
+        try {
+            index.candidates(username, offset -> {
+                String[] row = new String(readRow(offset), 0, readLength, StandardCharsets.UTF_8).split(",");
+                if (!decoder.username(row).equals(username)) {
+                    return false; // Another username with the same hash
+                }
+                User user = decoder.decode(row);
+                found[0] = new Entry(user, username, offset, readLength, serialize(user));
+                return true;
+            });
+        } catch (UncheckedIOException e) {
+            System.out.println("An error occurred while reading the file: " + e.getCause().getMessage());
+            return null;
+        }
+        if (found[0] == null) {
+            return null;
+        }
+        admit(found[0]);
+        return found[0].user;
+    }
+
+    /**
+     * Changes a user while the store is locked, so it cannot be evicted between being read and being
+     * changed. The change is saved when the user leaves the cache or with the next {@link #flush()}.
+     * The change runs under the lock of the store and must not wait for other threads using the store.
+     *
+     * @param username The username of the user to change.
+     * @param change Changes the user, returning false if it decided not to.
+     * @return The changed user, or null if there is no such user or the change returned false.
+     */
+    public synchronized User update(String username, Predicate<User> change) {
+        User user = find(username);
+        return user != null && change.test(user) ? user : null;
+    }
+
+    /**
+     * Appends a new user to the CSV file and caches it.
+     *
+     * @param user The user to add.
+     */
+    public synchronized void add(User user) {
+        byte[] row = serialize(user);
+        long offset;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            if (length == 0) {
+                raf.write(String.join(",", header).getBytes(StandardCharsets.UTF_8));
+                raf.write(LINE_SEPARATOR);
+            } else {
+                raf.seek(length - 1);
+                if (raf.read() != '\n') {
+                    raf.write(LINE_SEPARATOR);
+                }
+            }
+            offset = raf.length();
+            raf.seek(offset);
+            raf.write(row);
+            raf.write(LINE_SEPARATOR);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing to the CSV file: " + e.getMessage());
+            return;
+        }
+        String username = decoder.username(new String(row, StandardCharsets.UTF_8).split(","));
+        index.put(username, offset);
+        if (index.isCrowded()) {
+            rebuildIndex();
+        } else {
+            index.stamp(file);
+        }
+        if (!cached.containsKey(username)) {
+            admit(new Entry(user, username, offset, row.length, row));
+        }
+    }
+
+    /**
+     * Writes every cached user that changed back to the CSV file.
+     */
+    public synchronized void flush() {
+        boolean grown = false;
+        try {
+            for (Entry entry : cached.values()) {
+                byte[] row = serialize(entry.user);
+                if (Arrays.equals(row, entry.saved)) {
+                    continue;
+                }
+                if (row.length <= entry.length) {
+                    writeInPlace(entry, row);
+                } else {
+                    grown = true;
+                }
+            }
+            if (grown) {
+                rewrite();
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing to the CSV file: " + e.getMessage());
+        }
+        index.stamp(file);
+        index.force();
+    }
+
+    /**
+     * Caches a user, evicting another one if the cache is full.
+     */
+    private void admit(Entry entry) {
+        cached.put(entry.username, entry); // Before the eviction, so a rewrite moves its offset too
+        if (used < slots.length) {
+            slots[used++] = entry;
+            return;
+        }
+        while (slots[hand].frequency > 0) {
+            slots[hand].frequency--;
+            hand = (hand + 1) % slots.length;
+        }
+        Entry victim = slots[hand];
+        try {
+            writeBack(victim);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing to the CSV file: " + e.getMessage());
+        }
+        cached.remove(victim.username);
+        slots[hand] = entry;
+        hand = (hand + 1) % slots.length;
+    }
+
+    /**
+     * Writes a user back to the CSV file if it changed since it was read.
+     */
+    private void writeBack(Entry entry) throws IOException {
+        byte[] row = serialize(entry.user);
+        if (Arrays.equals(row, entry.saved)) {
+            return;
+        }
+        if (row.length <= entry.length) {
+            writeInPlace(entry, row);
+            index.stamp(file);
+        } else {
+            rewrite();
+        }
+    }
+
+    /**
+     * Overwrites the row of a user with a row that is not longer, padding it with spaces. Readers trim
+     * the cells, so the padding is not read back.
+     */
+    private void writeInPlace(Entry entry, byte[] row) throws IOException {
+        byte[] padded = Arrays.copyOf(row, entry.length);
+        Arrays.fill(padded, row.length, padded.length, (byte) ' ');
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(entry.offset);
+            raf.write(padded);
+        }
+        entry.saved = row;
+    }
+
+    /**
+     * Writes the CSV file again, one row at a time, with the current rows of the changed cached users,
+     * and rebuilds the index for the new offsets.
+     */
+    private void rewrite() throws IOException {
+        Map<Long, Entry> byOffset = new HashMap<>();
+        for (Entry entry : cached.values()) {
+            byOffset.put(entry.offset, entry);
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        index.reset(index.size() + 1);
+        long[] position = {0};
+        try (OutputStream out = new FileOutputStream(temporary)) {
+            CountingLines lines = new CountingLines(out);
+            scanLines((offset, bytes, length, isHeader) -> {
+                Entry entry = isHeader ? null : byOffset.get(offset);
+                if (entry != null) {
+                    byte[] row = serialize(entry.user);
+                    lines.write(row, row.length);
+                    index.put(entry.username, position[0]);
+                    entry.offset = position[0];
+                    entry.length = row.length;
+                    entry.saved = row;
+                } else {
+                    lines.write(bytes, length);
+                    if (!isHeader) {
+                        index.put(usernameOf(bytes, length), position[0]);
+                    }
+                }
+                position[0] = lines.written;
+            });
+            lines.flush();
+        } catch (IOException e) {
+            temporary.delete();
+            rebuildIndex();
+            throw e;
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        index.stamp(file);
+    }
+
+    /**
+     * Builds the index by reading every row of the CSV file.
+     */
+    private void rebuildIndex() {
+        int expected = (int) Math.min(file.length() / 48, Integer.MAX_VALUE / 4);
+        try {
+            do {
+                index.reset(Math.max(expected, index.size() * 2));
+                scanLines((offset, bytes, length, isHeader) -> {
+                    if (!isHeader) {
+                        index.put(usernameOf(bytes, length), offset);
+                    }
+                });
+                expected = index.size() * 2;
+            } while (index.isCrowded());
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the file: " + e.getMessage());
+        }
+        index.stamp(file);
+    }
+
+    private String usernameOf(byte[] bytes, int length) {
+        return decoder.username(new String(bytes, 0, length, StandardCharsets.UTF_8).split(","));
+    }
+
+    /**
+     * Reads the lines of the CSV file in order, without their line separators. A missing file has no lines.
+     */
+    private void scanLines(LineVisitor visitor) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        byte[] chunk = new byte[64 * 1024];
+        byte[] line = new byte[256];
+        int length = 0;
+        long offset = 0;
+        long lineStart = 0;
+        boolean isHeader = true;
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = chunk[i];
+                    offset++;
+                    if (b == '\n') {
+                        visitor.line(lineStart, line, stripReturn(line, length), isHeader);
+                        isHeader = false;
+                        lineStart = offset;
+                        length = 0;
+                    } else {
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = b;
+                    }
+                }
+            }
+        }
+        if (length > 0) {
+            visitor.line(lineStart, line, stripReturn(line, length), isHeader);
+        }
+    }
+
+    private static int stripReturn(byte[] line, int length) {
+        return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+    }
+
+    /**
+     * Reads the row starting at an offset into the read buffer, setting {@link #readLength} to its
+     * length without the line separator.
+     */
+    private byte[] readRow(long offset) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset);
+            int length = 0;
+            while (true) {
+                if (length == readBuffer.length) {
+                    readBuffer = Arrays.copyOf(readBuffer, length * 2);
+                }
+                int read = raf.read(readBuffer, length, readBuffer.length - length);
+                if (read < 0) {
+                    break;
+                }
+                int end = indexOf(readBuffer, length, length + read, (byte) '\n');
+                if (end >= 0) {
+                    length = end;
+                    break;
+                }
+                length += read;
+            }
+            readLength = stripReturn(readBuffer, length);
+            return readBuffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a user as the bytes of one row, without the line separator.
+     */
+    private byte[] serialize(User user) {
+        rowBytes.reset();
+        serializer.write(user, rowWriter);
+        rowWriter.flush();
+        byte[] row = rowBytes.toByteArray();
+        return Arrays.copyOf(row, row.length - LINE_SEPARATOR.length);
+    }
+
+    /**
+     * Writes lines to the rewritten file through a buffer, counting the bytes written.
+     */
+    private static final class CountingLines {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int position = 0;
+        private long written = 0;
+
+        private CountingLines(OutputStream out) {
+            this.out = out;
+        }
+
+        private void write(byte[] bytes, int length) throws IOException {
+            put(bytes, length);
+            put(LINE_SEPARATOR, LINE_SEPARATOR.length);
+        }
+
+        private void put(byte[] bytes, int length) throws IOException {
+            if (position + length > buffer.length) {
+                flush();
+                if (length > buffer.length) {
+                    out.write(bytes, 0, length);
+                    written += length;
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, buffer, position, length);
+            position += length;
+            written += length;
+        }
+
+        private void flush() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -1,7 +1,5 @@
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Provides functionality to load car data from a CSV file and create Car objects.
@@ -23,37 +21,26 @@ public class loadAllCars {
      * @return A list of Car objects loaded from the CSV file.
      */
     public static List<Car> loadCarsFromCSV() {
-        List<String[]> carData = CSVManager.readFromCSV("car_data_part2.csv");
+        return loadCarsFromCSV("car_data_part2.csv");
+    }
+
+    /**
+     * Reads car data from the given CSV file and creates a list of Car objects.
+     *
+     * @param filePath The path of the car CSV file.
+     * @return A list of Car objects loaded from the CSV file.
+     */
+    public static List<Car> loadCarsFromCSV(String filePath) {
+        List<String[]> carData = CSVManager.readFromCSV(filePath);
         List<Car> cars = new ArrayList<>();
-        Map<String, Integer> columnMap = new HashMap<>();
 
         if (!carData.isEmpty()) {
             header = carData.get(0); // Get the header row which should contain column names
-            
-            for (int i = 0; i < header.length; i++) {
-                columnMap.put(header[i], i);
-                
-            }
-            
-            
+            CarCSVDecoder decoder = new CarCSVDecoder(header);
+
             for (int j = 1; j < carData.size(); j++) {
-                Map<String, String> carProperties = new HashMap<>();
-                String[] carInfo = carData.get(j);
-                for (String key : columnMap.keySet()) {
-                	
-                	int columnIndex = columnMap.get(key);
-                	
-                	String value = columnIndex < carInfo.length ? carInfo[columnIndex].trim() : "";
-                    if ("Has Turbo".equals(key) && value.isEmpty()) {
-                        carProperties.put(key, "false"); // Explicitly set empty turbo fields to "false"
-                    } else {
-                        carProperties.put(key, value);
-                    }
-                }
                 try {
-                    Car car = createCarFromProperties(carProperties);
-                    cars.add(car);
-                    
+                    cars.add(decoder.decode(carData.get(j)));
                 } catch (NumberFormatException e) {
                     System.out.println("Error parsing car data: " + e.getMessage());
                 }
@@ -64,34 +51,39 @@ public class loadAllCars {
     }
 
     /**
-     * Creates a Car object from a map of properties.
-     * Depending on the car type, a specific subclass of Car may be instantiated.
+     * Reads only the header of a car CSV file, for when the cars themselves come from elsewhere.
      *
-     * @param properties A map containing car attributes as key-value pairs.
-     * @return A new Car object constructed from the provided properties.
+     * @param filePath The path of the car CSV file.
      */
-    private static Car createCarFromProperties(Map<String, String> properties) {
-        int id = ParseInt(properties.getOrDefault("ID", "0"));
-
-        
-        int capacity = ParseInt(properties.getOrDefault("Capacity", "0"));
-        
-        float price = ParseFloat(properties.getOrDefault("Price", "0"));
-        
- 
-        int carsAvailable = Integer.parseInt(properties.getOrDefault("Cars Available", "0"));
-        boolean hasTurbo = parseBoolean(properties.getOrDefault("hasTurbo", "false"));
-        int year = Integer.parseInt(properties.getOrDefault("Year", "0"));
-        
-        String type = properties.getOrDefault("Car Type", "No");
-        String model = properties.getOrDefault("Model", "No");
-        String condition = properties.getOrDefault("Condition", "No");
-        String color = properties.getOrDefault("Color", "No");
-        String transmission = properties.getOrDefault("Transmission", "No");
-        String vin = properties.getOrDefault("VIN", "No");
-        String fuelType = properties.getOrDefault("Fuel Type", "No");
-
+    public static void loadHeader(String filePath) {
+        String[] fileHeader = CSVManager.readHeader(filePath);
+        if (fileHeader != null) {
+            header = fileHeader;
+        }
+    }
 
+    /**
+     * Creates a Car object of the subclass that matches its type.
+     * Unknown types are created as a plain Car.
+     *
+     * @param id The unique identifier for the car.
+     * @param type The type of the car (e.g., Sedan, SUV).
+     * @param model The model of the car.
+     * @param condition The condition of the car (e.g., New, Used).
+     * @param color The color of the car.
+     * @param capacity The seating capacity of the car.
+     * @param price The price of the car.
+     * @param transmission The transmission type of the car.
+     * @param vin The Vehicle Identification Number.
+     * @param fuelType The type of fuel the car uses.
+     * @param year The model year of the car.
+     * @param carsAvailable The number of cars available for this model.
+     * @param hasTurbo Indicates whether the car is equipped with a turbocharger.
+     * @return A new Car object of the matching subclass.
+     */
+    public static Car createCar(int id, String type, String model, String condition, String color, int capacity,
+                                float price, String transmission, String vin, String fuelType, int year,
+                                int carsAvailable, boolean hasTurbo) {
         switch (type) {
             case "Sedan":
                 return new Sedan(id, type, model, condition, color, capacity, price, transmission, vin, fuelType, year, carsAvailable, hasTurbo);
@@ -105,45 +97,4 @@ public class loadAllCars {
                 return new Car(id, type, model, condition, color, capacity, price, transmission, vin, fuelType, year, carsAvailable, hasTurbo);
         }
     }
-    
-    /**
-     * Parses an integer from a string with error handling.
-     * If parsing fails, returns a default value of 0.
-     *
-     * @param value The string to parse into an integer.
-     * @return The parsed integer, or 0 if parsing fails.
-     */
-    private static int ParseInt(String value) {
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return 0;  // Default to 0 if parsing fails
-        }
-    }
-
-    /**
-     * Parses a float from a string with error handling.
-     * If parsing fails, returns a default value of 0.0f.
-     *
-     * @param value The string to parse into a float.
-     * @return The parsed float, or 0.0f if parsing fails.
-     */
-    private static float ParseFloat(String value) {
-        try {
-            return Float.parseFloat(value);
-        } catch (NumberFormatException e) {
-            return 0.0f;  // Default to 0.0 if parsing fails
-        }
-    }
-    
-    /**
-     * Parses a boolean from a string.
-     * Recognizes "true" or "yes" (case insensitive) as true, anything else as false.
-     *
-     * @param value The string to parse into a boolean.
-     * @return The parsed boolean.
-     */
-    private static boolean parseBoolean(String value) {
-        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import carshop.jmh.Workload;
+
+/**
+ * The shop side of the benchmarks in {@code carshop.jmh}: runs the CSV, loading, purchase, return and
+ * revenue paths on data from the {@link DatasetGenerator}. Log.txt and the CSV files of the working
+ * directory are not touched, and the console output of the measured code is discarded.
+ */
+public class ShopWorkload implements Workload {
+
+    private static final String[] TYPES = {"Sedan", "SUV", "Hatchback", "Pickup"};
+
+    private String carFile;
+    private String ticketFile;
+    private String userFile;
+    private String updateFile;
+    private List<String[]> carRows;
+    private List<Car> cars;
+    private CarManager carManager;
+    private UserManager userManager;
+
+    @Override
+    public void generate(String directory, int rows) throws IOException {
+        carFile = CarManager.dataFile(directory, CarManager.CAR_FILE);
+        ticketFile = CarManager.dataFile(directory, CarManager.TICKET_FILE);
+        userFile = CarManager.dataFile(directory, UserManager.USER_FILE);
+        updateFile = new File(directory, "update.csv").getPath();
+
+        DatasetGenerator generator = new DatasetGenerator(rows);
+        generator.setStock(1_000_000);
+        generator.generate(directory, rows, rows, rows);
+        List<String[]> buyer = new ArrayList<>();
+        // A balance so large that a purchase does not change it, so the buyer never runs out
+        buyer.add(new String[]{"1.0E15", "secret", "Bench", "0", "0", "Mark", BUYER, "true"});
+        CSVManager.writeToCSV(userFile, buyer);
+
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Log.setLogFilePath(new File(directory, "Log.txt").getPath());
+        SlowOperationLog.setLogFilePath(new File(directory, "slow_operations.log").getPath());
+
+        carRows = CSVManager.readFromCSV(carFile);
+        cars = loadAllCars.loadCarsFromCSV(carFile);
+        carManager = new CarManager(directory);
+        userManager = new UserManager(carManager, directory);
+    }
+
+    @Override
+    public Object readCarRows() {
+        return CSVManager.readFromCSV(carFile);
+    }
+
+    @Override
+    public void writeCarRows() {
+        CSVManager.updateCSV(updateFile, carRows);
+    }
+
+    @Override
+    public Object loadCars() {
+        return loadAllCars.loadCarsFromCSV(carFile);
+    }
+
+    @Override
+    public Object loadUsers() {
+        return loadAllUsers.loadUsersFromCSV(userFile);
+    }
+
+    @Override
+    public Object openUsers() {
+        return UserStore.open(userFile, UserStore.DEFAULT_CACHE_SIZE).find(BUYER);
+    }
+
+    @Override
+    public void carsToRows(Consumer<Object> sink) {
+        for (Car car : cars) {
+            sink.accept(car.ArrayListToCSV());
+        }
+    }
+
+    @Override
+    public double revenueByType(int type) {
+        return carManager.getRevenueByType(TYPES[type % TYPES.length]);
+    }
+
+    @Override
+    public void log() {
+        Log.log(BUYER, "ran a benchmark");
+    }
+
+    @Override
+    public boolean purchaseCar(int carId) throws Exception {
+        return carManager.purchaseCar(BUYER, String.valueOf(carId), userManager);
+    }
+
+    @Override
+    public boolean returnCar(int carId) throws Exception {
+        return userManager.returnCar(BUYER, carId, carManager);
+    }
+
+    @Override
+    public void appendTicket(int carId) throws IOException {
+        List<String[]> ticket = new ArrayList<>();
+        ticket.add(new IssueTicket(String.valueOf(carId), BUYER, "Sedan", "Toyota Camry", 2024, "Red", 20000f).CSVparser());
+        CSVManager.writeToCSV(ticketFile, ticket);
+    }
+
+    @Override
+    public boolean deleteTicket(int carId) throws IOException {
+        return IssueTicket.deleteTicket(ticketFile, carId, BUYER);
+    }
+}
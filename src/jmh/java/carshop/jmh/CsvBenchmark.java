@@ -0,0 +1,47 @@
+package carshop.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures reading, writing and loading the CSV files of the shop.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CsvBenchmark {
+
+    @Benchmark
+    public Object readFromCSV(ShopData data) {
+        return data.workload.readCarRows();
+    }
+
+    @Benchmark
+    public void updateCSV(ShopData data) {
+        data.workload.writeCarRows();
+    }
+
+    @Benchmark
+    public Object loadCars(ShopData data) {
+        return data.workload.loadCars();
+    }
+
+    @Benchmark
+    public Object loadUsers(ShopData data) {
+        return data.workload.loadUsers();
+    }
+
+    @Benchmark
+    public Object openUsers(ShopData data) {
+        return data.workload.openUsers();
+    }
+
+    @Benchmark
+    public void carsToRows(ShopData data, Blackhole blackhole) {
+        data.workload.carsToRows(blackhole::consume);
+    }
+}
@@ -0,0 +1,77 @@
+package carshop.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the purchase, return, ticket and revenue paths of the shop. A return needs a car bought
+ * first and a ticket deletion a ticket appended first; that is done before every operation and not
+ * counted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShopBenchmark {
+
+    /**
+     * A car the buyer purchased just before the operation.
+     */
+    @State(Scope.Thread)
+    public static class Purchased {
+
+        int carId;
+
+        @Setup(Level.Invocation)
+        public void purchase(ShopData data) throws Exception {
+            carId = data.randomCar();
+            data.workload.purchaseCar(carId);
+        }
+    }
+
+    /**
+     * A ticket of the buyer appended just before the operation.
+     */
+    @State(Scope.Thread)
+    public static class Appended {
+
+        int carId;
+
+        @Setup(Level.Invocation)
+        public void append(ShopData data) throws Exception {
+            carId = data.randomCar();
+            data.workload.appendTicket(carId);
+        }
+    }
+
+    @Benchmark
+    public double revenueByType(ShopData data) {
+        return data.workload.revenueByType(data.randomType());
+    }
+
+    @Benchmark
+    public void log(ShopData data) {
+        data.workload.log();
+    }
+
+    @Benchmark
+    public boolean purchaseCar(ShopData data) throws Exception {
+        return data.workload.purchaseCar(data.randomCar());
+    }
+
+    @Benchmark
+    public boolean returnCar(ShopData data, Purchased purchased) throws Exception {
+        return data.workload.returnCar(purchased.carId);
+    }
+
+    @Benchmark
+    public boolean deleteTicket(ShopData data, Appended appended) throws Exception {
+        return data.workload.deleteTicket(appended.carId);
+    }
+}
@@ -0,0 +1,70 @@
+package carshop.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The generated data of one trial: cars, users and tickets of the given number of rows each, in a
+ * temporary directory that is deleted when the trial ends.
+ */
+@State(Scope.Benchmark)
+public class ShopData {
+
+    /**
+     * The number of cars, users and tickets. The largest sizes need a large heap.
+     */
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    /**
+     * The shop working on the data.
+     */
+    Workload workload;
+
+    private Path directory;
+
+    private final Random random = new Random(42);
+
+    /**
+     * Generates the data in a new temporary directory.
+     *
+     * @throws Exception If the data cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        directory = Files.createTempDirectory("carshop-bench-");
+        workload = Workload.open(directory, rows);
+    }
+
+    /**
+     * Deletes the temporary directory.
+     *
+     * @throws Exception If the directory cannot be read.
+     */
+    @TearDown(Level.Trial)
+    public void delete() throws Exception {
+        Workload.deleteDirectory(directory);
+    }
+
+    /**
+     * @return The ID of a random car.
+     */
+    int randomCar() {
+        return 1 + random.nextInt(rows);
+    }
+
+    /**
+     * @return A random car type, as an index for {@link Workload#revenueByType}.
+     */
+    int randomType() {
+        return random.nextInt(Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,137 @@
+package carshop.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The shop operations the benchmarks measure, on generated data in a directory of their own.
+ * <p>
+ * JMH only runs benchmarks declared in a package, and a class in a package cannot name the classes of
+ * the shop, which are in the default package. The benchmarks therefore reach the shop through this
+ * interface, implemented by {@code ShopWorkload} in the default package and created once per trial
+ * with {@link #open}, so the measured calls are plain interface calls.
+ */
+public interface Workload {
+
+    /**
+     * The buyer of the purchase and return benchmarks.
+     */
+    String BUYER = "benchmark";
+
+    /**
+     * Creates the workload and writes its data: the given number of cars, users and tickets, with
+     * enough of every car for the purchases and a buyer who cannot run out of money.
+     *
+     * @param directory The directory for the data files and logs, for example a temporary one.
+     * @param rows The number of cars, users and tickets.
+     * @return The workload.
+     * @throws Exception If the workload cannot be created or the data cannot be written.
+     */
+    static Workload open(Path directory, int rows) throws Exception {
+        Workload workload = (Workload) Class.forName("ShopWorkload").getDeclaredConstructor().newInstance();
+        workload.generate(directory.toString(), rows);
+        return workload;
+    }
+
+    /**
+     * Deletes a directory with everything in it.
+     *
+     * @param directory The directory.
+     * @throws IOException If the directory cannot be read.
+     */
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Writes the data files into a directory and opens the shop on them.
+     *
+     * @param directory The data directory.
+     * @param rows The number of cars, users and tickets.
+     * @throws IOException If a file cannot be written.
+     */
+    void generate(String directory, int rows) throws IOException;
+
+    /**
+     * @return The rows of the car file, read with {@code CSVManager.readFromCSV}.
+     */
+    Object readCarRows();
+
+    /**
+     * Writes the car rows read when the data was generated to a file of their own with
+     * {@code CSVManager.updateCSV}.
+     */
+    void writeCarRows();
+
+    /**
+     * @return The cars of the car file, loaded as objects.
+     */
+    Object loadCars();
+
+    /**
+     * @return The users of the user file, loaded as objects.
+     */
+    Object loadUsers();
+
+    /**
+     * Opens the indexed user file and finds the buyer in it.
+     *
+     * @return The buyer.
+     */
+    Object openUsers();
+
+    /**
+     * Turns every loaded car into its CSV row.
+     *
+     * @param sink Receives every row.
+     */
+    void carsToRows(Consumer<Object> sink);
+
+    /**
+     * @param type The index of a car type.
+     * @return The revenue of the tickets of that type.
+     */
+    double revenueByType(int type);
+
+    /**
+     * Writes one line to the activity log.
+     */
+    void log();
+
+    /**
+     * @param carId The ID of a car.
+     * @return true if the buyer purchased the car.
+     * @throws Exception If the purchase failed.
+     */
+    boolean purchaseCar(int carId) throws Exception;
+
+    /**
+     * @param carId The ID of a car the buyer purchased.
+     * @return true if the car was returned.
+     * @throws Exception If the return failed.
+     */
+    boolean returnCar(int carId) throws Exception;
+
+    /**
+     * Appends a ticket of the buyer to the ticket file, without going through the shop.
+     *
+     * @param carId The ID of the car.
+     * @throws IOException If the ticket file cannot be written.
+     */
+    void appendTicket(int carId) throws IOException;
+
+    /**
+     * Deletes a ticket of the buyer from the ticket file by rewriting it.
+     *
+     * @param carId The ID of the car.
+     * @return true if the ticket was deleted.
+     * @throws IOException If the ticket file cannot be read or written.
+     */
+    boolean deleteTicket(int carId) throws IOException;
+}